@@ -0,0 +1,113 @@
+package server;
+
+import client.ClientCallbackInterface;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.ThreadLocalRandom;
+
+// A population of registered players spread over rooms, plus per-player binary-search state so
+// benchmark players keep winning rounds and earning points instead of draining to zero.
+final class BenchmarkPlayers {
+    static final int PLAYERS_PER_ROOM = 100;
+    static final int TRIALS_PER_PURCHASE = 5;
+
+    final long[] tokens;
+    private final int[] low;
+    private final int[] high;
+
+    static final class NoopCallback implements ClientCallbackInterface {
+        private final String clientId;
+
+        NoopCallback(String clientId) {
+            this.clientId = clientId;
+        }
+
+        @Override
+        public void notifyNumberReset(String winnerMessage) {
+        }
+
+        @Override
+        public String getClientId() {
+            return clientId;
+        }
+    }
+
+    BenchmarkPlayers(SessionGameInterface game, int playerCount) throws RemoteException {
+        this.tokens = new long[playerCount];
+        this.low = new int[playerCount];
+        this.high = new int[playerCount];
+
+        for (int i = 0; i < playerCount; i++) {
+            String clientId = "bench-" + i;
+            tokens[i] = game.registerClient(new NoopCallback(clientId), clientId).getToken();
+            if (i % PLAYERS_PER_ROOM == 0) {
+                game.createRoom(tokens[i], "bench-room-" + (i / PLAYERS_PER_ROOM));
+            } else {
+                game.joinRoom(tokens[i], game.getRoomId(tokens[i - (i % PLAYERS_PER_ROOM)]));
+            }
+            low[i] = 1;
+            high[i] = 100;
+        }
+    }
+
+    int size() {
+        return tokens.length;
+    }
+
+    int randomPlayer() {
+        return ThreadLocalRandom.current().nextInt(tokens.length);
+    }
+
+    // Binary-searches the secret, then keeps guessing just below it: a guess within 5 earns more
+    // than the trial costs, so a player's balance is sustainable for the whole run.
+    // Callers must not share a player between threads; the search bounds are not synchronized.
+    GuessResult guess(SessionGameInterface game, int player) throws RemoteException {
+        long token = tokens[player];
+        int lo = low[player];
+        int hi = high[player];
+        boolean farming = hi - lo <= 4 && (lo > 1 || hi < 100);
+
+        int guess;
+        if (farming) {
+            guess = lo > 1 ? lo - 1 : hi + 1;
+        } else {
+            guess = (lo + hi) >>> 1;
+        }
+        GuessResult result = game.makeGuess(token, guess);
+
+        switch (result.getStatus()) {
+            case TOO_SMALL:
+                if (farming && (guess != lo - 1 || result.getScoreChange() != 20)) {
+                    resetSearch(player);
+                } else {
+                    low[player] = Math.max(lo, guess + 1);
+                }
+                break;
+            case TOO_BIG:
+                if (farming && (guess != hi + 1 || result.getScoreChange() != 20)) {
+                    resetSearch(player);
+                } else {
+                    high[player] = Math.min(hi, guess - 1);
+                }
+                break;
+            case CORRECT:
+                resetSearch(player);
+                break;
+            default:
+                break;
+        }
+        // Top up as soon as the last trial is spent, so the next guess is a real one rather than an ERROR.
+        if (result.getRemainingTrials() == 0 && result.getCurrentScore() >= TRIALS_PER_PURCHASE * 10) {
+            game.buyTrials(token, TRIALS_PER_PURCHASE);
+        }
+        if (low[player] > high[player]) {
+            resetSearch(player);
+        }
+        return result;
+    }
+
+    private void resetSearch(int player) {
+        low[player] = 1;
+        high[player] = 100;
+    }
+}
@@ -0,0 +1,41 @@
+package server;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+// Runs the selected benchmarks at 1, 2, 4 ... N threads, recording both throughput and the
+// sampled latency distribution (p50/p90/p99/p99.9) for every thread count.
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : "server\\..*Benchmark";
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        String outputDir = args.length > 2 ? args[2] : "build/reports/jmh";
+        new File(outputDir).mkdirs();
+
+        int threads = 1;
+        while (true) {
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .mode(Mode.Throughput)
+                    .mode(Mode.SampleTime)
+                    .timeUnit(TimeUnit.MICROSECONDS)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(outputDir + "/results-" + threads + "-threads.json");
+
+            new Runner(options.build()).run();
+
+            if (threads >= maxThreads) {
+                break;
+            }
+            threads = Math.min(threads * 2, maxThreads);
+        }
+    }
+}
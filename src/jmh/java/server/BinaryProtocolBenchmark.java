@@ -0,0 +1,108 @@
+package server;
+
+import client.BinaryGameClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.util.concurrent.CompletableFuture;
+
+// The RmiGameServerBenchmark operations over BinaryProtocolServer on loopback, one connection per
+// thread, plus a pipelined variant that keeps PIPELINE_DEPTH guesses in flight per connection.
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BinaryProtocolBenchmark {
+    static final int PIPELINE_DEPTH = 16;
+
+    @Param({"100", "10000", "1000000"})
+    public int players;
+
+    GameServer server;
+    BinaryProtocolServer binaryServer;
+    BenchmarkPlayers population;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new GameServer();
+        population = new BenchmarkPlayers(server, players);
+        binaryServer = new BinaryProtocolServer(server, 0, Runtime.getRuntime().availableProcessors());
+        binaryServer.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        binaryServer.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Connection {
+        BinaryGameClient client;
+        int first;
+        int count;
+        int cursor;
+
+        @Setup(Level.Trial)
+        public void setUp(BinaryProtocolBenchmark benchmark, ThreadParams threads) throws IOException {
+            client = new BinaryGameClient("localhost", benchmark.binaryServer.getPort());
+            int size = benchmark.population.size();
+            int threadCount = Math.min(threads.getThreadCount(), size);
+            count = size / threadCount;
+            first = Math.min(threads.getThreadIndex(), threadCount - 1) * count;
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            client.close();
+        }
+
+        int next() {
+            cursor = cursor + 1 == count ? 0 : cursor + 1;
+            return first + cursor;
+        }
+    }
+
+    @Benchmark
+    public GuessResult makeGuess(Connection connection) throws RemoteException {
+        return population.guess(connection.client, connection.next());
+    }
+
+    // Fixed guesses rather than BenchmarkPlayers.guess, whose search needs each response before the
+    // next request; once a player's trials run out this measures the NO_TRIALS round trip instead.
+    @Benchmark
+    public int makeGuessPipelined(Connection connection) {
+        @SuppressWarnings("unchecked")
+        CompletableFuture<GuessResult>[] inFlight = new CompletableFuture[PIPELINE_DEPTH];
+        for (int i = 0; i < PIPELINE_DEPTH; i++) {
+            int player = connection.next();
+            inFlight[i] = connection.client.makeGuessAsync(population.tokens[player], (player % 100) + 1);
+        }
+        int remaining = 0;
+        for (CompletableFuture<GuessResult> result : inFlight) {
+            remaining += result.join().getRemainingTrials();
+        }
+        return remaining;
+    }
+
+    @Benchmark
+    public int getScore(Connection connection) throws RemoteException {
+        return connection.client.getScore(population.tokens[population.randomPlayer()]);
+    }
+
+    @Benchmark
+    public SessionHandle registerClient(Connection connection) throws RemoteException {
+        return connection.client.registerClient(new BenchmarkPlayers.NoopCallback("bench-binary-register"),
+                "bench-binary-register");
+    }
+}
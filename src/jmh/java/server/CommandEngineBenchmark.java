@@ -0,0 +1,130 @@
+package server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+// Guesses and purchases with the default per-player locking against single-writer execution, where
+// every player is owned by one partition writer and handled there without locks. main runs both at
+// 1, 2, 4 ... N threads and prints them side by side: gradle engineComparison -PmaxThreads=64
+// (gradle jmh -Pinclude=CommandEngineBenchmark keeps the full JSON and latency percentiles).
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CommandEngineBenchmark {
+    @Param({"locks", "single-writer"})
+    public String engine;
+
+    @Param({"1000", "100000"})
+    public int players;
+
+    GameServer server;
+    BenchmarkPlayers population;
+
+    @Setup(Level.Trial)
+    public void setUp() throws RemoteException {
+        server = new GameServer();
+        if (engine.equals("single-writer")) {
+            server.startCommandEngine(CommandEngine.DEFAULT_RING_CAPACITY, CommandEngine.DEFAULT_TIMEOUT_MILLIS);
+        }
+        population = new BenchmarkPlayers(server, players);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stopCommandEngine();
+    }
+
+    // Players are never shared between threads, as in GameServerBenchmark.
+    @State(Scope.Thread)
+    public static class PlayerSlice {
+        int first;
+        int count;
+        int cursor;
+
+        @Setup(Level.Trial)
+        public void setUp(CommandEngineBenchmark benchmark, ThreadParams threads) {
+            int size = benchmark.population.size();
+            int threadCount = Math.min(threads.getThreadCount(), size);
+            count = size / threadCount;
+            first = Math.min(threads.getThreadIndex(), threadCount - 1) * count;
+        }
+
+        int next() {
+            cursor = cursor + 1 == count ? 0 : cursor + 1;
+            return first + cursor;
+        }
+    }
+
+    @Benchmark
+    public GuessResult makeGuess(PlayerSlice slice) throws RemoteException {
+        return population.guess(server, slice.next());
+    }
+
+    @Benchmark
+    public int buyTrials(PlayerSlice slice) throws RemoteException {
+        long token = population.tokens[slice.next()];
+        try {
+            return server.buyTrials(token, 1).getScore();
+        } catch (RemoteException e) {
+            return server.getScore(token);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        // ops/s by benchmark and player count, then thread count, then engine.
+        Map<String, Map<Integer, Map<String, Double>>> scores = new TreeMap<>();
+
+        int threads = 1;
+        while (true) {
+            for (RunResult result : new Runner(new OptionsBuilder()
+                    .include(CommandEngineBenchmark.class.getName())
+                    .threads(threads)
+                    .mode(Mode.Throughput)
+                    .timeUnit(TimeUnit.SECONDS)
+                    .build()).run()) {
+                BenchmarkParams params = result.getParams();
+                String benchmark = params.getBenchmark().substring(params.getBenchmark().lastIndexOf('.') + 1);
+                scores.computeIfAbsent(benchmark + ", " + params.getParam("players") + " players", key -> new TreeMap<>())
+                        .computeIfAbsent(threads, key -> new TreeMap<>())
+                        .put(params.getParam("engine"), result.getPrimaryResult().getScore());
+            }
+            if (threads >= maxThreads) {
+                break;
+            }
+            threads = Math.min(threads * 2, maxThreads);
+        }
+
+        for (Map.Entry<String, Map<Integer, Map<String, Double>>> benchmark : scores.entrySet()) {
+            System.out.println();
+            System.out.println(benchmark.getKey());
+            System.out.printf("%8s %16s %16s %8s%n", "threads", "locks ops/s", "writer ops/s", "ratio");
+            for (Map.Entry<Integer, Map<String, Double>> row : benchmark.getValue().entrySet()) {
+                double locks = row.getValue().getOrDefault("locks", Double.NaN);
+                double writer = row.getValue().getOrDefault("single-writer", Double.NaN);
+                System.out.printf("%8d %16.0f %16.0f %8.2f%n", row.getKey(), locks, writer, writer / locks);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.rmi.RemoteException;
+import java.util.List;
+
+// In-process calls straight on GameServer, without any RMI marshalling.
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class GameServerBenchmark {
+    private static final int REGISTRATION_IDS = 10_000;
+
+    @Param({"100", "10000", "1000000"})
+    public int players;
+
+    GameServer server;
+    BenchmarkPlayers population;
+
+    @Setup(Level.Trial)
+    public void setUp() throws RemoteException {
+        server = new GameServer();
+        population = new BenchmarkPlayers(server, players);
+    }
+
+    // Each benchmark thread drives its own slice of the population, so players are never shared
+    // between threads and contention comes only from shared rooms and tables.
+    @State(Scope.Thread)
+    public static class PlayerSlice {
+        int first;
+        int count;
+        int cursor;
+        int registrations;
+
+        @Setup(Level.Trial)
+        public void setUp(GameServerBenchmark benchmark, ThreadParams threads) {
+            int size = benchmark.population.size();
+            int threadCount = Math.min(threads.getThreadCount(), size);
+            count = size / threadCount;
+            first = Math.min(threads.getThreadIndex(), threadCount - 1) * count;
+            registrations = threads.getThreadIndex() * REGISTRATION_IDS;
+        }
+
+        int next() {
+            cursor = cursor + 1 == count ? 0 : cursor + 1;
+            return first + cursor;
+        }
+    }
+
+    @Benchmark
+    public GuessResult makeGuess(PlayerSlice slice) throws RemoteException {
+        return population.guess(server, slice.next());
+    }
+
+    @Benchmark
+    public int buyTrials(PlayerSlice slice) throws RemoteException {
+        long token = population.tokens[slice.next()];
+        try {
+            return server.buyTrials(token, 1).getScore();
+        } catch (RemoteException e) {
+            return server.getScore(token);
+        }
+    }
+
+    @Benchmark
+    public int getScore() throws RemoteException {
+        return server.getScore(population.tokens[population.randomPlayer()]);
+    }
+
+    @Benchmark
+    public List<LeaderboardEntry> getLeaderboard() throws RemoteException {
+        return server.getLeaderboard(10);
+    }
+
+    @Benchmark
+    public int getRank() throws RemoteException {
+        return server.getRank(population.tokens[population.randomPlayer()]);
+    }
+
+    // Re-registers a bounded set of ids so the player table does not grow during the run.
+    @Benchmark
+    public SessionHandle registerClient(PlayerSlice slice) throws RemoteException {
+        String clientId = "bench-register-" + (slice.registrations++ % REGISTRATION_IDS);
+        return server.registerClient(new BenchmarkPlayers.NoopCallback(clientId), clientId);
+    }
+}
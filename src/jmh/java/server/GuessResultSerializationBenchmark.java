@@ -0,0 +1,83 @@
+package server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+// Encodes a typical "Too small! Very close!" response the way an RMI call does: one object per
+// fresh stream, class descriptor included. Compares the message-code encoding with the old one.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class GuessResultSerializationBenchmark {
+    GuessResult compact;
+    byte[] compactBytes;
+    byte[] legacyBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        compact = new GuessResult(GuessResult.Status.TOO_SMALL, GuessResult.MessageCode.VERY_CLOSE, 20, 140, 3, 7);
+        compactBytes = serialize(compact);
+        legacyBytes = serialize(legacy());
+        System.out.println("Bytes per response: compact=" + compactBytes.length + " legacy=" + legacyBytes.length);
+    }
+
+    // Includes building the message text, which the server did on every guess before.
+    private static LegacyGuessResult legacy() {
+        String message = "Too small! ";
+        message += "Very close!";
+        return new LegacyGuessResult(GuessResult.Status.TOO_SMALL, 20, 140, 3, 7, message);
+    }
+
+    static byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+
+    @Benchmark
+    public byte[] writeCompact() throws IOException {
+        return serialize(new GuessResult(GuessResult.Status.TOO_SMALL, GuessResult.MessageCode.VERY_CLOSE, 20, 140, 3, 7));
+    }
+
+    @Benchmark
+    public byte[] writeLegacy() throws IOException {
+        return serialize(legacy());
+    }
+
+    // The compact form renders its text on read, so this includes the client-side message rendering.
+    @Benchmark
+    public String readCompact() throws IOException, ClassNotFoundException {
+        return ((GuessResult) deserialize(compactBytes)).getMessage();
+    }
+
+    @Benchmark
+    public String readLegacy() throws IOException, ClassNotFoundException {
+        return ((LegacyGuessResult) deserialize(legacyBytes)).getMessage();
+    }
+}
@@ -0,0 +1,28 @@
+package server;
+
+import java.io.Serializable;
+
+// The GuessResult wire form before the Externalizable encoding, kept as the baseline for GuessResultSerializationBenchmark.
+public class LegacyGuessResult implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final GuessResult.Status status;
+    private final int scoreChange;
+    private final int currentScore;
+    private final int remainingTrials;
+    private final int roomId;
+    private final String message;
+
+    public LegacyGuessResult(GuessResult.Status status, int scoreChange, int currentScore, int remainingTrials, int roomId, String message) {
+        this.status = status;
+        this.scoreChange = scoreChange;
+        this.currentScore = currentScore;
+        this.remainingTrials = remainingTrials;
+        this.roomId = roomId;
+        this.message = message;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
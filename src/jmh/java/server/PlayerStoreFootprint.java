@@ -0,0 +1,141 @@
+package server;
+
+import client.ClientCallbackInterface;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Heap footprint and collector cost of holding players, which JMH does not measure. For each layout
+// and player count it adds that many players, then reports the live heap they take after a full
+// collection, the collections spent while adding them, and how long a full collection takes with
+// them live. Layouts:
+//   maps   - the maps GameServer used for offline players before PlayerStore: score << 32 | trials
+//            and the parked token per client id, boxed, in ConcurrentHashMaps
+//   store  - PlayerStore with its leaderboard, players parked offline
+//   server - GameServer.adopt, players parked offline as a cluster node takes them over
+//   online - GameServer.registerClient: every player online in the lobby with a callback, as a
+//            server holds its connected players; the callbacks are one shared object, so only what
+//            the server keeps per player is counted
+// gradle playerFootprint -Pplayers=1000000,10000000 -Playouts=maps,store
+public class PlayerStoreFootprint {
+    public static void main(String[] args) throws RemoteException {
+        String[] layouts = (args.length > 0 ? args[0] : "maps,store,server,online").split(",");
+        String[] counts = (args.length > 1 ? args[1] : "1000000,10000000").split(",");
+
+        System.out.printf("%-8s %10s %10s %12s %10s %12s %14s%n",
+                "layout", "players", "heap MB", "bytes/player", "GCs", "GC ms", "full GC ms");
+        for (String count : counts) {
+            for (String layout : layouts) {
+                measure(layout, Integer.parseInt(count));
+            }
+        }
+    }
+
+    private static void measure(String layout, int players) throws RemoteException {
+        long baseline = liveHeap();
+        long gcCount = gcCount();
+        long gcMillis = gcMillis();
+
+        Object population = populate(layout, players);
+        long collections = gcCount() - gcCount;
+        long collectionMillis = gcMillis() - gcMillis;
+        long used = liveHeap() - baseline;
+
+        long start = System.nanoTime();
+        System.gc();
+        long fullMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        System.out.printf("%-8s %10d %10d %12d %10d %12d %14d%n", layout, players, used >> 20, used / players,
+                collections, collectionMillis, fullMillis);
+        // Keeps the population reachable until it has been measured.
+        if (population.hashCode() == 42) {
+            System.out.print("");
+        }
+    }
+
+    private static Object populate(String layout, int players) throws RemoteException {
+        switch (layout) {
+            case "maps": {
+                Map<String, Long> offlinePlayers = new ConcurrentHashMap<>();
+                Map<String, Long> parkedSessions = new ConcurrentHashMap<>();
+                for (int i = 0; i < players; i++) {
+                    String clientId = "player-" + i;
+                    offlinePlayers.put(clientId, (long) (100 + i % 1000) << 32 | (i % 10));
+                    parkedSessions.put(clientId, token(i));
+                }
+                return List.of(offlinePlayers, parkedSessions);
+            }
+            case "store": {
+                // Nothing reads the leaderboard here, so it needs no client ids.
+                PlayerStore store = new PlayerStore(new Leaderboard(slot -> null));
+                for (int i = 0; i < players; i++) {
+                    store.park("player-" + i, token(i), 100 + i % 1000, i % 10, RoomTable.LOBBY_ID);
+                }
+                return store;
+            }
+            case "server": {
+                GameServer server = new GameServer();
+                List<PlayerHandoff> batch = new ArrayList<>();
+                for (int i = 0; i < players; i++) {
+                    batch.add(new PlayerHandoff("player-" + i, token(i), 100 + i % 1000, i % 10, RoomTable.LOBBY_ID));
+                    if (batch.size() == 10_000) {
+                        server.adopt(batch);
+                        batch.clear();
+                    }
+                }
+                server.adopt(batch);
+                return server;
+            }
+            case "online": {
+                GameServer server = new GameServer();
+                ClientCallbackInterface callback = new ClientCallbackInterface() {
+                    @Override
+                    public void notifyNumberReset(String winnerMessage) {
+                    }
+
+                    @Override
+                    public String getClientId() {
+                        return null;
+                    }
+                };
+                for (int i = 0; i < players; i++) {
+                    server.registerClient(callback, "player-" + i);
+                }
+                return server;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown layout " + layout);
+        }
+    }
+
+    private static long token(int i) {
+        return i * 0x9E3779B97F4A7C15L | 1;
+    }
+
+    private static long liveHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+}
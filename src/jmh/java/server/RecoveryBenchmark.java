@@ -0,0 +1,86 @@
+package server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Startup cost of GameServer.recover(): load a snapshot of every player, then replay a journal tail
+// holding further mutations of a tenth of them.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class RecoveryBenchmark {
+    @Param({"1000000"})
+    public int players;
+
+    Path directory;
+    PlayerJournal journal;
+
+    @Setup(Level.Trial)
+    public void populate() throws Exception {
+        directory = Files.createTempDirectory("game-recovery-bench");
+        PlayerJournal writer = PlayerJournal.open(directory, 5, 200);
+        GameServer server = new GameServer(GameEventLog.disabled(), writer);
+        server.recover();
+
+        long[] tokens = new long[players];
+        for (int i = 0; i < players; i++) {
+            String clientId = "recovery-" + i;
+            tokens[i] = server.registerClient(new BenchmarkPlayers.NoopCallback(clientId), clientId).getToken();
+        }
+        while (!hasSnapshot()) {
+            Thread.sleep(50);
+        }
+        for (int i = 0; i < players; i += 10) {
+            server.buyTrials(tokens[i], 1);
+        }
+        writer.close();
+    }
+
+    private boolean hasSnapshot() throws IOException {
+        try (DirectoryStream<Path> snapshots = Files.newDirectoryStream(directory, "snapshot-*.snap")) {
+            return snapshots.iterator().hasNext();
+        }
+    }
+
+    @Benchmark
+    public long recover() throws IOException {
+        journal = PlayerJournal.open(directory, 5, 0);
+        return new GameServer(GameEventLog.disabled(), journal).recover();
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeJournal() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
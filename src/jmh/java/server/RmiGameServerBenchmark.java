@@ -0,0 +1,109 @@
+package server;
+
+import client.ClientCallbackInterface;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+
+// The same operations through a stub looked up from a real Registry on loopback.
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RmiGameServerBenchmark {
+    @Param({"100", "10000", "1000000"})
+    public int players;
+
+    GameServer server;
+    Registry registry;
+    GameInterface stub;
+    BenchmarkPlayers population;
+    ClientCallbackInterface callback;
+    ClientCallbackInterface callbackStub;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, NotBoundException {
+        server = new GameServer();
+        // Players are registered in-process; registering a million through the stub would dominate the setup.
+        population = new BenchmarkPlayers(server, players);
+
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        registry = LocateRegistry.createRegistry(port);
+        registry.rebind("GuessingGame", UnicastRemoteObject.exportObject(server, 0));
+        stub = (GameInterface) LocateRegistry.getRegistry("localhost", port).lookup("GuessingGame");
+
+        callback = new BenchmarkPlayers.NoopCallback("bench-rmi-register");
+        callbackStub = (ClientCallbackInterface) UnicastRemoteObject.exportObject(callback, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws RemoteException {
+        UnicastRemoteObject.unexportObject(callback, true);
+        UnicastRemoteObject.unexportObject(server, true);
+        UnicastRemoteObject.unexportObject(registry, true);
+    }
+
+    @State(Scope.Thread)
+    public static class PlayerSlice {
+        int first;
+        int count;
+        int cursor;
+
+        @Setup(Level.Trial)
+        public void setUp(RmiGameServerBenchmark benchmark, ThreadParams threads) {
+            int size = benchmark.population.size();
+            int threadCount = Math.min(threads.getThreadCount(), size);
+            count = size / threadCount;
+            first = Math.min(threads.getThreadIndex(), threadCount - 1) * count;
+        }
+
+        int next() {
+            cursor = cursor + 1 == count ? 0 : cursor + 1;
+            return first + cursor;
+        }
+    }
+
+    @Benchmark
+    public GuessResult makeGuess(PlayerSlice slice) throws RemoteException {
+        return population.guess(stub, slice.next());
+    }
+
+    @Benchmark
+    public int buyTrials(PlayerSlice slice) throws RemoteException {
+        long token = population.tokens[slice.next()];
+        try {
+            return stub.buyTrials(token, 1).getScore();
+        } catch (RemoteException e) {
+            return stub.getScore(token);
+        }
+    }
+
+    @Benchmark
+    public int getScore() throws RemoteException {
+        return stub.getScore(population.tokens[population.randomPlayer()]);
+    }
+
+    @Benchmark
+    public SessionHandle registerClient() throws RemoteException {
+        return stub.registerClient(callbackStub, "bench-rmi-register");
+    }
+}
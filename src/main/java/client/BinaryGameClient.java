@@ -0,0 +1,352 @@
+package client;
+
+import server.BinaryProtocol;
+import server.GuessResult;
+import server.LeaderboardEntry;
+import server.PlayerState;
+import server.SessionGameInterface;
+import server.SessionHandle;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// Client for BinaryProtocolServer. The *Async methods may be called back to back without waiting:
+// each request is written immediately and its future completes when the matching response arrives,
+// so many requests can be in flight on the one connection. The blocking methods implement
+// SessionGameInterface, which makes this a drop-in replacement for the RMI stub: they wait at most
+// the timeout, and a failed call throws the same RemoteException subclass the stub would.
+public class BinaryGameClient implements SessionGameInterface, AutoCloseable {
+    public static final int DEFAULT_TIMEOUT_MILLIS = 10_000;
+
+    private final SocketChannel channel;
+    private final long timeoutMillis;
+    private final Thread reader;
+    private final Object writeLock = new Object();
+    private final AtomicInteger nextRequestId = new AtomicInteger(1);
+    private final Map<Integer, Pending<?>> pending = new ConcurrentHashMap<>();
+    private final Map<String, ClientCallbackInterface> callbacks = new ConcurrentHashMap<>();
+    private volatile IOException failure;
+
+    private static final class Pending<T> {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final Function<ByteBuffer, T> decoder;
+
+        Pending(Function<ByteBuffer, T> decoder) {
+            this.decoder = decoder;
+        }
+
+        void complete(ByteBuffer body) {
+            try {
+                future.complete(decoder.apply(body));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    public BinaryGameClient(String host, int port) throws IOException {
+        this(host, port, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    // timeoutMillis bounds both the connect and each blocking call.
+    public BinaryGameClient(String host, int port, int timeoutMillis) throws IOException {
+        this.timeoutMillis = timeoutMillis;
+        this.channel = SocketChannel.open();
+        try {
+            channel.socket().connect(new InetSocketAddress(host, port), timeoutMillis);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        channel.socket().setTcpNoDelay(true);
+        this.reader = new Thread(this::readLoop, "binary-client-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    public CompletableFuture<SessionHandle> registerClientAsync(ClientCallbackInterface callback, String clientId) {
+        ByteBuffer frame = newRequest(BinaryProtocol.REGISTER, BinaryProtocol.stringLength(clientId));
+        BinaryProtocol.putString(frame, clientId);
+        callbacks.put(clientId, callback);
+        return send(frame, body -> new SessionHandle(body.getLong(), clientId, body.getInt()));
+    }
+
+    public CompletableFuture<SessionHandle> resumeSessionAsync(ClientCallbackInterface callback, String clientId, long sessionToken) {
+        ByteBuffer frame = newRequest(BinaryProtocol.RESUME, 8 + BinaryProtocol.stringLength(clientId));
+        frame.putLong(sessionToken);
+        BinaryProtocol.putString(frame, clientId);
+        callbacks.put(clientId, callback);
+        return send(frame, body -> new SessionHandle(body.getLong(), clientId, body.getInt()));
+    }
+
+    public CompletableFuture<Long> heartbeatAsync(long sessionToken) {
+        ByteBuffer frame = newRequest(BinaryProtocol.HEARTBEAT, 8);
+        frame.putLong(sessionToken);
+        return send(frame, ByteBuffer::getLong);
+    }
+
+    public CompletableFuture<PlayerState> buyTrialsAsync(long sessionToken, int numberOfTrials) {
+        ByteBuffer frame = newRequest(BinaryProtocol.BUY_TRIALS, 12);
+        frame.putLong(sessionToken).putInt(numberOfTrials);
+        return send(frame, BinaryProtocol::getPlayerState);
+    }
+
+    public CompletableFuture<GuessResult> makeGuessAsync(long sessionToken, int guess) {
+        ByteBuffer frame = newRequest(BinaryProtocol.MAKE_GUESS, 12);
+        frame.putLong(sessionToken).putInt(guess);
+        return send(frame, BinaryProtocol::getGuessResult);
+    }
+
+    public CompletableFuture<Integer> getScoreAsync(long sessionToken) {
+        ByteBuffer frame = newRequest(BinaryProtocol.GET_SCORE, 8);
+        frame.putLong(sessionToken);
+        return send(frame, ByteBuffer::getInt);
+    }
+
+    public CompletableFuture<PlayerState> getStateAsync(long sessionToken, long sinceVersion) {
+        ByteBuffer frame = newRequest(BinaryProtocol.GET_STATE, 16);
+        frame.putLong(sessionToken).putLong(sinceVersion);
+        return send(frame, BinaryProtocol::getPlayerState);
+    }
+
+    public CompletableFuture<Integer> createRoomAsync(long sessionToken, String name) {
+        String roomName = name == null ? "" : name;
+        ByteBuffer frame = newRequest(BinaryProtocol.CREATE_ROOM, 8 + BinaryProtocol.stringLength(roomName));
+        frame.putLong(sessionToken);
+        BinaryProtocol.putString(frame, roomName);
+        return send(frame, ByteBuffer::getInt);
+    }
+
+    public CompletableFuture<Void> joinRoomAsync(long sessionToken, int roomId) {
+        ByteBuffer frame = newRequest(BinaryProtocol.JOIN_ROOM, 12);
+        frame.putLong(sessionToken).putInt(roomId);
+        return send(frame, body -> null);
+    }
+
+    public CompletableFuture<Integer> getRoomIdAsync(long sessionToken) {
+        ByteBuffer frame = newRequest(BinaryProtocol.GET_ROOM, 8);
+        frame.putLong(sessionToken);
+        return send(frame, ByteBuffer::getInt);
+    }
+
+    public CompletableFuture<List<GuessResult>> makeGuessesAsync(long sessionToken, int[] guesses) {
+        ByteBuffer frame = newRequest(BinaryProtocol.MAKE_GUESSES, 12 + guesses.length * 4);
+        frame.putLong(sessionToken);
+        BinaryProtocol.putInts(frame, guesses);
+        return send(frame, BinaryProtocol::getGuessResults);
+    }
+
+    public CompletableFuture<List<GuessResult>> buyTrialsAndGuessAsync(long sessionToken, int numberOfTrials, int[] guesses) {
+        ByteBuffer frame = newRequest(BinaryProtocol.BUY_AND_GUESS, 16 + guesses.length * 4);
+        frame.putLong(sessionToken).putInt(numberOfTrials);
+        BinaryProtocol.putInts(frame, guesses);
+        return send(frame, BinaryProtocol::getGuessResults);
+    }
+
+    public CompletableFuture<List<LeaderboardEntry>> getLeaderboardAsync(int k) {
+        ByteBuffer frame = newRequest(BinaryProtocol.LEADERBOARD, 4);
+        frame.putInt(k);
+        return send(frame, BinaryProtocol::getLeaderboard);
+    }
+
+    public CompletableFuture<Integer> getRankAsync(long sessionToken) {
+        ByteBuffer frame = newRequest(BinaryProtocol.GET_RANK, 8);
+        frame.putLong(sessionToken);
+        return send(frame, ByteBuffer::getInt);
+    }
+
+    @Override
+    public SessionHandle registerClient(ClientCallbackInterface client, String clientId) throws RemoteException {
+        return await(registerClientAsync(client, clientId));
+    }
+
+    @Override
+    public SessionHandle resumeSession(ClientCallbackInterface client, String clientId, long sessionToken) throws RemoteException {
+        return await(resumeSessionAsync(client, clientId, sessionToken));
+    }
+
+    @Override
+    public long heartbeat(long sessionToken) throws RemoteException {
+        return await(heartbeatAsync(sessionToken));
+    }
+
+    @Override
+    public int createRoom(long sessionToken, String name) throws RemoteException {
+        return await(createRoomAsync(sessionToken, name));
+    }
+
+    @Override
+    public void joinRoom(long sessionToken, int roomId) throws RemoteException {
+        await(joinRoomAsync(sessionToken, roomId));
+    }
+
+    @Override
+    public int getRoomId(long sessionToken) throws RemoteException {
+        return await(getRoomIdAsync(sessionToken));
+    }
+
+    @Override
+    public PlayerState buyTrials(long sessionToken, int numberOfTrials) throws RemoteException {
+        return await(buyTrialsAsync(sessionToken, numberOfTrials));
+    }
+
+    @Override
+    public GuessResult makeGuess(long sessionToken, int guess) throws RemoteException {
+        return await(makeGuessAsync(sessionToken, guess));
+    }
+
+    @Override
+    public List<GuessResult> makeGuesses(long sessionToken, int[] guesses) throws RemoteException {
+        return await(makeGuessesAsync(sessionToken, guesses));
+    }
+
+    @Override
+    public List<GuessResult> buyTrialsAndGuess(long sessionToken, int numberOfTrials, int[] guesses) throws RemoteException {
+        return await(buyTrialsAndGuessAsync(sessionToken, numberOfTrials, guesses));
+    }
+
+    @Override
+    public int getScore(long sessionToken) throws RemoteException {
+        return await(getScoreAsync(sessionToken));
+    }
+
+    @Override
+    public PlayerState getState(long sessionToken, long sinceVersion) throws RemoteException {
+        return await(getStateAsync(sessionToken, sinceVersion));
+    }
+
+    @Override
+    public List<LeaderboardEntry> getLeaderboard(int k) throws RemoteException {
+        return await(getLeaderboardAsync(k));
+    }
+
+    @Override
+    public int getRank(long sessionToken) throws RemoteException {
+        return await(getRankAsync(sessionToken));
+    }
+
+    private ByteBuffer newRequest(byte opcode, int bodyLength) {
+        return BinaryProtocol.newFrame(opcode, nextRequestId.getAndIncrement(), bodyLength);
+    }
+
+    private <T> CompletableFuture<T> send(ByteBuffer frame, Function<ByteBuffer, T> decoder) {
+        int requestId = frame.getInt(4 + 1);
+        Pending<T> request = new Pending<>(decoder);
+        pending.put(requestId, request);
+        BinaryProtocol.finish(frame);
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+            synchronized (writeLock) {
+                while (frame.hasRemaining()) {
+                    channel.write(frame);
+                }
+            }
+        } catch (IOException e) {
+            pending.remove(requestId);
+            request.future.completeExceptionally(e);
+        }
+        return request.future;
+    }
+
+    private <T> T await(CompletableFuture<T> future) throws RemoteException {
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // A late response finds nothing pending and is dropped.
+            pending.values().removeIf(request -> request.future == future);
+            future.completeExceptionally(e);
+            throw new RemoteException("No response from the server within " + timeoutMillis + " ms", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RemoteException) {
+                throw (RemoteException) cause;
+            }
+            throw new RemoteException(cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for the server", e);
+        }
+    }
+
+    private void readLoop() {
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        try {
+            while (true) {
+                lengthBuffer.clear();
+                readFully(lengthBuffer);
+                int length = lengthBuffer.getInt(0);
+                if (length < 5 || length > BinaryProtocol.MAX_FRAME_LENGTH) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                ByteBuffer frame = ByteBuffer.allocate(length);
+                readFully(frame);
+                frame.flip();
+                dispatch(frame);
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+        IOException cause = failure;
+        for (Integer requestId : pending.keySet()) {
+            Pending<?> request = pending.remove(requestId);
+            if (request != null) {
+                request.future.completeExceptionally(new RemoteException("Connection to the server lost", cause));
+            }
+        }
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Server closed the connection");
+            }
+        }
+    }
+
+    private void dispatch(ByteBuffer frame) {
+        byte opcode = frame.get();
+        int requestId = frame.getInt();
+
+        if (opcode == BinaryProtocol.NOTIFY) {
+            ClientCallbackInterface callback = callbacks.get(BinaryProtocol.getString(frame));
+            String message = BinaryProtocol.getString(frame);
+            if (callback != null) {
+                try {
+                    callback.notifyNumberReset(message);
+                } catch (RemoteException | RuntimeException ignored) {
+                }
+            }
+            return;
+        }
+
+        Pending<?> request = pending.remove(requestId);
+        if (request == null) {
+            return;
+        }
+        if (opcode == BinaryProtocol.ERROR) {
+            request.future.completeExceptionally(BinaryProtocol.getError(frame));
+        } else {
+            request.complete(frame);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,137 @@
+package client;
+
+import server.ClusterView;
+import server.DirectoryInterface;
+import server.GameInterface;
+import server.NodeAddress;
+import server.SessionHandle;
+import server.WrongNodeException;
+
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.ServerException;
+import java.rmi.registry.LocateRegistry;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Client side of cluster mode: reads the directory's view, works out which node owns a player the
+// same way the nodes do (by room id when seated, by client id in the lobby), and talks to that node
+// directly. A session is followed when a node answers WrongNodeException (the player joined a room
+// elsewhere, or a rebalance moved it) or cannot be reached at all (it left the cluster); it is then
+// resumed at the owner under the same token. Handoffs and view changes take a moment to reach every
+// node, so each step retries briefly before giving up.
+final class ClusterRouter {
+    private static final int ATTEMPTS = 20;
+    private static final long RETRY_MILLIS = 100;
+
+    private final DirectoryInterface directory;
+    private final Map<String, GameInterface> nodes = new ConcurrentHashMap<>();
+    private volatile ClusterView view;
+
+    static final class Route {
+        final GameInterface server;
+        final SessionHandle session;
+
+        Route(GameInterface server, SessionHandle session) {
+            this.server = server;
+            this.session = session;
+        }
+    }
+
+    ClusterRouter(String directoryAddress) throws RemoteException, NotBoundException {
+        int colon = directoryAddress.lastIndexOf(':');
+        String host = colon < 0 ? directoryAddress : directoryAddress.substring(0, colon);
+        int port = colon < 0 ? 1098 : Integer.parseInt(directoryAddress.substring(colon + 1));
+        this.directory = (DirectoryInterface) LocateRegistry.getRegistry(host, port).lookup("GameDirectory");
+        this.view = directory.getView();
+    }
+
+    // RMI hands a RemoteException thrown by the server back wrapped in a ServerException; returns the
+    // server's exception if it is of the given type, or null.
+    static <T extends RemoteException> T thrownBy(RemoteException e, Class<T> type) {
+        Throwable thrown = e instanceof ServerException ? e.getCause() : e;
+        return type.isInstance(thrown) ? type.cast(thrown) : null;
+    }
+
+    // True when the failure means the session now lives elsewhere, or its node is gone.
+    static boolean isRelocation(RemoteException e) {
+        return !(e instanceof ServerException) || thrownBy(e, WrongNodeException.class) != null;
+    }
+
+    Route register(ClientCallbackInterface callback, String clientId) throws RemoteException {
+        NodeAddress target = ownerOf(clientId, 0);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                GameInterface server = nodeAt(target);
+                return new Route(server, server.registerClient(callback, clientId));
+            } catch (RemoteException e) {
+                if (attempt == ATTEMPTS || !isRelocation(e)) {
+                    throw e;
+                }
+                target = next(e, clientId, 0);
+                pause();
+            }
+        }
+    }
+
+    // Resumes the session where the player now lives, after a call failed with a relocation.
+    Route follow(RemoteException failure, ClientCallbackInterface callback, String clientId, long sessionToken, int roomId)
+            throws RemoteException {
+        NodeAddress target = next(failure, clientId, roomId);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                GameInterface server = nodeAt(target);
+                return new Route(server, server.resumeSession(callback, clientId, sessionToken));
+            } catch (RemoteException e) {
+                // A plain failure here usually means the handoff has not reached the owner yet.
+                if (attempt == ATTEMPTS) {
+                    throw e;
+                }
+                target = next(e, clientId, roomId);
+                pause();
+            }
+        }
+    }
+
+    private NodeAddress next(RemoteException failure, String clientId, int roomId) throws RemoteException {
+        WrongNodeException moved = thrownBy(failure, WrongNodeException.class);
+        if (moved != null && moved.getOwner() != null) {
+            return moved.getOwner();
+        }
+        if (!(failure instanceof ServerException)) {
+            nodes.clear();
+        }
+        view = directory.getView();
+        return ownerOf(clientId, roomId);
+    }
+
+    private NodeAddress ownerOf(String clientId, int roomId) throws RemoteException {
+        NodeAddress owner = roomId == 0 ? view.ring().ownerOfPlayer(clientId) : view.ring().ownerOfRoom(roomId);
+        if (owner == null) {
+            throw new RemoteException("No game nodes in the cluster");
+        }
+        return owner;
+    }
+
+    private GameInterface nodeAt(NodeAddress node) throws RemoteException {
+        GameInterface server = nodes.get(node.getNodeId());
+        if (server == null) {
+            try {
+                server = (GameInterface) LocateRegistry.getRegistry(node.getHost(), node.getPort()).lookup("GuessingGame");
+            } catch (NotBoundException e) {
+                throw new RemoteException("Node " + node + " has no game bound", e);
+            }
+            nodes.put(node.getNodeId(), server);
+        }
+        return server;
+    }
+
+    private static void pause() throws RemoteException {
+        try {
+            Thread.sleep(RETRY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while following the cluster");
+        }
+    }
+}
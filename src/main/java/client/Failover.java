@@ -0,0 +1,88 @@
+package client;
+
+import server.GameInterface;
+
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.ServerException;
+import java.rmi.registry.LocateRegistry;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Client side of hot-standby failover in single-server mode. When the server cannot be reached, the
+// game is looked up again at each known address until a standby has taken over the binding, and
+// the session is resumed there under the same token. Every player that loses the same server shares
+// one lookup. A ServerException means a server answered, so it is passed on rather than retried;
+// for resumeSession it means the session never reached the standby and the player must register.
+final class Failover {
+    static final long DEFAULT_TIMEOUT_MILLIS = 10_000;
+    private static final long RETRY_MILLIS = 50;
+
+    private final List<String> addresses;
+    private final long timeoutNanos;
+    private volatile GameInterface current;
+
+    // addresses are host:port registries, the primary's first; on one machine a standby takes over the
+    // primary's own port, so the primary's address alone is enough.
+    Failover(List<String> addresses, long timeoutMillis) throws RemoteException {
+        this.addresses = List.copyOf(addresses);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.current = locate(null);
+    }
+
+    static boolean isServerLost(RemoteException e) {
+        return !(e instanceof ServerException);
+    }
+
+    GameInterface current() {
+        return current;
+    }
+
+    ClusterRouter.Route resume(GameInterface failed, ClientCallbackInterface callback, String clientId, long sessionToken)
+            throws RemoteException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        GameInterface target = failed;
+        while (true) {
+            try {
+                target = locate(target);
+                return new ClusterRouter.Route(target, target.resumeSession(callback, clientId, sessionToken));
+            } catch (RemoteException e) {
+                if (!isServerLost(e) || System.nanoTime() - deadline > 0) {
+                    throw e;
+                }
+                pause();
+            }
+        }
+    }
+
+    // Returns the server to use instead of failed: the one another player already found, or a fresh lookup.
+    private synchronized GameInterface locate(GameInterface failed) throws RemoteException {
+        if (current != failed) {
+            return current;
+        }
+        RemoteException lastFailure = null;
+        for (String address : addresses) {
+            int colon = address.lastIndexOf(':');
+            String host = colon < 0 ? address : address.substring(0, colon);
+            int port = colon < 0 ? 1099 : Integer.parseInt(address.substring(colon + 1));
+            try {
+                current = (GameInterface) LocateRegistry.getRegistry(host, port).lookup("GuessingGame");
+                return current;
+            } catch (NotBoundException e) {
+                lastFailure = new RemoteException("No game bound at " + address, e);
+            } catch (RemoteException e) {
+                lastFailure = e;
+            }
+        }
+        throw lastFailure;
+    }
+
+    private static void pause() throws RemoteException {
+        try {
+            Thread.sleep(RETRY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while failing over");
+        }
+    }
+}
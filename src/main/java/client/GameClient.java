@@ -2,25 +2,67 @@ package client;
 
 import server.GameInterface;
 import server.GuessResult;
+import server.PlayerState;
+import server.ServerBusyException;
+import server.SessionHandle;
+import server.WrongNodeException;
 
 import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 import javax.swing.*;
 import javax.swing.border.*;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
 
 public class GameClient extends UnicastRemoteObject implements ClientCallbackInterface {
     private static final long serialVersionUID = 1L;
+    private static final long CALL_TIMEOUT_MILLIS = 10_000;
+
+    private static final class Connection {
+        final GameInterface server;
+        final SessionHandle session;
+        final PlayerState state;
+        final long leaseMillis;
+
+        Connection(GameInterface server, SessionHandle session, PlayerState state, long leaseMillis) {
+            this.server = server;
+            this.session = session;
+            this.state = state;
+            this.leaseMillis = leaseMillis;
+        }
+    }
 
     
     private String clientId;
     private GameInterface server;
+    private long sessionToken;
+    private int roomId;
     private int score;
     private int trials;
+    // The server's version of the score, trials and room above; a refresh with it only transfers changes.
+    private long stateVersion;
+    private int pendingTrials;
+    private int pendingBuys;
+    private int queuedGuesses;
+    private final transient RemoteCallQueue calls = new RemoteCallQueue(CALL_TIMEOUT_MILLIS);
+    // Cluster mode (-Dgame.cluster.directory=host:port); only used on the call queue's thread.
+    private transient ClusterRouter router;
+    // Single-server mode: where to look for the game when the server stops answering. A standby on
+    // the same machine takes over the server's own address; -Dgame.failover.servers=host:port,...
+    // adds standbys elsewhere.
+    private transient volatile Failover failover;
 
     
     private JFrame mainFrame;
@@ -28,17 +70,24 @@ public class GameClient extends UnicastRemoteObject implements ClientCallbackInt
     private JLabel statusLabel;
     private JLabel scoreLabel;
     private JLabel trialsLabel;
-    private JTextArea logArea;
+    private final HistoryModel history = new HistoryModel(HistoryModel.DEFAULT_CAPACITY);
+    private JList<HistoryModel.Entry> historyList;
     private JTextField guessField;
     private JSlider guessSlider;
     private JButton guessButton;
+    private JButton cancelButton;
     private JButton buyTrialsButton;
     private JSpinner trialsSpinner;
+    private JLabel roomLabel;
+    private JTextField roomField;
+    private JButton joinRoomButton;
+    private JButton createRoomButton;
     private JPanel gamePanel;
     private JPanel historyPanel;
     private JPanel connectPanel;
     private JTextField serverField;
     private JButton connectButton;
+    private Timer heartbeatTimer;
 
     public GameClient() throws RemoteException {
         this.clientId = UUID.randomUUID().toString().substring(0, 8);
@@ -53,7 +102,7 @@ public class GameClient extends UnicastRemoteObject implements ClientCallbackInt
     @Override
     public void notifyNumberReset(String winnerMessage) throws RemoteException {
         SwingUtilities.invokeLater(() -> {
-            logArea.append("\n[SERVER NOTIFICATION] " + winnerMessage + "\n");
+            history.add(HistoryModel.Kind.NOTIFICATION, "\n[SERVER NOTIFICATION] " + winnerMessage + "\n");
             JOptionPane.showMessageDialog(mainFrame, winnerMessage, "Game Reset", JOptionPane.INFORMATION_MESSAGE);
         });
     }
@@ -141,10 +190,15 @@ public class GameClient extends UnicastRemoteObject implements ClientCallbackInt
         guessButton.setEnabled(false);
         guessButton.addActionListener(e -> makeGuess());
 
+        cancelButton = new JButton("Cancel Queued");
+        cancelButton.setEnabled(false);
+        cancelButton.addActionListener(e -> cancelQueued());
+
         JPanel guessControlPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
         guessControlPanel.add(new JLabel("Your guess: "));
         guessControlPanel.add(guessField);
         guessControlPanel.add(guessButton);
+        guessControlPanel.add(cancelButton);
 
         guessPanel.add(guessSlider, BorderLayout.CENTER);
         guessPanel.add(guessControlPanel, BorderLayout.SOUTH);
@@ -173,17 +227,75 @@ public class GameClient extends UnicastRemoteObject implements ClientCallbackInt
         buyPanel.add(costLabel);
         buyPanel.add(buyTrialsButton);
 
+        
+        JPanel roomPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 5));
+        roomPanel.setBorder(new CompoundBorder(
+                new TitledBorder("Room"),
+                new EmptyBorder(5, 5, 5, 5)
+        ));
+
+        roomLabel = new JLabel("Room: -");
+        roomField = new JTextField(5);
+        roomField.setHorizontalAlignment(JTextField.CENTER);
+
+        joinRoomButton = new JButton("Join Room");
+        joinRoomButton.setEnabled(false);
+        joinRoomButton.addActionListener(e -> joinRoom());
+
+        createRoomButton = new JButton("New Room");
+        createRoomButton.setEnabled(false);
+        createRoomButton.addActionListener(e -> createRoom());
+
+        roomPanel.add(roomLabel);
+        roomPanel.add(new JLabel("Room id: "));
+        roomPanel.add(roomField);
+        roomPanel.add(joinRoomButton);
+        roomPanel.add(createRoomButton);
+
+        gamePanel.add(roomPanel, BorderLayout.NORTH);
         gamePanel.add(guessPanel, BorderLayout.CENTER);
         gamePanel.add(buyPanel, BorderLayout.SOUTH);
 
         
         historyPanel = new JPanel(new BorderLayout());
-        logArea = new JTextArea();
-        logArea.setEditable(false);
-        logArea.setFont(new Font("Monospaced", Font.PLAIN, 12));
-        JScrollPane scrollPane = new JScrollPane(logArea);
+        historyList = new JList<>(history);
+        historyList.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        // A prototype fixes the cell size, so the list never measures rows it does not paint.
+        historyList.setPrototypeCellValue(new HistoryModel.Entry(0, HistoryModel.Kind.INFO, "X".repeat(100)));
+        historyList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                if (!isSelected) {
+                    setForeground(colorOf(((HistoryModel.Entry) value).kind));
+                }
+                return this;
+            }
+        });
+        history.addListDataListener(new ListDataListener() {
+            @Override
+            public void intervalAdded(ListDataEvent e) {
+                historyList.ensureIndexIsVisible(e.getIndex1());
+            }
+
+            @Override
+            public void intervalRemoved(ListDataEvent e) {
+            }
+
+            @Override
+            public void contentsChanged(ListDataEvent e) {
+            }
+        });
+        JScrollPane scrollPane = new JScrollPane(historyList);
         historyPanel.add(scrollPane, BorderLayout.CENTER);
 
+        JButton exportButton = new JButton("Export History...");
+        exportButton.addActionListener(e -> exportHistory());
+        JPanel exportPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        exportPanel.add(exportButton);
+        historyPanel.add(exportPanel, BorderLayout.SOUTH);
+
         
         connectPanel = new JPanel(new BorderLayout(10, 10));
         connectPanel.setBorder(new EmptyBorder(10, 10, 10, 10));
@@ -235,69 +347,150 @@ public class GameClient extends UnicastRemoteObject implements ClientCallbackInt
 
     private void connectToServer() {
         String host = serverField.getText().trim();
+        connectButton.setEnabled(false);
+        statusLabel.setText("Connecting...");
+        statusLabel.setForeground(Color.ORANGE);
+
+        calls.submit(() -> {
+            GameInterface stub;
+            SessionHandle session;
+            String directory = System.getProperty("game.cluster.directory");
+            if (directory != null) {
+                router = new ClusterRouter(directory);
+                ClusterRouter.Route route = router.register(this, clientId);
+                stub = route.server;
+                session = route.session;
+            } else {
+                List<String> addresses = new ArrayList<>(List.of(host + ":1099"));
+                String standbys = System.getProperty("game.failover.servers");
+                if (standbys != null) {
+                    addresses.addAll(Arrays.asList(standbys.split(",")));
+                }
+                failover = new Failover(addresses, Failover.DEFAULT_TIMEOUT_MILLIS);
+                stub = failover.current();
+                session = stub.registerClient(this, clientId);
+            }
+            return new Connection(stub, session, stub.getState(session.getToken(), 0), stub.heartbeat(session.getToken()));
+        }).whenComplete((connection, failure) -> SwingUtilities.invokeLater(() -> {
+            if (failure != null) {
+                connectButton.setEnabled(true);
+                statusLabel.setText("Not connected");
+                statusLabel.setForeground(Color.RED);
+                history.add(HistoryModel.Kind.ERROR, "Failed to connect: " + describe(failure) + "\n");
+                JOptionPane.showMessageDialog(mainFrame,
+                        "Failed to connect to server: " + describe(failure),
+                        "Connection Error",
+                        JOptionPane.ERROR_MESSAGE);
+                return;
+            }
 
-        try {
-            Registry registry = LocateRegistry.getRegistry(host, 1099);
-            server = (GameInterface) registry.lookup("GuessingGame");
-
-            
-            score = server.registerClient(this);
-            trials = 0;
+            server = connection.server;
+            sessionToken = connection.session.getToken();
+            applyState(connection.state);
 
             
-            statusLabel.setText("Connected");
             statusLabel.setForeground(new Color(0, 128, 0));
-            scoreLabel.setText("Score: " + score);
-            trialsLabel.setText("Trials: " + trials);
 
             
             buyTrialsButton.setEnabled(true);
-            guessButton.setEnabled(trials > 0);
+            joinRoomButton.setEnabled(true);
+            createRoomButton.setEnabled(true);
+            refreshControls();
+            if (connection.leaseMillis > 0) {
+                heartbeatTimer = new Timer((int) Math.max(1000, connection.leaseMillis / 3), e -> refreshState());
+                heartbeatTimer.start();
+            }
 
             
-            logArea.append("Connected to server at " + host + "\n");
-            logArea.append("Initial score: " + score + " points\n");
+            history.add(HistoryModel.Kind.INFO, "Connected to server at " + host + "\n");
+            history.add(HistoryModel.Kind.INFO, "Initial score: " + score + " points\n");
 
             
             ((JTabbedPane) gamePanel.getParent()).setSelectedComponent(gamePanel);
+        }));
+    }
 
-        } catch (Exception e) {
-            logArea.append("Failed to connect: " + e.getMessage() + "\n");
+    private void joinRoom() {
+        int requestedRoom;
+        try {
+            requestedRoom = Integer.parseInt(roomField.getText().trim());
+        } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(mainFrame,
-                    "Failed to connect to server: " + e.getMessage(),
-                    "Connection Error",
-                    JOptionPane.ERROR_MESSAGE);
+                    "Please enter a valid room id.",
+                    "Invalid Room",
+                    JOptionPane.WARNING_MESSAGE);
+            return;
         }
+
+        GameInterface target = server;
+        long token = sessionToken;
+        calls.submit(() -> {
+            try {
+                target.joinRoom(token, requestedRoom);
+                return target;
+            } catch (RemoteException e) {
+                // The room lives on another node, which now holds this session too.
+                if (router == null || ClusterRouter.thrownBy(e, WrongNodeException.class) == null) {
+                    throw e;
+                }
+                return router.follow(e, this, clientId, token, requestedRoom).server;
+            }
+        }).whenComplete((owner, failure) -> SwingUtilities.invokeLater(() -> {
+            if (failure != null) {
+                reportFailure("joining room", failure);
+                return;
+            }
+            server = owner;
+            roomId = requestedRoom;
+            roomLabel.setText("Room: " + roomId);
+            history.add(HistoryModel.Kind.INFO, "Joined room " + roomId + "\n");
+        }));
+    }
+
+    private void createRoom() {
+        GameInterface target = server;
+        long token = sessionToken;
+        calls.submit(() -> target.createRoom(token, "Room of " + clientId))
+                .whenComplete((created, failure) -> SwingUtilities.invokeLater(() -> {
+                    if (failure != null) {
+                        reportFailure("creating room", failure);
+                        return;
+                    }
+                    roomId = created;
+                    roomLabel.setText("Room: " + roomId);
+                    roomField.setText(String.valueOf(roomId));
+                    history.add(HistoryModel.Kind.INFO, "Created and joined room " + roomId + "\n");
+                }));
     }
 
     private void buyTrials() {
         int numberOfTrials = (Integer) trialsSpinner.getValue();
 
-        try {
-            int newScore = server.buyTrials(this, numberOfTrials);
-            trials += numberOfTrials;
-            score = newScore;
-
-            
-            scoreLabel.setText("Score: " + score);
-            trialsLabel.setText("Trials: " + trials);
-            guessButton.setEnabled(true);
-
-            
-            logArea.append("Bought " + numberOfTrials + " trials for " + (numberOfTrials * 10) + " points\n");
-            logArea.append("Current score: " + score + ", Available trials: " + trials + "\n");
+        GameInterface target = server;
+        long token = sessionToken;
+        pendingTrials += numberOfTrials;
+        pendingBuys++;
+        refreshControls();
+
+        calls.submit(() -> target.buyTrials(token, numberOfTrials))
+                .whenComplete((state, failure) -> SwingUtilities.invokeLater(() -> {
+                    pendingTrials -= numberOfTrials;
+                    pendingBuys--;
+                    if (failure != null) {
+                        refreshControls();
+                        reportFailure("buying trials", failure);
+                        return;
+                    }
+                    applyState(state);
 
-        } catch (RemoteException e) {
-            logArea.append("Error buying trials: " + e.getMessage() + "\n");
-            JOptionPane.showMessageDialog(mainFrame,
-                    "Error buying trials: " + e.getMessage(),
-                    "Error",
-                    JOptionPane.ERROR_MESSAGE);
-        }
+                    
+                    history.add(HistoryModel.Kind.INFO, "Bought " + numberOfTrials + " trials for " + (numberOfTrials * 10) + " points\n");
+                    history.add(HistoryModel.Kind.INFO, "Current score: " + score + ", Available trials: " + trials + "\n");
+                }));
     }
 
     private void makeGuess() {
-        if (trials <= 0) {
+        if (availableTrials() <= 0) {
             JOptionPane.showMessageDialog(mainFrame,
                     "No trials left. Please buy more trials.",
                     "No Trials",
@@ -305,81 +498,259 @@ public class GameClient extends UnicastRemoteObject implements ClientCallbackInt
             return;
         }
 
+        int guess;
         try {
-            int guess = Integer.parseInt(guessField.getText());
+            guess = Integer.parseInt(guessField.getText());
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(mainFrame,
+                    "Please enter a valid number.",
+                    "Invalid Input",
+                    JOptionPane.WARNING_MESSAGE);
+            return;
+        }
 
-            if (guess < 1 || guess > 100) {
-                JOptionPane.showMessageDialog(mainFrame,
-                        "Please enter a number between 1 and 100.",
-                        "Invalid Guess",
-                        JOptionPane.WARNING_MESSAGE);
+        if (guess < 1 || guess > 100) {
+            JOptionPane.showMessageDialog(mainFrame,
+                    "Please enter a number between 1 and 100.",
+                    "Invalid Guess",
+                    JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+
+        queuedGuesses++;
+        refreshControls();
+        calls.makeGuess(server, sessionToken, guess)
+                .whenComplete((result, failure) -> SwingUtilities.invokeLater(() -> {
+                    queuedGuesses--;
+                    if (failure != null) {
+                        refreshControls();
+                        if (failure instanceof CancellationException) {
+                            history.add(HistoryModel.Kind.INFO, "Cancelled guess " + guess + "\n");
+                        } else {
+                            reportFailure("making guess", failure);
+                        }
+                        return;
+                    }
+                    showGuessResult(guess, result);
+                }));
+    }
+
+    // Keeps the lease alive while the player is idle and picks up any change the cached state missed,
+    // such as a purchase; while nothing has changed the server answers not-modified. Resumes the
+    // session if it expired anyway, for example while the machine was asleep.
+    private void refreshState() {
+        if (calls.pending() > 0) {
+            return;
+        }
+        GameInterface target = server;
+        long token = sessionToken;
+        long version = stateVersion;
+        int room = roomId;
+        calls.submit(() -> {
+            try {
+                return new Connection(target, null, target.getState(token, version), 0);
+            } catch (RemoteException e) {
+                if (ClusterRouter.thrownBy(e, ServerBusyException.class) != null) {
+                    throw e;
+                }
+                if (router != null && ClusterRouter.isRelocation(e)) {
+                    ClusterRouter.Route route = router.follow(e, this, clientId, token, room);
+                    return new Connection(route.server, route.session, route.server.getState(token, 0), 0);
+                }
+                if (router == null && Failover.isServerLost(e)) {
+                    return failOver(target, token);
+                }
+                SessionHandle resumed = target.resumeSession(this, clientId, token);
+                return new Connection(target, resumed, target.getState(token, 0), 0);
+            }
+        }).whenComplete((refreshed, failure) -> SwingUtilities.invokeLater(() -> {
+            if (failure != null) {
+                history.add(HistoryModel.Kind.ERROR, "Heartbeat failed: " + describe(failure));
                 return;
             }
+            if (refreshed.server != server) {
+                history.add(HistoryModel.Kind.INFO, router != null ? "Session moved to another cluster node"
+                        : refreshed.session.getToken() == token ? "Server failed over; session resumed on the standby"
+                        : "Server failed over; the session was lost, registered again with the last replicated score");
+                server = refreshed.server;
+            } else if (refreshed.session != null) {
+                history.add(HistoryModel.Kind.INFO, "Session expired and was resumed in the lobby");
+            }
+            if (refreshed.session != null) {
+                sessionToken = refreshed.session.getToken();
+            }
+            applyState(refreshed.state);
+        }));
+    }
 
-            GuessResult result = server.makeGuess(this, guess);
+    // Resumes the session wherever the game was bound next. A session started within the replication
+    // lag never reached the standby, so the player registers there instead.
+    private Connection failOver(GameInterface failed, long token) throws RemoteException {
+        try {
+            ClusterRouter.Route route = failover.resume(failed, this, clientId, token);
+            return new Connection(route.server, route.session, route.server.getState(token, 0), 0);
+        } catch (RemoteException e) {
+            if (Failover.isServerLost(e)) {
+                throw e;
+            }
+            GameInterface standby = failover.current();
+            SessionHandle session = standby.registerClient(this, clientId);
+            return new Connection(standby, session, standby.getState(session.getToken(), 0), 0);
+        }
+    }
 
+    private void applyState(PlayerState state) {
+        if (!state.isModified()) {
+            return;
+        }
+        stateVersion = state.getVersion();
+        score = state.getScore();
+        trials = state.getTrials();
+        roomId = state.getRoomId();
+        scoreLabel.setText("Score: " + score);
+        trialsLabel.setText("Trials: " + trials);
+        roomLabel.setText("Room: " + roomId);
+        refreshControls();
+    }
+
+    // Cancels the guesses and purchases that are still queued behind the call in flight.
+    private void cancelQueued() {
+        calls.cancelPending();
+    }
+
+    private void showGuessResult(int guess, GuessResult result) {
+        // Turned away before it was judged: the score and trials we have are still current.
+        if (result.getStatus() == GuessResult.Status.REJECTED) {
+            history.add(HistoryModel.Kind.ERROR, "Guess " + guess + " not sent: " + result.getMessage() + "\n");
+            refreshControls();
+            return;
+        }
+
+        stateVersion = result.getStateVersion();
+        score = result.getCurrentScore();
+        trials = result.getRemainingTrials();
+        scoreLabel.setText("Score: " + score);
+        trialsLabel.setText("Trials: " + trials);
+        refreshControls();
+
+        
+        history.add(HistoryModel.Kind.GUESS, "\n----- Guess: " + guess + " -----\n");
+        history.add(HistoryModel.Kind.GUESS, result.getMessage() + "\n");
+
+        String resultMessage = result.getMessage();
+        Icon icon = null;
+        String title = "";
+
+        if (result.getStatus() == GuessResult.Status.CORRECT) {
             
-            score = result.getCurrentScore();
-            trials = result.getRemainingTrials();
-            scoreLabel.setText("Score: " + score);
-            trialsLabel.setText("Trials: " + trials);
-            guessButton.setEnabled(trials > 0);
+            title = "You Won!";
+            icon = UIManager.getIcon("OptionPane.informationIcon");
+            history.add(HistoryModel.Kind.WIN, "You won! Refund: " + result.getScoreChange() + " points\n");
 
             
-            logArea.append("\n----- Guess: " + guess + " -----\n");
-            logArea.append(result.getMessage() + "\n");
+            showWinAnimation();
+        } else if (result.getStatus() == GuessResult.Status.ERROR) {
+            
+            title = "Error";
+            icon = UIManager.getIcon("OptionPane.errorIcon");
+        } else {
+            
+            String direction = (result.getStatus() == GuessResult.Status.TOO_SMALL) ?
+                    "Your guess is too small" : "Your guess is too big";
+            history.add(HistoryModel.Kind.GUESS, direction + "\n");
 
-            String resultMessage = result.getMessage();
-            Icon icon = null;
-            String title = "";
+            String scoreChangeText = (result.getScoreChange() >= 0 ? "+" : "") +
+                    result.getScoreChange() + " points";
+            history.add(HistoryModel.Kind.GUESS, "Score change: " + scoreChangeText + "\n");
 
-            if (result.getStatus() == GuessResult.Status.CORRECT) {
-                
-                title = "You Won!";
+            title = "Guess Result";
+            if (result.getScoreChange() > 0) {
                 icon = UIManager.getIcon("OptionPane.informationIcon");
-                logArea.append("You won! Refund: " + result.getScoreChange() + " points\n");
-
-                
-                showWinAnimation();
-            } else if (result.getStatus() == GuessResult.Status.ERROR) {
-                
-                title = "Error";
-                icon = UIManager.getIcon("OptionPane.errorIcon");
             } else {
-                
-                String direction = (result.getStatus() == GuessResult.Status.TOO_SMALL) ?
-                        "Your guess is too small" : "Your guess is too big";
-                logArea.append(direction + "\n");
-
-                String scoreChangeText = (result.getScoreChange() >= 0 ? "+" : "") +
-                        result.getScoreChange() + " points";
-                logArea.append("Score change: " + scoreChangeText + "\n");
-
-                title = "Guess Result";
-                if (result.getScoreChange() > 0) {
-                    icon = UIManager.getIcon("OptionPane.informationIcon");
-                } else {
-                    icon = UIManager.getIcon("OptionPane.warningIcon");
-                }
+                icon = UIManager.getIcon("OptionPane.warningIcon");
             }
+        }
 
-            logArea.append("Current score: " + score + ", Remaining trials: " + trials + "\n");
+        history.add(HistoryModel.Kind.GUESS, "Current score: " + score + ", Remaining trials: " + trials + "\n");
 
-            
+        // Only the last of a run of queued guesses gets a dialog; the rest are in the log.
+        if (queuedGuesses == 0) {
             JOptionPane.showMessageDialog(mainFrame, resultMessage, title, JOptionPane.PLAIN_MESSAGE, icon);
+        }
+    }
 
-        } catch (NumberFormatException e) {
-            JOptionPane.showMessageDialog(mainFrame,
-                    "Please enter a valid number.",
-                    "Invalid Input",
-                    JOptionPane.WARNING_MESSAGE);
-        } catch (RemoteException e) {
-            logArea.append("Error making guess: " + e.getMessage() + "\n");
-            JOptionPane.showMessageDialog(mainFrame,
-                    "Error making guess: " + e.getMessage(),
-                    "Error",
-                    JOptionPane.ERROR_MESSAGE);
+    private int availableTrials() {
+        return trials + pendingTrials - queuedGuesses;
+    }
+
+    private void refreshControls() {
+        int inFlight = queuedGuesses + pendingBuys;
+        guessButton.setEnabled(server != null && availableTrials() > 0);
+        cancelButton.setEnabled(inFlight > 0);
+        statusLabel.setText(inFlight > 0 ? "Connected (" + inFlight + " pending)" : "Connected");
+    }
+
+    private void reportFailure(String action, Throwable failure) {
+        if (failure instanceof CancellationException) {
+            history.add(HistoryModel.Kind.INFO, "Cancelled " + action + "\n");
+            return;
         }
+        history.add(HistoryModel.Kind.ERROR, "Error " + action + ": " + describe(failure) + "\n");
+        // The server is gone: fail over now rather than at the next heartbeat.
+        if (failover != null && failure instanceof RemoteException && Failover.isServerLost((RemoteException) failure)) {
+            refreshState();
+        }
+        JOptionPane.showMessageDialog(mainFrame,
+                "Error " + action + ": " + describe(failure),
+                "Error",
+                JOptionPane.ERROR_MESSAGE);
+    }
+
+    private static String describe(Throwable failure) {
+        if (failure instanceof TimeoutException) {
+            return "the server did not answer within " + CALL_TIMEOUT_MILLIS / 1000 + " seconds";
+        }
+        return failure.getMessage();
+    }
+
+    private static Color colorOf(HistoryModel.Kind kind) {
+        switch (kind) {
+            case WIN:
+                return new Color(0, 128, 0);
+            case NOTIFICATION:
+                return Color.BLUE;
+            case ERROR:
+                return Color.RED;
+            default:
+                return Color.BLACK;
+        }
+    }
+
+    private void exportHistory() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File("history-" + clientId + ".txt"));
+        if (chooser.showSaveDialog(mainFrame) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path file = chooser.getSelectedFile().toPath();
+        List<HistoryModel.Entry> entries = history.snapshot();
+
+        new SwingWorker<Long, Void>() {
+            @Override
+            protected Long doInBackground() throws IOException {
+                return history.export(entries, file);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    long exported = get();
+                    history.add(HistoryModel.Kind.INFO, "Exported " + exported + " history entries to " + file);
+                } catch (Exception e) {
+                    reportFailure("exporting history", e instanceof ExecutionException ? e.getCause() : e);
+                }
+            }
+        }.execute();
     }
 
     private void showWinAnimation() {
@@ -0,0 +1,192 @@
+package client;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.swing.AbstractListModel;
+import javax.swing.Timer;
+
+// The client's history as a fixed-capacity ring of entries behind a JList. add() only buffers the
+// entry; a one-shot timer folds everything added within a frame into the ring and fires a single
+// removed/added pair, so a burst of results costs one relayout instead of one per line. Once the
+// ring is full the oldest entries leave the list and are appended to a spill file by a background
+// thread; export writes the spill file and then the ring, so the whole session stays exportable.
+// Must be used on the EDT, apart from export.
+final class HistoryModel extends AbstractListModel<HistoryModel.Entry> {
+    private static final long serialVersionUID = 1L;
+    static final int DEFAULT_CAPACITY = 5000;
+    private static final int FRAME_MILLIS = 16;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    enum Kind {INFO, GUESS, WIN, NOTIFICATION, ERROR}
+
+    static final class Entry {
+        final long timeMillis;
+        final Kind kind;
+        final String text;
+
+        Entry(long timeMillis, Kind kind, String text) {
+            this.timeMillis = timeMillis;
+            this.kind = kind;
+            this.text = text;
+        }
+
+        @Override
+        public String toString() {
+            LocalTime time = LocalTime.ofInstant(Instant.ofEpochMilli(timeMillis), ZoneId.systemDefault());
+            return TIME_FORMAT.format(time) + "  " + text;
+        }
+    }
+
+    private final Entry[] ring;
+    private int head;
+    private int size;
+    private final List<Entry> pending = new ArrayList<>();
+    private final Timer flushTimer;
+    // Spill writes and exports run in order on this thread, so an export sees every entry spilled before it.
+    private final transient ExecutorService spiller = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "history-spill");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private transient Path spillFile;
+    private long spilled;
+    private long lost;
+
+    HistoryModel(int capacity) {
+        this.ring = new Entry[capacity];
+        this.flushTimer = new Timer(FRAME_MILLIS, e -> flush());
+        flushTimer.setRepeats(false);
+    }
+
+    // One entry per non-blank line, so callers can keep passing multi-line messages.
+    void add(Kind kind, String message) {
+        long now = System.currentTimeMillis();
+        for (String line : message.split("\n")) {
+            if (!line.isBlank()) {
+                pending.add(new Entry(now, kind, line));
+            }
+        }
+        if (!pending.isEmpty() && !flushTimer.isRunning()) {
+            flushTimer.start();
+        }
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public Entry getElementAt(int index) {
+        return ring[(head + index) % ring.length];
+    }
+
+    private void flush() {
+        int incoming = pending.size();
+        int skipped = Math.max(0, incoming - ring.length);
+        incoming -= skipped;
+
+        int evicted = Math.max(0, size + incoming - ring.length);
+        List<Entry> leaving = new ArrayList<>(evicted + skipped);
+        if (evicted > 0) {
+            for (int i = 0; i < evicted; i++) {
+                leaving.add(ring[(head + i) % ring.length]);
+                ring[(head + i) % ring.length] = null;
+            }
+            head = (head + evicted) % ring.length;
+            size -= evicted;
+            fireIntervalRemoved(this, 0, evicted - 1);
+        }
+        leaving.addAll(pending.subList(0, skipped));
+        if (!leaving.isEmpty()) {
+            spiller.execute(() -> spill(leaving));
+        }
+
+        int first = size;
+        for (int i = skipped; i < pending.size(); i++) {
+            ring[(head + size) % ring.length] = pending.get(i);
+            size++;
+        }
+        pending.clear();
+        if (size > first) {
+            fireIntervalAdded(this, first, size - 1);
+        }
+    }
+
+    // Spill thread only.
+    private void spill(List<Entry> entries) {
+        try {
+            if (spillFile == null) {
+                spillFile = Files.createTempFile("history-", ".txt");
+                spillFile.toFile().deleteOnExit();
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.APPEND)) {
+                write(writer, entries);
+            }
+            spilled += entries.size();
+        } catch (IOException e) {
+            lost += entries.size();
+        }
+    }
+
+    // Copies the retained entries so the export can be written off the EDT.
+    List<Entry> snapshot() {
+        flush();
+        List<Entry> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            entries.add(getElementAt(i));
+        }
+        return entries;
+    }
+
+    // Writes every spilled entry and then the snapshot to file; call it off the EDT, with a snapshot
+    // taken after everything to be exported was added. Returns the number of entries written.
+    long export(List<Entry> retained, Path file) throws IOException {
+        try {
+            return spiller.submit(() -> {
+                try (OutputStream out = Files.newOutputStream(file)) {
+                    BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                    if (lost > 0) {
+                        writer.write("# " + lost + " earlier entries could not be kept for export");
+                        writer.newLine();
+                    }
+                    writer.flush();
+                    if (spillFile != null) {
+                        Files.copy(spillFile, out);
+                    }
+                    write(writer, retained);
+                    writer.flush();
+                }
+                return spilled + retained.size();
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    private static void write(BufferedWriter writer, List<Entry> entries) throws IOException {
+        for (Entry entry : entries) {
+            writer.write(Instant.ofEpochMilli(entry.timeMillis) + "\t" + entry.kind + "\t" + entry.text);
+            writer.newLine();
+        }
+    }
+}
@@ -0,0 +1,480 @@
+package client;
+
+import server.GuessResult;
+import server.LatencyHistogram;
+import server.PlayerState;
+import server.SessionHandle;
+import server.SpectatorBatch;
+import server.SpectatorEvent;
+import server.WrongNodeException;
+
+import java.io.PrintStream;
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Headless load driver: simulates thousands of players against a running GameServer and reports
+// per-method throughput, errors and latency, plus how long win notifications take to arrive.
+//
+// Usage: LoadGenerator [host=localhost] [port=1099] [players=1000] [concurrency=64] [rate=0]
+//                      [duration=60] [report=5] [playersPerRoom=50] [mix=random:1,binary:1,buyer:1]
+//                      [directory=host:port] [standby=host:port,...] [failoverTimeout=10]
+//                      [spectators=0] [spectatorInterval=0]
+// With directory set, players are spread over the cluster's nodes and follow their sessions when
+// a room join or a rebalance moves them; host and port are then ignored. Otherwise a player whose
+// server stops answering fails over: it resumes its session wherever the game is bound next, at
+// host:port or one of the standby addresses, and the failover row shows how long that took from
+// the failed call's start.
+// spectators follow the server's spectator stream alongside the players, each polling at most every
+// spectatorInterval milliseconds; the spectator lag row runs from the start of a winning guess to
+// each spectator's delivery of the win, and counts as errors the summaries sent to spectators that
+// fell behind.
+// rate is the target number of operations per second across all workers (0 = as fast as possible).
+// With a target rate, latency is measured from each operation's scheduled start, so queueing
+// behind a slow call is counted instead of hidden.
+public class LoadGenerator {
+    private final Map<String, String> config;
+    private final int playerCount;
+    private final int concurrency;
+    private final long intervalNanos;
+    private final AtomicLong nextSlot = new AtomicLong();
+
+    private final Map<String, MethodStats> stats = new LinkedHashMap<>();
+    private final MethodStats registerStats = stat("registerClient");
+    private final MethodStats joinStats = stat("createRoom/joinRoom");
+    private final MethodStats buyStats = stat("buyTrials");
+    private final MethodStats guessStats = stat("makeGuess");
+    private final MethodStats stateStats = stat("getState");
+    private final MethodStats failoverStats = stat("failover");
+    private final LatencyHistogram callbackLag = new LatencyHistogram();
+    private final LatencyHistogram spectatorLag = new LatencyHistogram();
+    private final LongAdder spectatorSummaries = new LongAdder();
+    private final List<Spectator> spectators = new ArrayList<>();
+    private final LongAdder notifications = new LongAdder();
+    private final LongAdder wins = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder followed = new LongAdder();
+
+    private final Map<String, SimulatedPlayer> playersById = new ConcurrentHashMap<>();
+    private final Map<String, Long> winStarts = new ConcurrentHashMap<>();
+    private final List<SimulatedPlayer> players = new ArrayList<>();
+    private Failover failover;
+    private ClusterRouter router;
+    private volatile boolean running = true;
+    private long startNanos;
+
+    static final class MethodStats {
+        final String name;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+
+        MethodStats(String name) {
+            this.name = name;
+        }
+    }
+
+    private interface RemoteCall<T> {
+        T call() throws RemoteException;
+    }
+
+    LoadGenerator(Map<String, String> config) {
+        this.config = config;
+        this.playerCount = intOption("players", 1000);
+        this.concurrency = Math.max(1, intOption("concurrency", 64));
+        int rate = intOption("rate", 0);
+        this.intervalNanos = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+    }
+
+    private MethodStats stat(String name) {
+        MethodStats methodStats = new MethodStats(name);
+        stats.put(name, methodStats);
+        return methodStats;
+    }
+
+    private int intOption(String name, int defaultValue) {
+        String value = config.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    void run() throws Exception {
+        String directory = config.get("directory");
+        if (directory != null) {
+            router = new ClusterRouter(directory);
+        } else {
+            List<String> addresses = new ArrayList<>();
+            addresses.add(config.getOrDefault("host", "localhost") + ":" + intOption("port", 1099));
+            if (config.containsKey("standby")) {
+                addresses.addAll(Arrays.asList(config.get("standby").split(",")));
+            }
+            failover = new Failover(addresses, TimeUnit.SECONDS.toMillis(intOption("failoverTimeout", 10)));
+        }
+
+        createPlayers();
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        try {
+            registerPlayers(workers);
+            System.out.println("Registered " + players.size() + " players");
+            startSpectators();
+
+            startNanos = System.nanoTime();
+            nextSlot.set(startNanos);
+            for (int i = 0; i < concurrency; i++) {
+                int workerIndex = i;
+                workers.execute(() -> drive(workerIndex));
+            }
+
+            long deadline = startNanos + TimeUnit.SECONDS.toNanos(intOption("duration", 60));
+            long reportNanos = TimeUnit.SECONDS.toNanos(intOption("report", 5));
+            while (System.nanoTime() < deadline) {
+                LockSupport.parkNanos(Math.min(reportNanos, deadline - System.nanoTime()));
+                report(System.out);
+            }
+        } finally {
+            running = false;
+            spectators.forEach(Spectator::stop);
+            workers.shutdown();
+            workers.awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+        System.out.println("=== Final ===");
+        report(System.out);
+        for (SimulatedPlayer player : players) {
+            try {
+                UnicastRemoteObject.unexportObject(player, true);
+            } catch (NoSuchObjectException ignored) {
+            }
+        }
+    }
+
+    private void startSpectators() throws Exception {
+        int count = intOption("spectators", 0);
+        for (int i = 0; i < count; i++) {
+            Spectator spectator = new Spectator(config.getOrDefault("host", "localhost"), intOption("port", 1099),
+                    intOption("spectatorInterval", 0));
+            spectators.add(spectator);
+            Thread thread = new Thread(() -> {
+                try {
+                    spectator.follow(this::spectated);
+                } catch (RemoteException e) {
+                    if (running) {
+                        System.err.println("Spectator stopped: " + e);
+                    }
+                }
+            }, "spectator-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        if (count > 0) {
+            System.out.println("Started " + count + " spectators");
+        }
+    }
+
+    private void spectated(SpectatorBatch batch) {
+        long now = System.nanoTime();
+        if (batch.getSkipped() > 0) {
+            spectatorSummaries.increment();
+        }
+        for (SpectatorEvent event : batch.getEvents()) {
+            if (event.getKind() != SpectatorEvent.Kind.ROUND_WON) {
+                continue;
+            }
+            Long winStart = winStarts.get(event.getClientId());
+            if (winStart != null) {
+                spectatorLag.record(now - winStart);
+            }
+        }
+    }
+
+    private void createPlayers() {
+        List<SimulatedPlayer.Strategy> mix = new ArrayList<>();
+        for (String entry : config.getOrDefault("mix", "random:1,binary:1,buyer:1").split(",")) {
+            String[] parts = entry.split(":");
+            int weight = parts.length > 1 ? Integer.parseInt(parts[1]) : 1;
+            SimulatedPlayer.Strategy strategy;
+            switch (parts[0].trim().toLowerCase()) {
+                case "binary":
+                    strategy = SimulatedPlayer.Strategy.BINARY_SEARCH;
+                    break;
+                case "buyer":
+                    strategy = SimulatedPlayer.Strategy.HEAVY_BUYER;
+                    break;
+                default:
+                    strategy = SimulatedPlayer.Strategy.RANDOM;
+                    break;
+            }
+            for (int i = 0; i < weight; i++) {
+                mix.add(strategy);
+            }
+        }
+
+        String prefix = "load-" + Long.toHexString(System.nanoTime() & 0xffffff) + "-";
+        for (int i = 0; i < playerCount; i++) {
+            SimulatedPlayer player = new SimulatedPlayer(prefix + i, mix.get(i % mix.size()), this);
+            players.add(player);
+            playersById.put(player.clientId, player);
+        }
+    }
+
+    private void registerPlayers(ExecutorService workers) throws Exception {
+        int playersPerRoom = Math.max(0, intOption("playersPerRoom", 50));
+        int groupSize = playersPerRoom == 0 ? 1 : playersPerRoom;
+        List<Future<?>> groups = new ArrayList<>();
+
+        for (int first = 0; first < players.size(); first += groupSize) {
+            List<SimulatedPlayer> group = players.subList(first, Math.min(first + groupSize, players.size()));
+            groups.add(workers.submit(() -> {
+                for (SimulatedPlayer player : group) {
+                    ClientCallbackInterface stub = (ClientCallbackInterface) UnicastRemoteObject.exportObject(player, 0);
+                    register(player, stub);
+                    if (playersPerRoom > 0) {
+                        SimulatedPlayer owner = group.get(0);
+                        if (player == owner) {
+                            player.roomId = timed(joinStats, System.nanoTime(),
+                                    () -> player.server.createRoom(player.sessionToken, "load-room-" + player.clientId));
+                        } else {
+                            player.roomId = owner.roomId;
+                            joinRoom(player, owner.roomId);
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> group : groups) {
+            group.get();
+        }
+    }
+
+    private void register(SimulatedPlayer player, ClientCallbackInterface stub) throws RemoteException {
+        SessionHandle session = timed(registerStats, System.nanoTime(), () -> {
+            if (router == null) {
+                player.server = failover.current();
+                return player.server.registerClient(stub, player.clientId);
+            }
+            ClusterRouter.Route route = router.register(stub, player.clientId);
+            player.server = route.server;
+            return route.session;
+        });
+        player.sessionToken = session.getToken();
+        player.score = session.getScore();
+        player.trials = 0;
+    }
+
+    // Each worker owns the players whose index matches it modulo concurrency, so a player is never driven by two threads.
+    private void drive(int workerIndex) {
+        Random random = ThreadLocalRandom.current();
+        int cursor = workerIndex;
+
+        while (running && workerIndex < players.size()) {
+            long start = pace();
+            SimulatedPlayer player = players.get(cursor);
+            cursor += concurrency;
+            if (cursor >= players.size()) {
+                cursor = workerIndex;
+            }
+
+            try {
+                step(player, start, random);
+            } catch (RemoteException e) {
+                // Already counted against the method that failed.
+                if (router != null ? ClusterRouter.isRelocation(e) : Failover.isServerLost(e)) {
+                    follow(player, e, start);
+                }
+            }
+        }
+    }
+
+    // In cluster mode a join can land on another node; the session then continues there.
+    private void joinRoom(SimulatedPlayer player, int roomId) throws RemoteException {
+        timed(joinStats, System.nanoTime(), () -> {
+            try {
+                player.server.joinRoom(player.sessionToken, roomId);
+            } catch (RemoteException e) {
+                if (router == null || ClusterRouter.thrownBy(e, WrongNodeException.class) == null) {
+                    throw e;
+                }
+                player.server = router.follow(e, (ClientCallbackInterface) UnicastRemoteObject.toStub(player),
+                        player.clientId, player.sessionToken, roomId).server;
+                followed.increment();
+            }
+            return null;
+        });
+    }
+
+    // A rebalance moved the player's session, its node left, or its server failed over to a standby;
+    // resume it where it went. If the session is gone for good (its node died, or it never reached
+    // the standby), the player starts over in the lobby.
+    private void follow(SimulatedPlayer player, RemoteException failure, long start) {
+        ClientCallbackInterface stub;
+        try {
+            stub = (ClientCallbackInterface) UnicastRemoteObject.toStub(player);
+        } catch (NoSuchObjectException e) {
+            return;
+        }
+        try {
+            ClusterRouter.Route route = router != null
+                    ? router.follow(failure, stub, player.clientId, player.sessionToken, player.roomId)
+                    : timed(failoverStats, start, () -> failover.resume(player.server, stub, player.clientId, player.sessionToken));
+            player.server = route.server;
+            // Changes within the replication lag did not survive a failover.
+            player.score = route.session.getScore();
+            followed.increment();
+        } catch (RemoteException e) {
+            try {
+                register(player, stub);
+                player.roomId = 0;
+            } catch (RemoteException again) {
+                // Tried again on the player's next turn.
+            }
+        }
+    }
+
+    private long pace() {
+        if (intervalNanos == 0) {
+            return System.nanoTime();
+        }
+        long slot = nextSlot.getAndAdd(intervalNanos);
+        long wait;
+        while (running && (wait = slot - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+        return slot;
+    }
+
+    private void step(SimulatedPlayer player, long start, Random random) throws RemoteException {
+        if (player.trials == 0) {
+            int toBuy = player.trialsToBuy();
+            if (toBuy == 0) {
+                // Out of points: come back as a fresh player under the same id.
+                ClientCallbackInterface stub = (ClientCallbackInterface) UnicastRemoteObject.toStub(player);
+                register(player, stub);
+                if (player.roomId != 0) {
+                    try {
+                        joinRoom(player, player.roomId);
+                    } catch (RemoteException e) {
+                        player.roomId = 0;
+                    }
+                }
+                return;
+            }
+            PlayerState state = timed(buyStats, start, () -> player.server.buyTrials(player.sessionToken, toBuy));
+            player.score = state.getScore();
+            player.trials = state.getTrials();
+            return;
+        }
+
+        if (random.nextInt(20) == 0) {
+            PlayerState state = timed(stateStats, start, () -> player.server.getState(player.sessionToken, player.stateVersion));
+            if (!state.isModified()) {
+                notModified.increment();
+            }
+            player.onState(state);
+            return;
+        }
+
+        int guess = player.nextGuess(random);
+        winStarts.remove(player.clientId);
+        player.guessStartNanos = start;
+        GuessResult result = timed(guessStats, start, () -> player.server.makeGuess(player.sessionToken, guess));
+        if (result.getStatus() == GuessResult.Status.REJECTED) {
+            guessStats.errors.increment();
+        } else if (result.getStatus() == GuessResult.Status.CORRECT) {
+            winStarts.put(player.clientId, start);
+            wins.increment();
+        }
+        player.onResult(guess, result);
+    }
+
+    private <T> T timed(MethodStats methodStats, long start, RemoteCall<T> call) throws RemoteException {
+        try {
+            T result = call.call();
+            methodStats.latency.record(System.nanoTime() - start);
+            return result;
+        } catch (RemoteException | RuntimeException e) {
+            methodStats.latency.record(System.nanoTime() - start);
+            methodStats.errors.increment();
+            throw e;
+        }
+    }
+
+    // Lag runs from the start of the winning guess to this delivery. If the winner's response has not
+    // been processed yet, its in-flight guess is the winning one.
+    void notificationReceived(String message) {
+        long now = System.nanoTime();
+        notifications.increment();
+
+        int end = message.indexOf(" won!");
+        if (!message.startsWith("Client ") || end < 0) {
+            return;
+        }
+        String winnerId = message.substring("Client ".length(), end);
+        Long winStart = winStarts.get(winnerId);
+        if (winStart == null) {
+            SimulatedPlayer winner = playersById.get(winnerId);
+            if (winner == null) {
+                return;
+            }
+            winStart = winner.guessStartNanos;
+        }
+        callbackLag.record(now - winStart);
+    }
+
+    private void report(PrintStream out) {
+        double elapsed = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+        out.printf("--- %.1fs elapsed, %d wins, %d notifications, %d state reads not modified, %d sessions followed ---%n",
+                elapsed, wins.sum(), notifications.sum(), notModified.sum(), followed.sum());
+        out.printf("%-20s %10s %8s %10s %10s %10s %10s %10s%n",
+                "method", "calls", "errors", "ops/s", "p50(us)", "p99(us)", "p999(us)", "max(us)");
+        for (MethodStats methodStats : stats.values()) {
+            LatencyHistogram.Snapshot snapshot = methodStats.latency.snapshot();
+            printRow(out, methodStats.name, snapshot, methodStats.errors.sum(), snapshot.getCount() / elapsed);
+        }
+        LatencyHistogram.Snapshot lag = callbackLag.snapshot();
+        printRow(out, "notify lag", lag, 0, lag.getCount() / elapsed);
+        if (!spectators.isEmpty()) {
+            LatencyHistogram.Snapshot watched = spectatorLag.snapshot();
+            printRow(out, "spectator lag", watched, spectatorSummaries.sum(), watched.getCount() / elapsed);
+        }
+    }
+
+    private static void printRow(PrintStream out, String name, LatencyHistogram.Snapshot snapshot, long errors, double rate) {
+        out.printf("%-20s %10d %8d %10.0f %10d %10d %10d %10d%n", name, snapshot.getCount(), errors, rate,
+                snapshot.getPercentile(0.50) / 1000, snapshot.getPercentile(0.99) / 1000,
+                snapshot.getPercentile(0.999) / 1000, snapshot.getMax() / 1000);
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> config = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator > 0) {
+                config.put(arg.substring(0, separator), arg.substring(separator + 1));
+            }
+        }
+
+        try {
+            new LoadGenerator(config).run();
+            System.exit(0);
+        } catch (Exception e) {
+            System.err.println("Load generator exception: " + e.toString());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package client;
+
+import server.GuessResult;
+import server.SessionGameInterface;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Runs a client's remote calls in submission order on one background thread, so the caller (the
+// Swing EDT) never blocks and can keep queueing. Guesses that pile up behind an in-flight call are
+// sent together in one makeGuesses round trip. Every future times out after timeoutMillis, counted
+// from submission, and cancelling a future that has not been sent yet drops it from the queue.
+final class RemoteCallQueue {
+    interface RemoteCall<T> {
+        T call() throws Exception;
+    }
+
+    private static final int MAX_GUESS_BATCH = 32;
+
+    private final long timeoutMillis;
+    private final ExecutorService executor;
+    private final Deque<Entry<?>> queue = new ArrayDeque<>();
+    private boolean draining;
+
+    private static class Entry<T> {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final RemoteCall<T> call;
+
+        Entry(RemoteCall<T> call) {
+            this.call = call;
+        }
+
+        void run() {
+            try {
+                future.complete(call.call());
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static final class GuessEntry extends Entry<GuessResult> {
+        final SessionGameInterface server;
+        final long sessionToken;
+        final int guess;
+
+        GuessEntry(SessionGameInterface server, long sessionToken, int guess) {
+            super(() -> server.makeGuess(sessionToken, guess));
+            this.server = server;
+            this.sessionToken = sessionToken;
+            this.guess = guess;
+        }
+
+        boolean batchesWith(GuessEntry other) {
+            return server == other.server && sessionToken == other.sessionToken;
+        }
+    }
+
+    RemoteCallQueue(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        this.executor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "remote-calls");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    <T> CompletableFuture<T> submit(RemoteCall<T> call) {
+        return enqueue(new Entry<>(call));
+    }
+
+    CompletableFuture<GuessResult> makeGuess(SessionGameInterface server, long sessionToken, int guess) {
+        return enqueue(new GuessEntry(server, sessionToken, guess));
+    }
+
+    synchronized int pending() {
+        return queue.size();
+    }
+
+    // Cancels everything not yet sent; a call already on the wire still runs to completion on the
+    // server, only its result is discarded.
+    void cancelPending() {
+        List<Entry<?>> cancelled;
+        synchronized (this) {
+            cancelled = new ArrayList<>(queue);
+            queue.clear();
+        }
+        for (Entry<?> entry : cancelled) {
+            entry.future.cancel(false);
+        }
+    }
+
+    void shutdown() {
+        cancelPending();
+        executor.shutdownNow();
+    }
+
+    private <T> CompletableFuture<T> enqueue(Entry<T> entry) {
+        entry.future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        boolean startDrain;
+        synchronized (this) {
+            queue.add(entry);
+            startDrain = !draining;
+            draining = true;
+        }
+        if (startDrain) {
+            executor.execute(this::drain);
+        }
+        return entry.future;
+    }
+
+    private void drain() {
+        while (true) {
+            Entry<?> head;
+            List<GuessEntry> batch = null;
+            synchronized (this) {
+                head = nextLive();
+                if (head == null) {
+                    draining = false;
+                    return;
+                }
+                if (head instanceof GuessEntry) {
+                    batch = takeGuessBatch((GuessEntry) head);
+                }
+            }
+            if (batch == null || batch.size() == 1) {
+                head.run();
+            } else {
+                runBatch(batch);
+            }
+        }
+    }
+
+    private Entry<?> nextLive() {
+        Entry<?> entry;
+        while ((entry = queue.poll()) != null && entry.future.isDone()) {
+        }
+        return entry;
+    }
+
+    private List<GuessEntry> takeGuessBatch(GuessEntry first) {
+        List<GuessEntry> batch = new ArrayList<>();
+        batch.add(first);
+        Iterator<Entry<?>> it = queue.iterator();
+        while (it.hasNext() && batch.size() < MAX_GUESS_BATCH) {
+            Entry<?> next = it.next();
+            if (next.future.isDone()) {
+                it.remove();
+                continue;
+            }
+            if (!(next instanceof GuessEntry) || !first.batchesWith((GuessEntry) next)) {
+                break;
+            }
+            batch.add((GuessEntry) next);
+            it.remove();
+        }
+        return batch;
+    }
+
+    // makeGuesses stops at the first CORRECT or ERROR result; the guesses it did not reach go back
+    // to the front of the queue so they are answered exactly as if they had been sent one by one.
+    private void runBatch(List<GuessEntry> batch) {
+        int[] guesses = new int[batch.size()];
+        for (int i = 0; i < guesses.length; i++) {
+            guesses[i] = batch.get(i).guess;
+        }
+        GuessEntry first = batch.get(0);
+        List<GuessResult> results;
+        try {
+            results = first.server.makeGuesses(first.sessionToken, guesses);
+        } catch (Exception e) {
+            for (GuessEntry entry : batch) {
+                entry.future.completeExceptionally(e);
+            }
+            return;
+        }
+        for (int i = 0; i < results.size(); i++) {
+            batch.get(i).future.complete(results.get(i));
+        }
+        synchronized (this) {
+            for (int i = batch.size() - 1; i >= results.size(); i--) {
+                queue.addFirst(batch.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package client;
+
+import server.GameInterface;
+import server.GuessResult;
+import server.PlayerState;
+
+import java.util.Random;
+
+// One headless player: its callback, its client-side view of score and trials, and how it picks guesses.
+class SimulatedPlayer implements ClientCallbackInterface {
+    enum Strategy {
+        RANDOM, BINARY_SEARCH, HEAVY_BUYER
+    }
+
+    final String clientId;
+    final Strategy strategy;
+    private final LoadGenerator generator;
+
+    // The node holding this player's session; the only server in single-node mode.
+    GameInterface server;
+    long sessionToken;
+    int roomId;
+    int score;
+    int trials;
+    long stateVersion;
+    volatile long guessStartNanos;
+    private int low = 1;
+    private int high = 100;
+    private volatile boolean roundReset;
+
+    SimulatedPlayer(String clientId, Strategy strategy, LoadGenerator generator) {
+        this.clientId = clientId;
+        this.strategy = strategy;
+        this.generator = generator;
+    }
+
+    @Override
+    public void notifyNumberReset(String winnerMessage) {
+        roundReset = true;
+        generator.notificationReceived(winnerMessage);
+    }
+
+    @Override
+    public String getClientId() {
+        return clientId;
+    }
+
+    int trialsToBuy() {
+        int affordable = score / 10;
+        return Math.min(strategy == Strategy.HEAVY_BUYER ? 10 : 3, affordable);
+    }
+
+    int nextGuess(Random random) {
+        if (roundReset) {
+            roundReset = false;
+            low = 1;
+            high = 100;
+        }
+        if (strategy == Strategy.BINARY_SEARCH) {
+            if (low > high) {
+                low = 1;
+                high = 100;
+            }
+            return (low + high) >>> 1;
+        }
+        return random.nextInt(100) + 1;
+    }
+
+    void onResult(int guess, GuessResult result) {
+        // A rejected guess was never judged and carries no score or trials.
+        if (result.getStatus() == GuessResult.Status.REJECTED) {
+            return;
+        }
+        stateVersion = result.getStateVersion();
+        score = result.getCurrentScore();
+        trials = result.getRemainingTrials();
+        if (result.getStatus() == GuessResult.Status.TOO_SMALL) {
+            low = Math.max(low, guess + 1);
+        } else if (result.getStatus() == GuessResult.Status.TOO_BIG) {
+            high = Math.min(high, guess - 1);
+        } else if (result.getStatus() == GuessResult.Status.CORRECT) {
+            low = 1;
+            high = 100;
+        }
+    }
+
+    void onState(PlayerState state) {
+        if (state.isModified()) {
+            stateVersion = state.getVersion();
+            score = state.getScore();
+            trials = state.getTrials();
+            roomId = state.getRoomId();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package client;
+
+import server.GuessResult;
+import server.SpectatorBatch;
+import server.SpectatorEvent;
+import server.SpectatorFeed;
+import server.SpectatorSource;
+
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Follows a server's spectator stream, keeping its own cursor: the client side of a dashboard or
+// stream overlay. With an interval it polls at most that often and receives the windows in between
+// together, which is all a screen refreshing at that rate needs. Run on its own it prints every event.
+//
+// Usage: Spectator [host=localhost] [port=1099] [interval=0]
+public class Spectator {
+    private static final long WAIT_MILLIS = 1000;
+
+    interface Listener {
+        void batch(SpectatorBatch batch);
+    }
+
+    private final SpectatorSource source;
+    private final long intervalNanos;
+    private volatile boolean running = true;
+    private long cursor;
+
+    Spectator(String host, int port, long intervalMillis) throws RemoteException, NotBoundException {
+        this.source = (SpectatorSource) LocateRegistry.getRegistry(host, port).lookup(SpectatorFeed.BINDING);
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+    }
+
+    // Runs until stop() or the server fails; starts with a summary of every room.
+    void follow(Listener listener) throws RemoteException {
+        while (running) {
+            long start = System.nanoTime();
+            SpectatorBatch batch = source.watch(cursor, WAIT_MILLIS);
+            cursor = batch.getSequence();
+            listener.batch(batch);
+            long pause = intervalNanos - (System.nanoTime() - start);
+            if (pause > 0) {
+                LockSupport.parkNanos(pause);
+            }
+        }
+    }
+
+    void stop() {
+        running = false;
+    }
+
+    private static void print(SpectatorBatch batch) {
+        if (batch.getSkipped() > 0) {
+            System.out.println("-- fell behind, skipped " + batch.getSkipped() + " windows --");
+        }
+        for (SpectatorEvent event : batch.getEvents()) {
+            switch (event.getKind()) {
+                case GUESS:
+                    System.out.printf("room %d: %s guessed %d, %s%s%n", event.getRoomId(), event.getClientId(),
+                            event.getValue(), event.getStatus() == GuessResult.Status.TOO_SMALL ? "too small" : "too big",
+                            describe(event.getHint()));
+                    break;
+                case ROUND_WON:
+                    System.out.printf("room %d: %s won round %d with %d, score %d%n", event.getRoomId(),
+                            event.getClientId(), event.getRound(), event.getValue(), event.getScore());
+                    break;
+                default:
+                    System.out.printf("room %d: round %d%s%n", event.getRoomId(), event.getRound(),
+                            batch.isSummary() ? " in progress" : " started");
+                    break;
+            }
+        }
+        if (batch.getOmittedGuesses() > 0) {
+            System.out.println("   ... and " + batch.getOmittedGuesses() + " more guesses");
+        }
+    }
+
+    private static String describe(GuessResult.MessageCode hint) {
+        if (hint == GuessResult.MessageCode.VERY_CLOSE) {
+            return " (very close)";
+        }
+        return hint == GuessResult.MessageCode.GETTING_CLOSER ? " (getting closer)" : "";
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> config = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator > 0) {
+                config.put(arg.substring(0, separator), arg.substring(separator + 1));
+            }
+        }
+
+        try {
+            new Spectator(config.getOrDefault("host", "localhost"), Integer.parseInt(config.getOrDefault("port", "1099")),
+                    Long.parseLong(config.getOrDefault("interval", "0")))
+                    .follow(Spectator::print);
+        } catch (Exception e) {
+            System.err.println("Spectator exception: " + e.toString());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
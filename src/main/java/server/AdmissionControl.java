@@ -0,0 +1,298 @@
+package server;
+
+import client.ClientCallbackInterface;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Sits in front of the game and turns calls away before they cost anything. Each player has a token
+// bucket (keyed by session token, client id or callback stub, whichever the call carries; a
+// registration is keyed by its client id, since each binary connection sends a fresh callback), and all
+// calls share a fixed number of slots with a short, bounded wait for one to free up. A rejected
+// makeGuess returns a REJECTED result; other methods throw ServerBusyException. Buckets that have
+// refilled are dropped by a periodic sweep, so idle players cost nothing.
+final class AdmissionControl implements InvocationHandler, AdmissionControlMXBean {
+    static final String OBJECT_NAME = "server:type=AdmissionControl";
+    static final double DEFAULT_PLAYER_CALLS_PER_SECOND = 50;
+    static final int DEFAULT_PLAYER_BURST = 100;
+    static final int DEFAULT_MAX_QUEUED_CALLS = 64;
+    static final long DEFAULT_MAX_QUEUE_WAIT_MILLIS = 50;
+    private static final long SWEEP_INTERVAL_MILLIS = 10_000;
+
+    private final GameInterface target;
+    private final Map<Object, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final ResizableSemaphore slots;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejectedByPlayerLimit = new LongAdder();
+    private final LongAdder rejectedByOverload = new LongAdder();
+    private final ScheduledExecutorService sweeper;
+    private volatile double playerCallsPerSecond;
+    private volatile int playerBurst;
+    private volatile int maxQueuedCalls;
+    private volatile long maxQueueWaitMillis;
+    private int maxConcurrentCalls;
+
+    private static final class ResizableSemaphore extends Semaphore {
+        private static final long serialVersionUID = 1L;
+
+        ResizableSemaphore(int permits) {
+            super(permits);
+        }
+
+        void shrink(int permits) {
+            reducePermits(permits);
+        }
+    }
+
+    private static final class TokenBucket {
+        private double tokens;
+        private long refilledNanos;
+
+        TokenBucket(int burst, long now) {
+            this.tokens = burst;
+            this.refilledNanos = now;
+        }
+
+        synchronized boolean tryTake(double callsPerSecond, int burst, long now) {
+            refill(callsPerSecond, burst, now);
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+
+        synchronized boolean isFull(double callsPerSecond, int burst, long now) {
+            refill(callsPerSecond, burst, now);
+            return tokens >= burst;
+        }
+
+        private void refill(double callsPerSecond, int burst, long now) {
+            tokens = Math.min(burst, tokens + (now - refilledNanos) * callsPerSecond / 1e9);
+            refilledNanos = now;
+        }
+    }
+
+    AdmissionControl(GameInterface target, double playerCallsPerSecond, int playerBurst,
+                     int maxConcurrentCalls, int maxQueuedCalls, long maxQueueWaitMillis) {
+        if (maxConcurrentCalls < 1) {
+            throw new IllegalArgumentException("maxConcurrentCalls must be at least 1");
+        }
+        this.target = target;
+        this.playerCallsPerSecond = playerCallsPerSecond;
+        this.playerBurst = Math.max(1, playerBurst);
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.slots = new ResizableSemaphore(maxConcurrentCalls);
+        this.maxQueuedCalls = maxQueuedCalls;
+        this.maxQueueWaitMillis = maxQueueWaitMillis;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "admission-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::dropIdleBuckets, SWEEP_INTERVAL_MILLIS, SWEEP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // game.admission.playerRate / playerBurst / maxConcurrent / maxQueued / queueWaitMillis.
+    static AdmissionControl fromSystemProperties(GameInterface target) {
+        return new AdmissionControl(target,
+                Double.parseDouble(System.getProperty("game.admission.playerRate",
+                        String.valueOf(DEFAULT_PLAYER_CALLS_PER_SECOND))),
+                Integer.getInteger("game.admission.playerBurst", DEFAULT_PLAYER_BURST),
+                Integer.getInteger("game.admission.maxConcurrent", Runtime.getRuntime().availableProcessors() * 4),
+                Integer.getInteger("game.admission.maxQueued", DEFAULT_MAX_QUEUED_CALLS),
+                Long.getLong("game.admission.queueWaitMillis", DEFAULT_MAX_QUEUE_WAIT_MILLIS));
+    }
+
+    GameInterface proxy() {
+        return (GameInterface) Proxy.newProxyInstance(GameInterface.class.getClassLoader(),
+                new Class<?>[]{GameInterface.class}, this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        // Heartbeats are always let through: shedding them would expire the sessions of waiting players.
+        if (method.getDeclaringClass() == Object.class || method.getName().equals("heartbeat")) {
+            return call(method, args);
+        }
+
+        Object player = playerOf(args);
+        double callsPerSecond = playerCallsPerSecond;
+        if (player != null && callsPerSecond > 0) {
+            long now = System.nanoTime();
+            int burst = playerBurst;
+            TokenBucket bucket = buckets.computeIfAbsent(player, key -> new TokenBucket(burst, now));
+            if (!bucket.tryTake(callsPerSecond, burst, now)) {
+                rejectedByPlayerLimit.increment();
+                return reject(method, GuessResult.MessageCode.RATE_LIMITED, "Too many calls; slow down");
+            }
+        }
+
+        if (!acquireSlot()) {
+            rejectedByOverload.increment();
+            return reject(method, GuessResult.MessageCode.OVERLOADED, "Server busy; try again later");
+        }
+        try {
+            admitted.increment();
+            return call(method, args);
+        } finally {
+            slots.release();
+        }
+    }
+
+    private boolean acquireSlot() throws InterruptedException {
+        if (slots.tryAcquire()) {
+            return true;
+        }
+        if (queued.incrementAndGet() > maxQueuedCalls) {
+            queued.decrementAndGet();
+            return false;
+        }
+        try {
+            return slots.tryAcquire(maxQueueWaitMillis, TimeUnit.MILLISECONDS);
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    private Object call(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Object reject(Method method, GuessResult.MessageCode code, String message) throws ServerBusyException {
+        if (method.getReturnType() == GuessResult.class) {
+            return new GuessResult(GuessResult.Status.REJECTED, code, 0, 0, 0, 0);
+        }
+        throw new ServerBusyException(message);
+    }
+
+    private static Object playerOf(Object[] args) {
+        if (args == null || args.length == 0) {
+            return null;
+        }
+        Object first = args[0];
+        if (first instanceof ClientCallbackInterface && args.length > 1 && args[1] instanceof String) {
+            return args[1];
+        }
+        return first instanceof Long || first instanceof String || first instanceof ClientCallbackInterface ? first : null;
+    }
+
+    private void dropIdleBuckets() {
+        long now = System.nanoTime();
+        double callsPerSecond = playerCallsPerSecond;
+        int burst = playerBurst;
+        buckets.entrySet().removeIf(entry -> entry.getValue().isFull(callsPerSecond, burst, now));
+    }
+
+    @Override
+    public double getPlayerCallsPerSecond() {
+        return playerCallsPerSecond;
+    }
+
+    @Override
+    public void setPlayerCallsPerSecond(double callsPerSecond) {
+        this.playerCallsPerSecond = callsPerSecond;
+    }
+
+    @Override
+    public int getPlayerBurst() {
+        return playerBurst;
+    }
+
+    @Override
+    public void setPlayerBurst(int burst) {
+        this.playerBurst = Math.max(1, burst);
+    }
+
+    @Override
+    public synchronized int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    // Takes effect immediately for new calls; when shrinking, calls already running finish normally.
+    @Override
+    public synchronized void setMaxConcurrentCalls(int maxConcurrentCalls) {
+        if (maxConcurrentCalls < 1) {
+            throw new IllegalArgumentException("maxConcurrentCalls must be at least 1");
+        }
+        int delta = maxConcurrentCalls - this.maxConcurrentCalls;
+        if (delta > 0) {
+            slots.release(delta);
+        } else if (delta < 0) {
+            slots.shrink(-delta);
+        }
+        this.maxConcurrentCalls = maxConcurrentCalls;
+    }
+
+    @Override
+    public int getMaxQueuedCalls() {
+        return maxQueuedCalls;
+    }
+
+    @Override
+    public void setMaxQueuedCalls(int maxQueuedCalls) {
+        this.maxQueuedCalls = Math.max(0, maxQueuedCalls);
+    }
+
+    @Override
+    public long getMaxQueueWaitMillis() {
+        return maxQueueWaitMillis;
+    }
+
+    @Override
+    public void setMaxQueueWaitMillis(long maxQueueWaitMillis) {
+        this.maxQueueWaitMillis = Math.max(0, maxQueueWaitMillis);
+    }
+
+    @Override
+    public long getAdmitted() {
+        return admitted.sum();
+    }
+
+    @Override
+    public long getRejectedByPlayerLimit() {
+        return rejectedByPlayerLimit.sum();
+    }
+
+    @Override
+    public long getRejectedByOverload() {
+        return rejectedByOverload.sum();
+    }
+
+    @Override
+    public synchronized int getInFlight() {
+        return maxConcurrentCalls - slots.availablePermits();
+    }
+
+    @Override
+    public int getQueued() {
+        return queued.get();
+    }
+
+    @Override
+    public int getTrackedPlayers() {
+        return buckets.size();
+    }
+
+    @Override
+    public void resetCounters() {
+        admitted.reset();
+        rejectedByPlayerLimit.reset();
+        rejectedByOverload.reset();
+    }
+}
@@ -0,0 +1,40 @@
+package server;
+
+// Admission limits, adjustable at runtime, and what they have turned away. A player rate of 0 turns the
+// per-player check off; the concurrent call limit must be at least 1, and 0 queued calls means a call is
+// turned away as soon as every slot is busy.
+public interface AdmissionControlMXBean {
+    double getPlayerCallsPerSecond();
+
+    void setPlayerCallsPerSecond(double callsPerSecond);
+
+    int getPlayerBurst();
+
+    void setPlayerBurst(int burst);
+
+    int getMaxConcurrentCalls();
+
+    void setMaxConcurrentCalls(int maxConcurrentCalls);
+
+    int getMaxQueuedCalls();
+
+    void setMaxQueuedCalls(int maxQueuedCalls);
+
+    long getMaxQueueWaitMillis();
+
+    void setMaxQueueWaitMillis(long maxQueueWaitMillis);
+
+    long getAdmitted();
+
+    long getRejectedByPlayerLimit();
+
+    long getRejectedByOverload();
+
+    int getInFlight();
+
+    int getQueued();
+
+    int getTrackedPlayers();
+
+    void resetCounters();
+}
@@ -0,0 +1,223 @@
+package server;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Frame layout shared by BinaryProtocolServer and client.BinaryGameClient. Every frame is a 4-byte
+// length followed by an opcode byte and a 4-byte request id. Responses echo the request id with the
+// opcode's high bit set; errors use ERROR and pushed notifications use NOTIFY with request id 0.
+// Strings are a 2-byte length and UTF-8 bytes, so none may be longer than MAX_STRING_BYTES.
+public final class BinaryProtocol {
+    public static final int MAX_FRAME_LENGTH = 1 << 20;
+    public static final int HEADER_LENGTH = 4 + 1 + 4;
+    public static final int MAX_STRING_BYTES = 0xFFFF;
+
+    public static final byte REGISTER = 1;
+    public static final byte BUY_TRIALS = 2;
+    public static final byte MAKE_GUESS = 3;
+    public static final byte GET_SCORE = 4;
+    public static final byte CREATE_ROOM = 5;
+    public static final byte JOIN_ROOM = 6;
+    public static final byte GET_ROOM = 7;
+    public static final byte MAKE_GUESSES = 8;
+    public static final byte BUY_AND_GUESS = 9;
+    public static final byte LEADERBOARD = 10;
+    public static final byte GET_RANK = 11;
+    public static final byte RESUME = 12;
+    public static final byte HEARTBEAT = 13;
+    public static final byte GET_STATE = 14;
+
+    public static final byte NOTIFY = 0x40;
+    public static final byte ERROR = 0x7F;
+    public static final int RESPONSE_FLAG = 0x80;
+
+    // An error frame starts with one of these, so the client can throw what the RMI stub would have.
+    static final byte FAILED = 0;
+    static final byte BUSY = 1;
+    static final byte WRONG_NODE = 2;
+
+    private BinaryProtocol() {
+    }
+
+    // Allocates a frame with room for the header and body; the caller fills the body and calls finish.
+    public static ByteBuffer newFrame(byte opcode, int requestId, int bodyLength) {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_LENGTH + bodyLength);
+        frame.putInt(0).put(opcode).putInt(requestId);
+        return frame;
+    }
+
+    public static ByteBuffer finish(ByteBuffer frame) {
+        frame.putInt(0, frame.position() - 4);
+        frame.flip();
+        return frame;
+    }
+
+    public static int stringLength(String value) {
+        return 2 + value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    public static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("A string of " + bytes.length + " bytes is longer than the "
+                    + MAX_STRING_BYTES + " a frame can carry");
+        }
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    public static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    public static ByteBuffer errorFrame(int requestId, String message) {
+        return errorFrame(requestId, new RemoteException(message));
+    }
+
+    // Messages are cut short rather than rejected: an error must always get through.
+    public static ByteBuffer errorFrame(int requestId, RemoteException failure) {
+        String text = failure.getMessage() == null ? "Request failed" : failure.getMessage();
+        if (text.length() > MAX_STRING_BYTES / 4) {
+            text = text.substring(0, MAX_STRING_BYTES / 4);
+        }
+        if (failure instanceof WrongNodeException && ((WrongNodeException) failure).getOwner() != null) {
+            NodeAddress owner = ((WrongNodeException) failure).getOwner();
+            ByteBuffer frame = newFrame(ERROR, requestId, 1 + stringLength(text) + stringLength(owner.getNodeId())
+                    + stringLength(owner.getHost()) + 4);
+            frame.put(WRONG_NODE);
+            putString(frame, text);
+            putString(frame, owner.getNodeId());
+            putString(frame, owner.getHost());
+            frame.putInt(owner.getPort());
+            return finish(frame);
+        }
+        ByteBuffer frame = newFrame(ERROR, requestId, 1 + stringLength(text));
+        frame.put(failure instanceof WrongNodeException ? WRONG_NODE : failure instanceof ServerBusyException ? BUSY : FAILED);
+        putString(frame, text);
+        return finish(frame);
+    }
+
+    public static RemoteException getError(ByteBuffer buffer) {
+        byte kind = buffer.get();
+        String message = getString(buffer);
+        switch (kind) {
+            case BUSY:
+                return new ServerBusyException(message);
+            case WRONG_NODE:
+                NodeAddress owner = buffer.hasRemaining()
+                        ? new NodeAddress(getString(buffer), getString(buffer), buffer.getInt()) : null;
+                return new WrongNodeException(message, owner);
+            default:
+                return new RemoteException(message);
+        }
+    }
+
+    static final int GUESS_RESULT_LENGTH = 1 + 1 + 4 * 4 + 8;
+
+    public static void putGuessResult(ByteBuffer buffer, GuessResult result) {
+        buffer.put((byte) result.getStatus().ordinal())
+                .put((byte) result.getMessageCode().ordinal())
+                .putInt(result.getScoreChange())
+                .putInt(result.getCurrentScore())
+                .putInt(result.getRemainingTrials())
+                .putInt(result.getRoomId())
+                .putLong(result.getStateVersion());
+    }
+
+    public static GuessResult getGuessResult(ByteBuffer buffer) {
+        GuessResult.Status status = GuessResult.Status.values()[buffer.get()];
+        GuessResult.MessageCode messageCode = GuessResult.MessageCode.values()[buffer.get()];
+        return new GuessResult(status, messageCode, buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(),
+                buffer.getLong());
+    }
+
+    // A not-modified reply is the flag byte and version alone.
+    static final int PLAYER_STATE_LENGTH = 1 + 8 + 4 * 3;
+
+    public static void putPlayerState(ByteBuffer buffer, PlayerState state) {
+        buffer.put((byte) (state.isModified() ? 1 : 0)).putLong(state.getVersion());
+        if (state.isModified()) {
+            buffer.putInt(state.getScore()).putInt(state.getTrials()).putInt(state.getRoomId());
+        }
+    }
+
+    public static PlayerState getPlayerState(ByteBuffer buffer) {
+        boolean modified = buffer.get() != 0;
+        long version = buffer.getLong();
+        if (!modified) {
+            return PlayerState.notModified(version);
+        }
+        return new PlayerState(version, buffer.getInt(), buffer.getInt(), buffer.getInt());
+    }
+
+    public static ByteBuffer guessResultsFrame(byte opcode, int requestId, List<GuessResult> results) {
+        ByteBuffer frame = newFrame(opcode, requestId, 4 + results.size() * GUESS_RESULT_LENGTH);
+        frame.putInt(results.size());
+        for (GuessResult result : results) {
+            putGuessResult(frame, result);
+        }
+        return finish(frame);
+    }
+
+    public static List<GuessResult> getGuessResults(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        List<GuessResult> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            results.add(getGuessResult(buffer));
+        }
+        return results;
+    }
+
+    public static ByteBuffer leaderboardFrame(byte opcode, int requestId, List<LeaderboardEntry> entries) {
+        int length = 4;
+        for (LeaderboardEntry entry : entries) {
+            length += 8 + stringLength(entry.getClientId());
+        }
+        ByteBuffer frame = newFrame(opcode, requestId, length);
+        frame.putInt(entries.size());
+        for (LeaderboardEntry entry : entries) {
+            frame.putInt(entry.getRank()).putInt(entry.getScore());
+            putString(frame, entry.getClientId());
+        }
+        return finish(frame);
+    }
+
+    public static List<LeaderboardEntry> getLeaderboard(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        List<LeaderboardEntry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int rank = buffer.getInt();
+            int score = buffer.getInt();
+            entries.add(new LeaderboardEntry(rank, getString(buffer), score));
+        }
+        return entries;
+    }
+
+    public static void putInts(ByteBuffer buffer, int[] values) {
+        buffer.putInt(values.length);
+        for (int value : values) {
+            buffer.putInt(value);
+        }
+    }
+
+    public static int[] getInts(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / 4) {
+            throw new BufferUnderflowException();
+        }
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = buffer.getInt();
+        }
+        return values;
+    }
+}
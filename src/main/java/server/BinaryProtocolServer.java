@@ -0,0 +1,506 @@
+package server;
+
+import client.ClientCallbackInterface;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// A second front end to the same game state as the RMI registry, speaking BinaryProtocol over NIO.
+// One acceptor hands connections to a fixed set of selector loops. A loop only decodes the complete
+// frames it has read and hands the calls to a worker pool, which runs each connection's calls in
+// order; game calls may wait for admission, a command writer or another node, and that must not
+// stall every connection on the loop. Responses are queued back to the connection, and the loop
+// writes all of them with one gathering write, so pipelined requests cost one syscall per batch
+// rather than one per call. A connection with MAX_PENDING_CALLS calls waiting is not read until
+// the workers catch up.
+public class BinaryProtocolServer implements AutoCloseable {
+    static final int WORKERS_PER_LOOP = 8;
+    private static final long MAX_QUEUED_BYTES = 8L << 20;
+    private static final int MAX_PENDING_CALLS = 1024;
+
+    // A decoded request, ready to run on a worker; returns the finished response frame.
+    private interface Call {
+        ByteBuffer run() throws RemoteException;
+    }
+
+    private final SessionGameInterface game;
+    private final ServerSocketChannel acceptor;
+    private final EventLoop[] loops;
+    private final ExecutorService workers;
+    private final Thread acceptThread;
+    private volatile boolean running = true;
+
+    public BinaryProtocolServer(SessionGameInterface game, int port, int loopCount) throws IOException {
+        this(game, port, loopCount, Math.max(1, loopCount) * WORKERS_PER_LOOP);
+    }
+
+    public BinaryProtocolServer(SessionGameInterface game, int port, int loopCount, int workerCount) throws IOException {
+        this.game = game;
+        this.acceptor = ServerSocketChannel.open();
+        acceptor.bind(new InetSocketAddress(port));
+        this.loops = new EventLoop[Math.max(1, loopCount)];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(i);
+        }
+        AtomicInteger workerIndex = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, workerCount), r -> {
+            Thread thread = new Thread(r, "binary-worker-" + workerIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.acceptThread = new Thread(this::acceptLoop, "binary-accept");
+        acceptThread.setDaemon(true);
+    }
+
+    public void start() {
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+        acceptThread.start();
+    }
+
+    public int getPort() {
+        return acceptor.socket().getLocalPort();
+    }
+
+    private void acceptLoop() {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = acceptor.accept();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                loops[next].adopt(channel);
+                next = (next + 1) % loops.length;
+            } catch (IOException e) {
+                if (!running) {
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            acceptor.close();
+        } catch (IOException ignored) {
+        }
+        for (EventLoop loop : loops) {
+            loop.selector.wakeup();
+        }
+        workers.shutdown();
+    }
+
+    private final class EventLoop implements Runnable {
+        final Selector selector;
+        final Thread thread;
+        final Queue<SocketChannel> adopted = new ConcurrentLinkedQueue<>();
+        final Queue<Connection> flushRequests = new ConcurrentLinkedQueue<>();
+
+        EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "binary-loop-" + index);
+            thread.setDaemon(true);
+        }
+
+        void adopt(SocketChannel channel) {
+            adopted.add(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select();
+                    registerAdopted();
+                    flushRequested();
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        if (!key.isValid()) {
+                            connection.close();
+                            continue;
+                        }
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.flush();
+                        }
+                    }
+                } catch (IOException e) {
+                    if (!running) {
+                        break;
+                    }
+                }
+            }
+            for (SelectionKey key : selector.keys()) {
+                ((Connection) key.attachment()).close();
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        private void registerAdopted() {
+            SocketChannel channel;
+            while ((channel = adopted.poll()) != null) {
+                try {
+                    Connection connection = new Connection(this, channel);
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                } catch (ClosedChannelException ignored) {
+                }
+            }
+        }
+
+        private void flushRequested() {
+            Connection connection;
+            while ((connection = flushRequests.poll()) != null) {
+                connection.flushScheduled.set(false);
+                connection.flush();
+                if (connection.readPaused && connection.pendingCalls.get() < MAX_PENDING_CALLS) {
+                    connection.handleFrames();
+                }
+            }
+        }
+    }
+
+    private final class Connection {
+        final EventLoop loop;
+        final SocketChannel channel;
+        final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+        final AtomicLong queuedBytes = new AtomicLong();
+        final AtomicBoolean flushScheduled = new AtomicBoolean();
+        // Decoded calls not yet run, in arrival order; at most one worker drains them at a time.
+        final Queue<Supplier<ByteBuffer>> calls = new ConcurrentLinkedQueue<>();
+        final AtomicInteger pendingCalls = new AtomicInteger();
+        final AtomicBoolean draining = new AtomicBoolean();
+        SelectionKey key;
+        ByteBuffer inbound = ByteBuffer.allocate(16 << 10);
+        // Loop thread only: complete frames are left in inbound until the workers catch up.
+        boolean readPaused;
+        volatile boolean closed;
+
+        Connection(EventLoop loop, SocketChannel channel) {
+            this.loop = loop;
+            this.channel = channel;
+        }
+
+        void read() {
+            try {
+                if (channel.read(inbound) < 0) {
+                    close();
+                    return;
+                }
+                handleFrames();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        // Loop thread only. Hands every complete frame in inbound to the workers, unless too many
+        // calls are already waiting; reading resumes once a response brings them under the limit.
+        void handleFrames() {
+            inbound.flip();
+            while (inbound.remaining() >= 4 && pendingCalls.get() < MAX_PENDING_CALLS) {
+                int length = inbound.getInt(inbound.position());
+                if (length < 5 || length > BinaryProtocol.MAX_FRAME_LENGTH) {
+                    close();
+                    return;
+                }
+                if (inbound.remaining() < 4 + length) {
+                    break;
+                }
+                int frameEnd = inbound.position() + 4 + length;
+                ByteBuffer frame = inbound.duplicate();
+                frame.position(inbound.position() + 4).limit(frameEnd);
+                inbound.position(frameEnd);
+                submit(decode(frame.slice()));
+            }
+            readPaused = pendingCalls.get() >= MAX_PENDING_CALLS;
+            inbound.compact();
+            if (!inbound.hasRemaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.min(inbound.capacity() * 2, BinaryProtocol.MAX_FRAME_LENGTH + 4));
+                inbound.flip();
+                larger.put(inbound);
+                inbound = larger;
+            }
+            flush();
+        }
+
+        // Reads the whole request on the loop, since the frame's bytes are reused by the next read. The
+        // call it returns answers with an error frame rather than throwing.
+        private Supplier<ByteBuffer> decode(ByteBuffer frame) {
+            byte opcode = frame.get();
+            int requestId = frame.getInt();
+            Call call;
+            try {
+                call = decode(opcode, requestId, frame);
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                return () -> BinaryProtocol.errorFrame(requestId, "Malformed request");
+            }
+            return () -> {
+                try {
+                    return call.run();
+                } catch (RemoteException e) {
+                    return BinaryProtocol.errorFrame(requestId, e);
+                } catch (IllegalArgumentException e) {
+                    // A bad argument, or a reply string too long for a frame.
+                    return BinaryProtocol.errorFrame(requestId, e.getMessage() == null ? "Malformed request" : e.getMessage());
+                } catch (RuntimeException e) {
+                    return BinaryProtocol.errorFrame(requestId, "Internal error: " + e);
+                }
+            };
+        }
+
+        private Call decode(byte opcode, int requestId, ByteBuffer request) {
+            byte reply = (byte) (opcode | BinaryProtocol.RESPONSE_FLAG);
+            switch (opcode) {
+                case BinaryProtocol.REGISTER: {
+                    String clientId = BinaryProtocol.getString(request);
+                    return () -> session(reply, requestId, game.registerClient(new ChannelCallback(this, clientId), clientId));
+                }
+                case BinaryProtocol.RESUME: {
+                    long token = request.getLong();
+                    String clientId = BinaryProtocol.getString(request);
+                    return () -> session(reply, requestId, game.resumeSession(new ChannelCallback(this, clientId), clientId, token));
+                }
+                case BinaryProtocol.HEARTBEAT: {
+                    long token = request.getLong();
+                    return () -> {
+                        long leaseMillis = game.heartbeat(token);
+                        return BinaryProtocol.finish(BinaryProtocol.newFrame(reply, requestId, 8).putLong(leaseMillis));
+                    };
+                }
+                case BinaryProtocol.BUY_TRIALS: {
+                    long token = request.getLong();
+                    int numberOfTrials = request.getInt();
+                    return () -> {
+                        PlayerState state = game.buyTrials(token, numberOfTrials);
+                        ByteBuffer response = BinaryProtocol.newFrame(reply, requestId, BinaryProtocol.PLAYER_STATE_LENGTH);
+                        BinaryProtocol.putPlayerState(response, state);
+                        return BinaryProtocol.finish(response);
+                    };
+                }
+                case BinaryProtocol.MAKE_GUESS: {
+                    long token = request.getLong();
+                    int guess = request.getInt();
+                    return () -> {
+                        GuessResult result = game.makeGuess(token, guess);
+                        ByteBuffer response = BinaryProtocol.newFrame(reply, requestId, BinaryProtocol.GUESS_RESULT_LENGTH);
+                        BinaryProtocol.putGuessResult(response, result);
+                        return BinaryProtocol.finish(response);
+                    };
+                }
+                case BinaryProtocol.GET_SCORE: {
+                    long token = request.getLong();
+                    return () -> intFrame(reply, requestId, game.getScore(token));
+                }
+                case BinaryProtocol.GET_STATE: {
+                    long token = request.getLong();
+                    long sinceVersion = request.getLong();
+                    return () -> {
+                        PlayerState state = game.getState(token, sinceVersion);
+                        ByteBuffer response = BinaryProtocol.newFrame(reply, requestId, BinaryProtocol.PLAYER_STATE_LENGTH);
+                        BinaryProtocol.putPlayerState(response, state);
+                        return BinaryProtocol.finish(response);
+                    };
+                }
+                case BinaryProtocol.CREATE_ROOM: {
+                    long token = request.getLong();
+                    String name = BinaryProtocol.getString(request);
+                    return () -> intFrame(reply, requestId, game.createRoom(token, name));
+                }
+                case BinaryProtocol.JOIN_ROOM: {
+                    long token = request.getLong();
+                    int roomId = request.getInt();
+                    return () -> {
+                        game.joinRoom(token, roomId);
+                        return BinaryProtocol.finish(BinaryProtocol.newFrame(reply, requestId, 0));
+                    };
+                }
+                case BinaryProtocol.GET_ROOM: {
+                    long token = request.getLong();
+                    return () -> intFrame(reply, requestId, game.getRoomId(token));
+                }
+                case BinaryProtocol.MAKE_GUESSES: {
+                    long token = request.getLong();
+                    int[] guesses = BinaryProtocol.getInts(request);
+                    return () -> BinaryProtocol.guessResultsFrame(reply, requestId, game.makeGuesses(token, guesses));
+                }
+                case BinaryProtocol.BUY_AND_GUESS: {
+                    long token = request.getLong();
+                    int numberOfTrials = request.getInt();
+                    int[] guesses = BinaryProtocol.getInts(request);
+                    return () -> BinaryProtocol.guessResultsFrame(reply, requestId,
+                            game.buyTrialsAndGuess(token, numberOfTrials, guesses));
+                }
+                case BinaryProtocol.LEADERBOARD: {
+                    int k = request.getInt();
+                    return () -> BinaryProtocol.leaderboardFrame(reply, requestId, game.getLeaderboard(k));
+                }
+                case BinaryProtocol.GET_RANK: {
+                    long token = request.getLong();
+                    return () -> intFrame(reply, requestId, game.getRank(token));
+                }
+                default:
+                    return () -> BinaryProtocol.errorFrame(requestId, "Unknown opcode " + opcode);
+            }
+        }
+
+        private ByteBuffer session(byte reply, int requestId, SessionHandle session) {
+            ByteBuffer response = BinaryProtocol.newFrame(reply, requestId, 12);
+            response.putLong(session.getToken()).putInt(session.getScore());
+            return BinaryProtocol.finish(response);
+        }
+
+        private ByteBuffer intFrame(byte reply, int requestId, int value) {
+            return BinaryProtocol.finish(BinaryProtocol.newFrame(reply, requestId, 4).putInt(value));
+        }
+
+        private void submit(Supplier<ByteBuffer> call) {
+            calls.add(call);
+            pendingCalls.incrementAndGet();
+            if (draining.compareAndSet(false, true)) {
+                workers.execute(this::drainCalls);
+            }
+        }
+
+        // Worker side. Runs the connection's calls one at a time, so pipelined requests keep their order.
+        private void drainCalls() {
+            do {
+                Supplier<ByteBuffer> call;
+                while ((call = calls.poll()) != null) {
+                    ByteBuffer response = call.get();
+                    pendingCalls.decrementAndGet();
+                    enqueue(response);
+                }
+                draining.set(false);
+            } while (!calls.isEmpty() && draining.compareAndSet(false, true));
+        }
+
+        // Safe from any thread; responses from the loop itself are flushed after the read batch.
+        void enqueue(ByteBuffer frame) {
+            if (closed) {
+                return;
+            }
+            outbound.add(frame);
+            if (queuedBytes.addAndGet(frame.remaining()) > MAX_QUEUED_BYTES) {
+                close();
+                return;
+            }
+            if (Thread.currentThread() != loop.thread && flushScheduled.compareAndSet(false, true)) {
+                loop.flushRequests.add(this);
+                loop.selector.wakeup();
+            }
+        }
+
+        void flush() {
+            if (closed) {
+                return;
+            }
+            try {
+                ByteBuffer[] batch;
+                while ((batch = nextBatch()).length > 0) {
+                    queuedBytes.addAndGet(-channel.write(batch));
+                    for (ByteBuffer buffer : batch) {
+                        if (buffer.hasRemaining()) {
+                            key.interestOps(readInterest() | SelectionKey.OP_WRITE);
+                            return;
+                        }
+                        outbound.poll();
+                    }
+                }
+                key.interestOps(readInterest());
+            } catch (IOException | CancelledKeyException e) {
+                // Cancelled when a worker closed the connection meanwhile.
+                close();
+            }
+        }
+
+        private int readInterest() {
+            return readPaused ? 0 : SelectionKey.OP_READ;
+        }
+
+        private ByteBuffer[] nextBatch() {
+            List<ByteBuffer> batch = new ArrayList<>();
+            for (ByteBuffer frame : outbound) {
+                batch.add(frame);
+                if (batch.size() == 64) {
+                    break;
+                }
+            }
+            return batch.toArray(new ByteBuffer[0]);
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            outbound.clear();
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // Lets the notification dispatcher push win messages down the connection the player registered on.
+    private static final class ChannelCallback implements ClientCallbackInterface {
+        private final Connection connection;
+        private final String clientId;
+
+        ChannelCallback(Connection connection, String clientId) {
+            this.connection = connection;
+            this.clientId = clientId;
+        }
+
+        @Override
+        public void notifyNumberReset(String winnerMessage) throws RemoteException {
+            if (connection.closed) {
+                throw new RemoteException("Connection closed");
+            }
+            ByteBuffer frame = BinaryProtocol.newFrame(BinaryProtocol.NOTIFY, 0,
+                    BinaryProtocol.stringLength(clientId) + BinaryProtocol.stringLength(winnerMessage));
+            BinaryProtocol.putString(frame, clientId);
+            BinaryProtocol.putString(frame, winnerMessage);
+            connection.enqueue(BinaryProtocol.finish(frame));
+        }
+
+        @Override
+        public String getClientId() {
+            return clientId;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package server;
+
+import java.beans.ConstructorProperties;
+
+// Point-in-time view of one instrumented call path, as published through JMX.
+public class CallSummary {
+    private final long calls;
+    private final long errors;
+    private final double meanMicros;
+    private final long p50Micros;
+    private final long p99Micros;
+    private final long p999Micros;
+    private final long maxMicros;
+
+    @ConstructorProperties({"calls", "errors", "meanMicros", "p50Micros", "p99Micros", "p999Micros", "maxMicros"})
+    public CallSummary(long calls, long errors, double meanMicros, long p50Micros, long p99Micros, long p999Micros, long maxMicros) {
+        this.calls = calls;
+        this.errors = errors;
+        this.meanMicros = meanMicros;
+        this.p50Micros = p50Micros;
+        this.p99Micros = p99Micros;
+        this.p999Micros = p999Micros;
+        this.maxMicros = maxMicros;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public double getMeanMicros() {
+        return meanMicros;
+    }
+
+    public long getP50Micros() {
+        return p50Micros;
+    }
+
+    public long getP99Micros() {
+        return p99Micros;
+    }
+
+    public long getP999Micros() {
+        return p999Micros;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+}
@@ -0,0 +1,160 @@
+package server;
+
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// A GameServer's membership in a cluster. It heartbeats the directory, keeps the latest view, and
+// whenever the view changes has the server hand the players it no longer owns to their new owners
+// through the peers' adopt endpoint. Rebalancing that could not reach an owner is retried on the
+// next heartbeat. Before a view that includes this node arrives, it keeps everything it has.
+final class ClusterNode implements ClusterPeer {
+    static final String PEER_BINDING = "GuessingGamePeer";
+    static final long DEFAULT_HEARTBEAT_MILLIS = 1000;
+
+    private final GameServer server;
+    private final GameEventLog eventLog;
+    private final DirectoryInterface directory;
+    private final NodeAddress self;
+    private final Map<String, ClusterPeer> peers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService heartbeats;
+    private final Object viewLock = new Object();
+    private volatile ClusterView view = new ClusterView(0, List.of());
+    private long rebalancedEpoch;
+    private boolean leaving;
+
+    ClusterNode(GameServer server, DirectoryInterface directory, NodeAddress self, GameEventLog eventLog) {
+        this.server = server;
+        this.eventLog = eventLog;
+        this.directory = directory;
+        this.self = self;
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cluster-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    static DirectoryInterface locateDirectory(String hostAndPort) throws RemoteException, NotBoundException {
+        int colon = hostAndPort.lastIndexOf(':');
+        String host = colon < 0 ? hostAndPort : hostAndPort.substring(0, colon);
+        int port = colon < 0 ? DirectoryServer.DEFAULT_PORT : Integer.parseInt(hostAndPort.substring(colon + 1));
+        return (DirectoryInterface) LocateRegistry.getRegistry(host, port).lookup(DirectoryServer.BINDING);
+    }
+
+    // The peer endpoint must already be bound in this node's registry, since joining makes other
+    // nodes start handing players over.
+    void start(long heartbeatMillis) throws RemoteException {
+        server.joinCluster(this);
+        apply(directory.join(self));
+        heartbeats.scheduleWithFixedDelay(this::heartbeat, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Leaves the directory and hands every player to the remaining nodes.
+    void leave() {
+        heartbeats.shutdownNow();
+        try {
+            directory.leave(self.getNodeId());
+            synchronized (this) {
+                leaving = true;
+            }
+            apply(directory.getView());
+        } catch (RemoteException e) {
+            eventLog.log(GameEventLog.EventType.CLUSTER_LEAVE_FAILED, null, RoomTable.LOBBY_ID, 0, 0, 0, 0, 0, e);
+        }
+    }
+
+    private void heartbeat() {
+        try {
+            ClusterView latest;
+            try {
+                latest = directory.heartbeat(self.getNodeId());
+            } catch (RemoteException e) {
+                // Dropped after missing heartbeats, or the directory restarted.
+                latest = directory.join(self);
+            }
+            apply(latest);
+        } catch (RemoteException e) {
+            eventLog.log(GameEventLog.EventType.DIRECTORY_UNREACHABLE, null, RoomTable.LOBBY_ID, 0, 0, 0, 0, 0, e);
+        } catch (RuntimeException e) {
+            eventLog.log(GameEventLog.EventType.HEARTBEAT_FAILED, null, RoomTable.LOBBY_ID, 0, 0, 0, 0, 0, e);
+        }
+    }
+
+    // Rebalancing runs under this node's lock, but adopt calls from peers only take viewLock, so two
+    // nodes handing players to each other at once cannot block on one another.
+    private synchronized void apply(ClusterView latest) {
+        updateView(latest);
+        if (view.getEpoch() == rebalancedEpoch || (!leaving && !view.getNodes().contains(self))) {
+            return;
+        }
+        long start = System.nanoTime();
+        if (server.rebalance()) {
+            rebalancedEpoch = view.getEpoch();
+        }
+        eventLog.log(GameEventLog.EventType.REBALANCED, null, RoomTable.LOBBY_ID, 0, (int) view.getEpoch(),
+                view.getNodes().size(), (int) ((System.nanoTime() - start) / 1_000_000), 0);
+    }
+
+    NodeAddress self() {
+        return self;
+    }
+
+    // While the ring is empty (no view yet, or only while leaving) this node counts as the owner of everything.
+    boolean isSelf(NodeAddress owner) {
+        return owner == null || owner.equals(self);
+    }
+
+    NodeAddress ownerOfPlayer(String clientId) {
+        return view.ring().ownerOfPlayer(clientId);
+    }
+
+    NodeAddress ownerOfRoom(int roomId) {
+        return view.ring().ownerOfRoom(roomId);
+    }
+
+    void handOff(NodeAddress owner, List<PlayerHandoff> players) throws RemoteException {
+        long epoch = view.getEpoch();
+        try {
+            peerAt(owner).adopt(epoch, players);
+        } catch (RemoteException e) {
+            peers.remove(owner.getNodeId());
+            throw e;
+        }
+    }
+
+    private ClusterPeer peerAt(NodeAddress node) throws RemoteException {
+        ClusterPeer peer = peers.get(node.getNodeId());
+        if (peer == null) {
+            try {
+                peer = (ClusterPeer) LocateRegistry.getRegistry(node.getHost(), node.getPort()).lookup(PEER_BINDING);
+            } catch (NotBoundException e) {
+                throw new RemoteException("Node " + node + " has no peer endpoint", e);
+            }
+            peers.put(node.getNodeId(), peer);
+        }
+        return peer;
+    }
+
+    @Override
+    public void adopt(long epoch, List<PlayerHandoff> players) throws RemoteException {
+        if (epoch > view.getEpoch()) {
+            updateView(directory.getView());
+        }
+        server.adopt(players);
+    }
+
+    private void updateView(ClusterView latest) {
+        synchronized (viewLock) {
+            if (latest.getEpoch() >= view.getEpoch()) {
+                view = latest;
+            }
+        }
+    }
+}
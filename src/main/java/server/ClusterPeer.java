@@ -0,0 +1,11 @@
+package server;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+
+// Node-to-node endpoint, bound next to the game in each node's registry.
+public interface ClusterPeer extends Remote {
+    // Takes over the given players; epoch is the sender's view, so a receiver that is behind refreshes first.
+    void adopt(long epoch, List<PlayerHandoff> players) throws RemoteException;
+}
@@ -0,0 +1,36 @@
+package server;
+
+import java.io.Serializable;
+import java.util.List;
+
+// The directory's membership list at one epoch. The epoch goes up on every join or departure,
+// so a node or client holding an older view knows it has to re-place its players.
+public class ClusterView implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long epoch;
+    private final List<NodeAddress> nodes;
+    private transient HashRing ring;
+
+    public ClusterView(long epoch, List<NodeAddress> nodes) {
+        this.epoch = epoch;
+        this.nodes = List.copyOf(nodes);
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public List<NodeAddress> getNodes() {
+        return nodes;
+    }
+
+    public HashRing ring() {
+        HashRing current = ring;
+        if (current == null) {
+            current = new HashRing(nodes);
+            ring = current;
+        }
+        return current;
+    }
+}
@@ -0,0 +1,253 @@
+package server;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Single-writer execution: each partition has one writer thread, and calling threads hand it
+// commands through a bounded multi-producer, single-consumer ring instead of running them
+// themselves. A writer drains everything queued before it parks, so under load a burst of commands
+// runs back to back on one warm thread with the partition's rooms and players in its cache. The
+// caller spins briefly and then parks until its command completes or the timeout passes; commands
+// are reused per thread, so handing one over allocates nothing.
+//
+// A command learns which writer runs it, so the caller's data can be owned by one writer and used
+// without locks. Once the engine is closed, calls wait for every writer to drain and then run on
+// the caller with NO_WRITER, which is the command's cue to fall back to locking. It is opt-in;
+// CommandEngineBenchmark compares it with per-player locks at 1..N threads.
+final class CommandEngine implements AutoCloseable {
+    static final int DEFAULT_RING_CAPACITY = 1024;
+    static final long DEFAULT_TIMEOUT_MILLIS = 5000;
+    static final int NO_WRITER = -1;
+    // How often a parked caller checks that its writer is still there.
+    private static final long CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    // Spinning only helps when the other side is running on another core.
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 200 : 0;
+
+    // One call's worth of work. run() is executed on the writer, given its partition; its result or
+    // failure is handed back to the waiting caller.
+    abstract static class Command {
+        private Thread caller;
+        private volatile boolean done;
+        private volatile boolean parked;
+        private Object result;
+        private Throwable failure;
+
+        abstract Object run(int writer) throws RemoteException;
+
+        // False after a timeout: the writer may still run the command, so it must not be reused.
+        boolean isDone() {
+            return done;
+        }
+
+        private void execute(int writer) {
+            try {
+                result = run(writer);
+            } catch (Throwable e) {
+                failure = e;
+            }
+        }
+    }
+
+    private final Writer[] writers;
+    private final long timeoutNanos;
+
+    CommandEngine(int partitions, int ringCapacity, long timeoutMillis) {
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, timeoutMillis));
+        this.writers = new Writer[Math.max(1, partitions)];
+        int capacity = Integer.highestOneBit(Math.max(2, ringCapacity - 1)) << 1;
+        for (int i = 0; i < writers.length; i++) {
+            writers[i] = new Writer(i, capacity);
+            writers[i].thread.start();
+        }
+    }
+
+    int partitionCount() {
+        return writers.length;
+    }
+
+    // Runs the command on the partition's writer and returns its result, or runs it inline when
+    // already on that writer or the engine is closed. Throws if the writer has not finished it
+    // within the timeout; the command may still take effect, as with any call that times out.
+    Object execute(int partition, Command command) throws RemoteException {
+        Writer writer = writers[partition];
+        if (Thread.currentThread() == writer.thread) {
+            command.done = true;
+            return command.run(partition);
+        }
+        if (!writer.running) {
+            awaitStopped();
+            command.done = true;
+            return command.run(NO_WRITER);
+        }
+        command.caller = Thread.currentThread();
+        command.done = false;
+        command.parked = false;
+        command.result = null;
+        command.failure = null;
+        writer.submit(command);
+        await(writer, command);
+
+        Throwable failure = command.failure;
+        if (failure instanceof RemoteException) {
+            throw (RemoteException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure != null) {
+            throw (RuntimeException) failure;
+        }
+        return command.result;
+    }
+
+    private void await(Writer writer, Command command) throws RemoteException {
+        for (int i = 0; i < SPINS && !command.done; i++) {
+            Thread.onSpinWait();
+        }
+        if (command.done) {
+            return;
+        }
+        command.parked = true;
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (!command.done) {
+            if (!writer.thread.isAlive()) {
+                // Queued after a closing writer's last look at the ring, so nothing else will run it.
+                awaitStopped();
+                command.execute(NO_WRITER);
+                command.done = true;
+                return;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new RemoteException("Partition writer did not finish the call within "
+                        + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms");
+            }
+            LockSupport.parkNanos(command, Math.min(remaining, CHECK_NANOS));
+        }
+    }
+
+    // A closed engine's writers still drain their rings; nothing may run beside them until they have.
+    void awaitStopped() throws RemoteException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        for (Writer writer : writers) {
+            try {
+                writer.thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RemoteException("Interrupted while partition writers were stopping");
+            }
+            if (writer.thread.isAlive()) {
+                throw new RemoteException("Partition writers did not stop within "
+                        + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms");
+            }
+        }
+    }
+
+    // Writers finish what is already queued before they stop; later calls run on the caller.
+    @Override
+    public void close() {
+        for (Writer writer : writers) {
+            writer.running = false;
+            LockSupport.unpark(writer.thread);
+        }
+    }
+
+    private static final class Writer implements Runnable {
+        final int index;
+        final Thread thread;
+        // Vyukov's bounded queue: a slot is free for position p when its sequence is p, and holds
+        // the command for p once its sequence is p + 1.
+        private final Command[] slots;
+        private final AtomicLongArray sequences;
+        private final int mask;
+        private final AtomicLong tail = new AtomicLong();
+        private long head;
+        private volatile boolean sleeping;
+        volatile boolean running = true;
+
+        Writer(int index, int capacity) {
+            this.index = index;
+            this.slots = new Command[capacity];
+            this.sequences = new AtomicLongArray(capacity);
+            this.mask = capacity - 1;
+            for (int i = 0; i < capacity; i++) {
+                sequences.set(i, i);
+            }
+            this.thread = new Thread(this, "partition-writer-" + index);
+            thread.setDaemon(true);
+        }
+
+        void submit(Command command) {
+            while (true) {
+                long position = tail.get();
+                int slot = (int) position & mask;
+                long sequence = sequences.get(slot);
+                if (sequence == position) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        slots[slot] = command;
+                        sequences.set(slot, position + 1);
+                        break;
+                    }
+                } else if (sequence < position) {
+                    // Full: the writer is behind, so wait for it rather than queue without bound.
+                    LockSupport.parkNanos(1000);
+                }
+            }
+            if (sleeping) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        private Command poll() {
+            int slot = (int) head & mask;
+            if (sequences.get(slot) != head + 1) {
+                return null;
+            }
+            Command command = slots[slot];
+            slots[slot] = null;
+            sequences.set(slot, head + mask + 1);
+            head++;
+            return command;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Command command = poll();
+                if (command == null) {
+                    if (!running) {
+                        break;
+                    }
+                    idle();
+                    continue;
+                }
+                command.execute(index);
+                Thread caller = command.caller;
+                command.done = true;
+                if (command.parked) {
+                    LockSupport.unpark(caller);
+                }
+            }
+        }
+
+        // Spins a little for the next command, then sleeps until a caller wakes it. sleeping is set
+        // before the last look at the ring, so a command queued meanwhile is either seen here or
+        // its caller sees sleeping and unparks.
+        private void idle() {
+            for (int i = 0; i < SPINS; i++) {
+                if (sequences.get((int) head & mask) == head + 1) {
+                    return;
+                }
+                Thread.onSpinWait();
+            }
+            sleeping = true;
+            if (sequences.get((int) head & mask) != head + 1 && running) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+            }
+            sleeping = false;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package server;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+public interface DirectoryInterface extends Remote {
+    // Adds the node, or refreshes its address if it is already a member; returns the new view.
+    ClusterView join(NodeAddress node) throws RemoteException;
+
+    // Removes the node right away instead of waiting for its heartbeats to lapse.
+    void leave(String nodeId) throws RemoteException;
+
+    // Keeps the node's membership alive; fails for a node that has been dropped, which must join again.
+    ClusterView heartbeat(String nodeId) throws RemoteException;
+
+    // The current view, without joining; for clients and for nodes that need it between heartbeats.
+    ClusterView getView() throws RemoteException;
+}
@@ -0,0 +1,133 @@
+package server;
+
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Membership service for cluster mode. It holds only the list of live nodes: game nodes join,
+// heartbeat and leave, and clients read the view to find the node that owns them. Nothing on the
+// game's request path goes through it. A node that misses heartbeats for the timeout is dropped.
+//
+// Three nodes on one machine:
+//   java server.DirectoryServer
+//   java -Dgame.cluster.directory=localhost:1098 -Dgame.rmi.port=2001 -Dgame.binary.port=0 -Dgame.data.dir=data1 server.GameServer
+//   (likewise for 2002 and 2003), then: java client.LoadGenerator directory=localhost:1098
+public class DirectoryServer implements DirectoryInterface {
+    static final String BINDING = "GameDirectory";
+    static final int DEFAULT_PORT = 1098;
+    static final long DEFAULT_TIMEOUT_MILLIS = 3000;
+
+    private final Map<String, Member> members = new LinkedHashMap<>();
+    private final long timeoutNanos;
+    private final ScheduledExecutorService sweeper;
+    private final GameEventLog eventLog;
+    private long epoch;
+    private ClusterView view = new ClusterView(0, new ArrayList<>());
+
+    private static final class Member {
+        NodeAddress address;
+        long lastSeenNanos;
+
+        Member(NodeAddress address) {
+            this.address = address;
+            this.lastSeenNanos = System.nanoTime();
+        }
+    }
+
+    public DirectoryServer(long timeoutMillis, GameEventLog eventLog) {
+        this.eventLog = eventLog;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "directory-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(10, timeoutMillis / 4);
+        sweeper.scheduleWithFixedDelay(this::dropSilentMembers, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized ClusterView join(NodeAddress node) {
+        Member member = members.get(node.getNodeId());
+        if (member == null) {
+            members.put(node.getNodeId(), new Member(node));
+            publish("joined", node);
+        } else {
+            member.lastSeenNanos = System.nanoTime();
+            if (!member.address.getHost().equals(node.getHost()) || member.address.getPort() != node.getPort()) {
+                member.address = node;
+                publish("moved", node);
+            }
+        }
+        return view;
+    }
+
+    @Override
+    public synchronized void leave(String nodeId) {
+        Member member = members.remove(nodeId);
+        if (member != null) {
+            publish("left", member.address);
+        }
+    }
+
+    @Override
+    public synchronized ClusterView heartbeat(String nodeId) throws RemoteException {
+        Member member = members.get(nodeId);
+        if (member == null) {
+            throw new RemoteException("Node " + nodeId + " is not a member");
+        }
+        member.lastSeenNanos = System.nanoTime();
+        return view;
+    }
+
+    @Override
+    public synchronized ClusterView getView() {
+        return view;
+    }
+
+    private synchronized void dropSilentMembers() {
+        long now = System.nanoTime();
+        for (Iterator<Member> it = members.values().iterator(); it.hasNext(); ) {
+            Member member = it.next();
+            if (now - member.lastSeenNanos > timeoutNanos) {
+                it.remove();
+                publish("timed out", member.address);
+            }
+        }
+    }
+
+    private void publish(String change, NodeAddress node) {
+        ArrayList<NodeAddress> nodes = new ArrayList<>();
+        for (Member member : members.values()) {
+            nodes.add(member.address);
+        }
+        view = new ClusterView(++epoch, nodes);
+        eventLog.log(GameEventLog.EventType.MEMBERSHIP_CHANGED, null, RoomTable.LOBBY_ID, 0, (int) epoch, nodes.size(), 0, 0,
+                node + " " + change);
+    }
+
+    public static void main(String[] args) {
+        try {
+            int port = Integer.getInteger("game.directory.port", DEFAULT_PORT);
+            GameEventLog eventLog = GameEventLog.fromSystemProperties("directory-events.log");
+            Runtime.getRuntime().addShutdownHook(new Thread(eventLog::close));
+            DirectoryServer directory = new DirectoryServer(Long.getLong("game.directory.timeoutMillis", DEFAULT_TIMEOUT_MILLIS),
+                    eventLog);
+            DirectoryInterface stub = (DirectoryInterface) UnicastRemoteObject.exportObject(directory, 0);
+            Registry registry = LocateRegistry.createRegistry(port);
+            registry.rebind(BINDING, stub);
+            System.out.println("Directory is running on port " + port);
+        } catch (Exception e) {
+            System.err.println("Directory exception: " + e.toString());
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package server;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Structured game events in a fixed ring of preallocated slots. Request threads only copy a few
+// primitives and references into a slot; a background writer formats and writes them in batches.
+// When the ring is full the event is dropped and counted rather than blocking the caller.
+//
+// Configured by system properties: game.eventlog.file, game.eventlog.level (OFF, WARN, INFO, DEBUG),
+// game.eventlog.sample (keep one in N DEBUG events) and game.eventlog.capacity.
+public class GameEventLog implements AutoCloseable {
+    public enum Level {
+        OFF, WARN, INFO, DEBUG
+    }
+
+    public enum EventType {
+        CLIENT_REGISTERED(Level.INFO),
+        ROOM_CREATED(Level.INFO, "room"),
+        TRIALS_BOUGHT(Level.DEBUG, "bought", "score", "trials"),
+        GUESS(Level.DEBUG, "guess", "status", "scoreChange", "score"),
+        ROUND_WON(Level.INFO, "refund", "score"),
+        ROUND_STARTED(Level.INFO),
+        NOTIFY_FAILED(Level.WARN),
+        NOTIFY_EVICTED(Level.WARN, "failures"),
+        SESSION_EXPIRED(Level.INFO, "score", "trials"),
+        SESSION_RESUMED(Level.INFO),
+        PLAYER_HANDED_OFF(Level.INFO, "score", "trials"),
+        PLAYER_ADOPTED(Level.INFO, "score", "trials"),
+        JOURNAL_FAILED(Level.WARN),
+        SNAPSHOT_FAILED(Level.WARN),
+        TRACE_FAILED(Level.WARN),
+        MEMBERSHIP_CHANGED(Level.INFO, "epoch", "nodes"),
+        REBALANCED(Level.INFO, "epoch", "nodes", "millis"),
+        DIRECTORY_UNREACHABLE(Level.WARN),
+        HEARTBEAT_FAILED(Level.WARN),
+        CLUSTER_LEAVE_FAILED(Level.WARN),
+        STANDBY_DETACHED(Level.WARN),
+        STANDBY_SNAPSHOT_LOADED(Level.INFO, "entries"),
+        PRIMARY_SILENT(Level.WARN, "silentMillis"),
+        TAKEOVER_FAILED(Level.WARN),
+        TOOK_OVER(Level.INFO, "millis");
+
+        final Level level;
+        final String[] fields;
+
+        EventType(Level level, String... fields) {
+            this.level = level;
+            this.fields = fields;
+        }
+    }
+
+    private static final class Slot {
+        volatile long sequence = -1;
+        long timestampMillis;
+        EventType type;
+        String clientId;
+        int roomId;
+        long round;
+        int a;
+        int b;
+        int c;
+        int d;
+        Object detail;
+    }
+
+    private static final int BATCH_SIZE = 256;
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final Writer out;
+    private final Thread writer;
+    private volatile Level level;
+    private volatile int sampleEvery;
+    private volatile boolean running = true;
+
+    public GameEventLog(Writer out, Level level, int sampleEvery, int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = size - 1;
+        this.out = out;
+        this.level = out == null ? Level.OFF : level;
+        this.sampleEvery = Math.max(1, sampleEvery);
+
+        if (out != null) {
+            this.writer = new Thread(this::drainLoop, "game-event-log");
+            writer.setDaemon(true);
+            writer.start();
+        } else {
+            this.writer = null;
+        }
+    }
+
+    public static GameEventLog disabled() {
+        return new GameEventLog(null, Level.OFF, 1, 2);
+    }
+
+    public static GameEventLog fromSystemProperties() throws IOException {
+        return fromSystemProperties("game-events.log");
+    }
+
+    // For processes other than the game server, so that they don't append to the same file by default.
+    public static GameEventLog fromSystemProperties(String defaultFile) throws IOException {
+        Level level = Level.valueOf(System.getProperty("game.eventlog.level", "INFO").toUpperCase());
+        if (level == Level.OFF) {
+            return disabled();
+        }
+        Writer out = new BufferedWriter(new FileWriter(System.getProperty("game.eventlog.file", defaultFile), true), 1 << 16);
+        return new GameEventLog(out, level,
+                Integer.getInteger("game.eventlog.sample", 1),
+                Integer.getInteger("game.eventlog.capacity", 1 << 16));
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    public void setLevel(Level level) {
+        this.level = writer == null ? Level.OFF : level;
+    }
+
+    public void setSampleEvery(int sampleEvery) {
+        this.sampleEvery = Math.max(1, sampleEvery);
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public boolean isEnabled(EventType type) {
+        return type.level.compareTo(level) <= 0 && level != Level.OFF;
+    }
+
+    public void log(EventType type, String clientId, int roomId, long round) {
+        log(type, clientId, roomId, round, 0, 0, 0, 0, null);
+    }
+
+    public void log(EventType type, String clientId, int roomId, long round, int a, int b, int c, int d) {
+        log(type, clientId, roomId, round, a, b, c, d, null);
+    }
+
+    public void log(EventType type, String clientId, int roomId, long round, int a, int b, int c, int d, Object detail) {
+        if (!isEnabled(type)) {
+            return;
+        }
+        int sample = sampleEvery;
+        if (type.level == Level.DEBUG && sample > 1 && ThreadLocalRandom.current().nextInt(sample) != 0) {
+            return;
+        }
+
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed.get() >= slots.length) {
+                dropped.increment();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        Slot slot = slots[(int) sequence & mask];
+        slot.timestampMillis = System.currentTimeMillis();
+        slot.type = type;
+        slot.clientId = clientId;
+        slot.roomId = roomId;
+        slot.round = round;
+        slot.a = a;
+        slot.b = b;
+        slot.c = c;
+        slot.d = d;
+        slot.detail = detail;
+        slot.sequence = sequence;
+    }
+
+    private void drainLoop() {
+        StringBuilder line = new StringBuilder(128);
+        int idleSpins = 0;
+        while (running || consumed.get() < claimed.get()) {
+            int written = drainBatch(line);
+            if (written == 0) {
+                LockSupport.parkNanos(idleSpins++ < 10 ? 100_000 : 5_000_000);
+            } else {
+                idleSpins = 0;
+            }
+        }
+        flush();
+    }
+
+    private int drainBatch(StringBuilder line) {
+        long next = consumed.get();
+        int written = 0;
+        try {
+            while (written < BATCH_SIZE) {
+                Slot slot = slots[(int) next & mask];
+                if (slot.sequence != next) {
+                    break;
+                }
+                format(slot, line);
+                out.append(line);
+                slot.clientId = null;
+                slot.detail = null;
+                next++;
+                written++;
+                consumed.lazySet(next);
+            }
+            if (written > 0) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            // Keep draining so producers are never stalled by a broken log file.
+            consumed.lazySet(next + 1);
+        }
+        return written;
+    }
+
+    private void format(Slot slot, StringBuilder line) {
+        EventType type = slot.type;
+        line.setLength(0);
+        line.append(Instant.ofEpochMilli(slot.timestampMillis)).append(' ').append(type);
+        if (slot.clientId != null) {
+            line.append(" client=").append(slot.clientId);
+        }
+        line.append(" room=").append(slot.roomId).append(" round=").append(slot.round);
+        for (int i = 0; i < type.fields.length; i++) {
+            int value = i == 0 ? slot.a : i == 1 ? slot.b : i == 2 ? slot.c : slot.d;
+            line.append(' ').append(type.fields[i]).append('=');
+            if (type == EventType.GUESS && i == 1) {
+                line.append(GuessResult.Status.values()[value]);
+            } else {
+                line.append(value);
+            }
+        }
+        if (slot.detail != null) {
+            line.append(" detail=").append(slot.detail);
+        }
+        line.append('\n');
+    }
+
+    private void flush() {
+        try {
+            out.flush();
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (writer != null) {
+            try {
+                writer.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            try {
+                out.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -2,10 +2,9 @@ package server;
 
 import client.ClientCallbackInterface;
 
-import java.rmi.Remote;
 import java.rmi.RemoteException;
 
-public interface GameInterface extends Remote {
+public interface GameInterface extends SessionGameInterface {
     
     int registerClient(ClientCallbackInterface client) throws RemoteException;
 
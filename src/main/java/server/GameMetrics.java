@@ -0,0 +1,125 @@
+package server;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Counters and histograms for the server, published as a platform MXBean. Recording only touches
+// LongAdders and the lock-free LatencyHistogram, so the hot path never blocks on measurement.
+public class GameMetrics implements GameMetricsMXBean {
+    public static final String OBJECT_NAME = "server:type=GameMetrics";
+
+    private final Map<String, CallMetrics> methods = new ConcurrentHashMap<>();
+    private final CallMetrics notificationCallbacks = new CallMetrics();
+    private final LongAdder outstandingTrials = new LongAdder();
+    private final LongAdder roundsCompleted = new LongAdder();
+    private final LongSupplier registeredPlayers;
+    private long lastRateNanos = System.nanoTime();
+    private long lastRateRounds;
+
+    static final class CallMetrics {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        void record(long nanos, boolean failed) {
+            calls.increment();
+            if (failed) {
+                errors.increment();
+            }
+            latency.record(nanos);
+        }
+
+        void recordFailure() {
+            errors.increment();
+        }
+
+        CallSummary summarize() {
+            LatencyHistogram.Snapshot snapshot = latency.snapshot();
+            return new CallSummary(calls.sum(), errors.sum(), snapshot.getMean() / 1000,
+                    snapshot.getPercentile(0.50) / 1000, snapshot.getPercentile(0.99) / 1000,
+                    snapshot.getPercentile(0.999) / 1000, snapshot.getMax() / 1000);
+        }
+
+        void reset() {
+            calls.reset();
+            errors.reset();
+            latency.snapshotAndReset();
+        }
+    }
+
+    GameMetrics(LongSupplier registeredPlayers) {
+        this.registeredPlayers = registeredPlayers;
+    }
+
+    CallMetrics method(String signature) {
+        return methods.computeIfAbsent(signature, key -> new CallMetrics());
+    }
+
+    CallMetrics notificationCallbacks() {
+        return notificationCallbacks;
+    }
+
+    void trialsAdded(int trials) {
+        outstandingTrials.add(trials);
+    }
+
+    void trialsRemoved(int trials) {
+        outstandingTrials.add(-trials);
+    }
+
+    void roundCompleted() {
+        roundsCompleted.increment();
+    }
+
+    @Override
+    public Map<String, CallSummary> getMethods() {
+        Map<String, CallSummary> summaries = new LinkedHashMap<>();
+        methods.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(entry -> summaries.put(entry.getKey(), entry.getValue().summarize()));
+        return Collections.unmodifiableMap(summaries);
+    }
+
+    @Override
+    public CallSummary getNotificationCallbacks() {
+        return notificationCallbacks.summarize();
+    }
+
+    @Override
+    public long getRegisteredPlayers() {
+        return registeredPlayers.getAsLong();
+    }
+
+    @Override
+    public long getOutstandingTrials() {
+        return outstandingTrials.sum();
+    }
+
+    @Override
+    public long getRoundsCompleted() {
+        return roundsCompleted.sum();
+    }
+
+    @Override
+    public synchronized double getRoundsPerSecond() {
+        long now = System.nanoTime();
+        long rounds = roundsCompleted.sum();
+        double elapsedSeconds = (now - lastRateNanos) / 1e9;
+        double rate = elapsedSeconds > 0 ? (rounds - lastRateRounds) / elapsedSeconds : 0;
+        lastRateNanos = now;
+        lastRateRounds = rounds;
+        return rate;
+    }
+
+    @Override
+    public void reset() {
+        for (CallMetrics callMetrics : methods.values()) {
+            callMetrics.reset();
+        }
+        notificationCallbacks.reset();
+    }
+}
@@ -0,0 +1,26 @@
+package server;
+
+import java.util.Map;
+
+public interface GameMetricsMXBean {
+    // Keyed by method signature, e.g. "makeGuess(long,int)".
+    Map<String, CallSummary> getMethods();
+
+    
+    CallSummary getNotificationCallbacks();
+
+    
+    long getRegisteredPlayers();
+
+    
+    long getOutstandingTrials();
+
+    
+    long getRoundsCompleted();
+
+    // Rounds completed per second since the previous read of this attribute.
+    double getRoundsPerSecond();
+
+    
+    void reset();
+}
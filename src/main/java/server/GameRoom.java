@@ -0,0 +1,158 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+// One independent round of the game: its own secret, round counter and members.
+class GameRoom {
+    private final int roomId;
+    private final String name;
+    private final AtomicReference<Round> currentRound;
+    // The PlayerStore slots of its members, slot + 1 per bucket and 0 for an empty bucket; linear
+    // probing, at most half full. Guarded by the room.
+    private int[] members = new int[8];
+    private int memberCount;
+    private final GameEventLog eventLog;
+    private final SecretSource secrets;
+    private boolean closed;
+
+    // Immutable, so a round is replaced as a whole and its number identifies which secret a guess was judged against.
+    static final class Round {
+        final long number;
+        final int secret;
+
+        Round(long number, int secret) {
+            this.number = number;
+            this.secret = secret;
+        }
+    }
+
+    GameRoom(int roomId, String name, GameEventLog eventLog, SecretSource secrets) {
+        this.roomId = roomId;
+        this.name = name;
+        this.eventLog = eventLog;
+        this.secrets = secrets;
+        this.currentRound = new AtomicReference<>(newRound(0));
+        eventLog.log(GameEventLog.EventType.ROUND_STARTED, null, roomId, 0);
+    }
+
+    int getRoomId() {
+        return roomId;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Round currentRound() {
+        return currentRound.get();
+    }
+
+    // Returns the new round if this call moved the room past the expected one, or null if another guess got there first.
+    Round rollOver(Round expected) {
+        Round next = newRound(expected.number + 1);
+        if (!currentRound.compareAndSet(expected, next)) {
+            return null;
+        }
+        eventLog.log(GameEventLog.EventType.ROUND_STARTED, null, roomId, next.number);
+        return next;
+    }
+
+    // Replication only: takes over the round a primary was in, whatever this room was doing.
+    void restoreRound(Round round) {
+        currentRound.set(round);
+    }
+
+    // A copy, so the caller can notify the members without holding the room.
+    synchronized int[] members() {
+        int[] slots = new int[memberCount];
+        int count = 0;
+        for (int member : members) {
+            if (member != 0) {
+                slots[count++] = member - 1;
+            }
+        }
+        return slots;
+    }
+
+    synchronized boolean isEmpty() {
+        return memberCount == 0;
+    }
+
+    synchronized boolean join(int slot) {
+        if (closed) {
+            return false;
+        }
+        if ((memberCount + 1) * 2 > members.length) {
+            int[] old = members;
+            members = new int[old.length * 2];
+            for (int member : old) {
+                if (member != 0) {
+                    insert(member);
+                }
+            }
+        }
+        if (find(slot) < 0) {
+            insert(slot + 1);
+            memberCount++;
+        }
+        return true;
+    }
+
+    // Returns true when the room became empty and was closed, so the caller can drop it.
+    synchronized boolean leave(int slot, boolean closeWhenEmpty) {
+        int gap = find(slot);
+        if (gap >= 0) {
+            // Backward-shift deletion, as in PlayerStore's index.
+            int mask = members.length - 1;
+            for (int bucket = (gap + 1) & mask; members[bucket] != 0; bucket = (bucket + 1) & mask) {
+                int home = bucketOf(members[bucket] - 1, mask);
+                if (((bucket - home) & mask) >= ((bucket - gap) & mask)) {
+                    members[gap] = members[bucket];
+                    gap = bucket;
+                }
+            }
+            members[gap] = 0;
+            memberCount--;
+        }
+        if (closeWhenEmpty && memberCount == 0) {
+            closed = true;
+        }
+        return closed;
+    }
+
+    // Closes the room if nobody is in it; returns true when it is closed.
+    synchronized boolean closeIfEmpty() {
+        if (memberCount == 0) {
+            closed = true;
+        }
+        return closed;
+    }
+
+    private int find(int slot) {
+        int mask = members.length - 1;
+        for (int bucket = bucketOf(slot, mask); members[bucket] != 0; bucket = (bucket + 1) & mask) {
+            if (members[bucket] == slot + 1) {
+                return bucket;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(int member) {
+        int mask = members.length - 1;
+        int bucket = bucketOf(member - 1, mask);
+        while (members[bucket] != 0) {
+            bucket = (bucket + 1) & mask;
+        }
+        members[bucket] = member;
+    }
+
+    private static int bucketOf(int slot, int mask) {
+        int h = slot * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private Round newRound(long number) {
+        return new Round(number, secrets.secretFor(roomId, number));
+    }
+}
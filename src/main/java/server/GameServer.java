@@ -2,180 +2,1091 @@ package server;
 
 import client.ClientCallbackInterface;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.ObjectName;
 
 public class GameServer implements GameInterface {
-    private int randomNumber;
-    private Random random;
-    private Map<String, ClientInfo> clients;
+    static final int MAX_LEADERBOARD_SIZE = 1000;
+    static final long DEFAULT_LEASE_MILLIS = 60_000;
+    private static final int PLAYER_LOCKS = 4096;
 
-    
-    private static class ClientInfo {
-        int score;
-        int trials;
-        ClientCallbackInterface clientCallback;
+    private RoomTable rooms;
+    // Every player on this node, online or not, in dense slots; see PlayerStore. A call names its
+    // player by slot and session token, and is turned away once the slot no longer holds that token.
+    private PlayerStore players;
+    // Per-player locks, shared by the players whose slots are equal modulo PLAYER_LOCKS.
+    private final Object[] playerLocks = new Object[PLAYER_LOCKS];
+    private SecureRandom tokenGenerator;
+    private NotificationDispatcher notificationDispatcher;
+    private GameMetrics metrics;
+    private GameEventLog eventLog;
+    private PlayerJournal journal;
+    private Leaderboard leaderboard;
+    private volatile long leaseMillis;
+    // Calls within this long of the last renewal do not write the lease again.
+    private volatile long renewGranularityNanos = TimeUnit.SECONDS.toNanos(1);
+    private ScheduledExecutorService leaseSweeper;
+    // Each session's state versions start at a fresh epoch in the high word, so a version cached from
+    // an earlier session of the same player never matches the current one.
+    private final AtomicLong versionEpochs = new AtomicLong();
+    // Cluster mode only: where players live, and where sessions handed off from here went.
+    private volatile ClusterNode cluster;
+    private Map<Long, NodeAddress> movedSessions;
+    private ReplicationLog replication = ReplicationLog.disabled();
+    private SpectatorFeed spectators = SpectatorFeed.disabled();
+    // Single-writer mode only: everything that changes a player runs on the writer that owns it.
+    private volatile CommandEngine engine;
+    private final ThreadLocal<PlayerCommand> commands = ThreadLocal.withInitial(PlayerCommand::new);
+    // Returned by a writer that was handed a player another writer owns by now.
+    private static final Object MOVED = new Object();
 
-        public ClientInfo(ClientCallbackInterface clientCallback) {
-            this.score = 100; 
-            this.trials = 0;
-            this.clientCallback = clientCallback;
-        }
+    public GameServer() {
+        this(GameEventLog.disabled());
     }
 
-    public GameServer() {
-        this.random = new Random();
-        this.clients = new HashMap<>();
-        generateNewRandomNumber();
+    public GameServer(GameEventLog eventLog) {
+        this(eventLog, PlayerJournal.disabled());
     }
 
-    private void generateNewRandomNumber() {
-        this.randomNumber = random.nextInt(100) + 1; 
-        System.out.println("New random number generated: " + randomNumber);
+    public GameServer(GameEventLog eventLog, PlayerJournal journal) {
+        this(eventLog, journal, SecretSource.unpredictable());
+    }
+
+    public GameServer(GameEventLog eventLog, PlayerJournal journal, SecretSource secrets) {
+        this.eventLog = eventLog;
+        this.journal = journal;
+        this.leaderboard = new Leaderboard(slot -> players.clientIdOf(slot));
+        this.players = new PlayerStore(leaderboard);
+        for (int i = 0; i < playerLocks.length; i++) {
+            playerLocks[i] = new Object();
+        }
+        this.movedSessions = new ConcurrentHashMap<>();
+        this.tokenGenerator = new SecureRandom();
+        this.metrics = new GameMetrics(() -> players.onlineCount());
+        this.notificationDispatcher = new NotificationDispatcher(metrics.notificationCallbacks(), eventLog);
+        this.rooms = new RoomTable(eventLog, secrets);
     }
 
     @Override
     public int registerClient(ClientCallbackInterface client) throws RemoteException {
-        String clientId = client.getClientId();
-        ClientInfo clientInfo = new ClientInfo(client);
-        clients.put(clientId, clientInfo);
-        System.out.println("New client registered: " + clientId);
-        return clientInfo.score;
+        long sessionToken = register(client, client.getClientId(), 0);
+        return scoreOf(lookup(sessionToken), sessionToken);
     }
 
     @Override
-    public int buyTrials(ClientCallbackInterface client, int numberOfTrials) throws RemoteException {
-        String clientId = client.getClientId();
-        ClientInfo clientInfo = clients.get(clientId);
+    public SessionHandle registerClient(ClientCallbackInterface client, String clientId) throws RemoteException {
+        if (clientId == null || clientId.isEmpty()) {
+            throw new RemoteException("Client id is required");
+        }
+        ClusterNode cluster = this.cluster;
+        if (cluster != null && !players.contains(clientId)) {
+            NodeAddress owner = cluster.ownerOfPlayer(clientId);
+            if (!cluster.isSelf(owner)) {
+                throw new WrongNodeException("Client " + clientId + " belongs to node " + owner, owner);
+            }
+        }
+        long sessionToken = register(client, clientId, 0);
+        return new SessionHandle(sessionToken, clientId, scoreOf(lookup(sessionToken), sessionToken));
+    }
+
+    @Override
+    public SessionHandle resumeSession(ClientCallbackInterface client, String clientId, long sessionToken) throws RemoteException {
+        int online = players.slotOfSession(sessionToken);
+        if (online != PlayerStore.NO_SLOT && clientId.equals(players.clientIdOf(online))) {
+            players.renew(online, renewGranularityNanos);
+            players.setCallback(online, client);
+            notificationDispatcher.register(online, clientId, client);
+            return new SessionHandle(sessionToken, clientId, scoreOf(online, sessionToken));
+        }
+
+        // The room a handed-over player was in; on a standby, every replicated player is held this way.
+        int handedOffRoom = players.claim(clientId, sessionToken);
+        if (handedOffRoom == PlayerStore.NOT_HELD) {
+            NodeAddress movedTo = movedSessions.get(sessionToken);
+            if (movedTo != null) {
+                throw new WrongNodeException("Session moved to node " + movedTo, movedTo);
+            }
+            throw new RemoteException("Session cannot be resumed");
+        }
+        long resumed = register(client, clientId, sessionToken);
+        int slot = lookup(resumed);
+        if (handedOffRoom != RoomTable.LOBBY_ID) {
+            // Retried because a room that empties is closed before it leaves the table.
+            GameRoom room;
+            while (!moveTo(slot, resumed, room = rooms.getOrCreate(handedOffRoom))) {
+                checkAttached(slot, resumed);
+                Thread.onSpinWait();
+            }
+            replication.room(room, room.currentRound());
+        }
+        eventLog.log(GameEventLog.EventType.SESSION_RESUMED, clientId, handedOffRoom, 0);
+        return new SessionHandle(resumed, clientId, scoreOf(slot, resumed));
+    }
+
+    @Override
+    public long heartbeat(long sessionToken) throws RemoteException {
+        lookup(sessionToken);
+        return leaseMillis;
+    }
+
+    // requestedToken is reused when it is free, which is how a parked session keeps its token; 0 draws
+    // a new one. A session the player already has here is ended first, keeping its score and trials.
+    private long register(ClientCallbackInterface client, String clientId, long requestedToken) throws RemoteException {
+        int partition = partitionOf(clientId, RoomTable.LOBBY_ID);
+        long version = versionEpochs.incrementAndGet() << 32;
+        long sessionToken;
+        while ((sessionToken = players.goOnline(clientId, requestedToken, tokenGenerator::nextLong, partition, version,
+                client)) == 0) {
+            endSession(clientId);
+        }
+        int slot = players.slotOfSession(sessionToken);
+        if (slot == PlayerStore.NO_SLOT) {
+            // Replaced or handed off already; the caller's first call finds out.
+            return sessionToken;
+        }
+        long token = sessionToken;
+        withPlayer(slot, () -> {
+            if (players.attached(slot, token) == PlayerStore.ATTACHED) {
+                metrics.trialsAdded(players.trials(slot));
+                persist(slot, players.score(slot), players.trials(slot));
+            }
+            return null;
+        });
+        moveTo(slot, sessionToken, rooms.lobby());
+        notificationDispatcher.register(slot, clientId, client);
+        eventLog.log(GameEventLog.EventType.CLIENT_REGISTERED, clientId, RoomTable.LOBBY_ID, 0);
+        return sessionToken;
+    }
+
+    // Ends the session the player has here, if any, keeping it here offline with its score and trials.
+    private void endSession(String clientId) throws RemoteException {
+        long sessionToken = players.sessionOf(clientId);
+        int slot = sessionToken == 0 ? PlayerStore.NO_SLOT : players.slotOfSession(sessionToken);
+        if (slot == PlayerStore.NO_SLOT) {
+            return;
+        }
+        withPlayer(slot, () -> {
+            if (players.attached(slot, sessionToken) != PlayerStore.DETACHED) {
+                ClientCallbackInterface callback = players.callback(slot);
+                leaveRoom(slot);
+                metrics.trialsRemoved(players.trials(slot));
+                players.goOffline(slot, false);
+                notificationDispatcher.unregister(slot, callback);
+            }
+            return null;
+        });
+    }
+
+    // Gives every player to one writer thread, picked by its room, or by its id while in the lobby;
+    // see CommandEngine and withPlayer.
+    public synchronized void startCommandEngine(int ringCapacity, long timeoutMillis) {
+        if (engine == null) {
+            engine = new CommandEngine(rooms.partitionCount(), ringCapacity, timeoutMillis);
+        }
+    }
 
-        if (clientInfo == null) {
+    // Calls go back to per-player locks once the writers have drained, so none runs beside a writer.
+    public synchronized void stopCommandEngine() {
+        if (engine != null) {
+            engine.close();
+            try {
+                engine.awaitStopped();
+            } catch (RemoteException e) {
+                // Calls still see the closed engine, which keeps waiting for the writers before running any.
+                return;
+            }
+            engine = null;
+        }
+    }
+
+    // Primary side of hot-standby replication: lets a standby pull this server's state and changes.
+    public void replicateTo(ReplicationLog replication) {
+        this.replication = replication;
+        replication.start(this::snapshotForReplica, versionEpochs::get, eventLog);
+    }
+
+    // Streams guesses, wins and new rounds to spectators in windowed batches.
+    public void broadcastTo(SpectatorFeed spectators) {
+        this.spectators = spectators;
+        spectators.start(this::summarizeForSpectators);
+    }
+
+    private void summarizeForSpectators(List<SpectatorEvent> rounds) {
+        rooms.forEach(room -> rounds.add(new SpectatorEvent(SpectatorEvent.Kind.ROUND_STARTED, null, room.getRoomId(),
+                room.currentRound().number, 0, 0, null, null)));
+    }
+
+    private void snapshotForReplica(ReplicationBatch batch) {
+        players.forEach((clientId, sessionToken, score, trials, roomId) ->
+                batch.player(new PlayerHandoff(clientId, sessionToken, score, trials, roomId)));
+        rooms.forEach(room -> {
+            GameRoom.Round round = room.currentRound();
+            batch.room(new ReplicationBatch.Room(room.getRoomId(), room.getName(), round.number, round.secret, false));
+        });
+    }
+
+    // Standby side of replication. Nothing is bound yet, so every player is parked under its token and
+    // room, and the rooms keep the primary's rounds; a snapshot also drops what the primary no longer has.
+    void applyReplica(ReplicationBatch batch) {
+        if (batch.isSnapshot()) {
+            List<String> dropped = new ArrayList<>();
+            players.forEachOffline((clientId, sessionToken, score, trials, roomId) -> {
+                if (!batch.players().containsKey(clientId)) {
+                    dropped.add(clientId);
+                }
+            });
+            dropped.forEach(players::removeOffline);
+            rooms.forEach(room -> {
+                if (room.getRoomId() != RoomTable.LOBBY_ID && room.isEmpty()) {
+                    rooms.remove(room);
+                }
+            });
+        }
+        versionEpochs.accumulateAndGet(batch.getVersionEpoch(), Math::max);
+        for (ReplicationBatch.Room room : batch.rooms()) {
+            if (!room.closed) {
+                rooms.restore(room.roomId, room.name, new GameRoom.Round(room.round, room.secret));
+            } else if (room.roomId != RoomTable.LOBBY_ID && rooms.get(room.roomId) != null) {
+                rooms.remove(rooms.get(room.roomId));
+            }
+        }
+        for (Map.Entry<String, PlayerHandoff> player : batch.players().entrySet()) {
+            if (player.getValue() == null) {
+                players.removeOffline(player.getKey());
+            } else {
+                park(player.getValue());
+            }
+        }
+    }
+
+    // Loads the players saved by a previous run and starts journaling; returns the number of records applied.
+    public long recover() throws IOException {
+        long applied = journal.recover(
+                (clientId, score, trials) -> players.park(clientId, 0, score, trials, RoomTable.LOBBY_ID),
+                players::removeOffline);
+        journal.start(this::forEachPlayer, eventLog);
+        return applied;
+    }
+
+    private void forEachPlayer(PlayerJournal.PlayerStateConsumer consumer) {
+        players.forEach((clientId, sessionToken, score, trials, roomId) -> consumer.accept(clientId, score, trials));
+    }
+
+    // Expires sessions that have made no call for leaseMillis, checking every quarter lease.
+    public synchronized void startLeaseSweeper(long leaseMillis) {
+        if (leaseSweeper != null || leaseMillis <= 0) {
+            return;
+        }
+        this.leaseMillis = leaseMillis;
+        this.renewGranularityNanos = Math.min(renewGranularityNanos, TimeUnit.MILLISECONDS.toNanos(leaseMillis) / 8);
+        leaseSweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "lease-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(10, leaseMillis / 4);
+        leaseSweeper.scheduleWithFixedDelay(this::expireSessions, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // Parks every player whose lease has run out: the session, room seat and callback are dropped
+    // and only score, trials and the token are kept, as for the recovered players.
+    int expireSessions() {
+        long leaseNanos = TimeUnit.MILLISECONDS.toNanos(leaseMillis);
+        long now = System.nanoTime();
+        int expired = 0;
+
+        for (int slot = 0, limit = players.slotLimit(); slot < limit; slot++) {
+            long sessionToken = players.sessionOf(slot);
+            if (sessionToken == 0 || now - players.lastSeen(slot) < leaseNanos) {
+                continue;
+            }
+            int expiring = slot;
+            PlayerHandoff parked;
+            try {
+                parked = withPlayer(slot, () -> {
+                    if (players.attached(expiring, sessionToken) != PlayerStore.ATTACHED
+                            || now - players.lastSeen(expiring) < leaseNanos) {
+                        return null;
+                    }
+                    PlayerHandoff player = new PlayerHandoff(players.clientId(expiring), sessionToken,
+                            players.score(expiring), players.trials(expiring), RoomTable.LOBBY_ID);
+                    ClientCallbackInterface callback = players.callback(expiring);
+                    leaveRoom(expiring);
+                    players.goOffline(expiring, true);
+                    notificationDispatcher.unregister(expiring, callback);
+                    replication.player(player.getClientId(), sessionToken, player.getScore(), player.getTrials(),
+                            RoomTable.LOBBY_ID);
+                    metrics.trialsRemoved(player.getTrials());
+                    return player;
+                });
+            } catch (RemoteException e) {
+                // Its writer is backed up; the next sweep tries again.
+                continue;
+            }
+            if (parked == null) {
+                continue;
+            }
+            eventLog.log(GameEventLog.EventType.SESSION_EXPIRED, parked.getClientId(), RoomTable.LOBBY_ID, 0,
+                    parked.getScore(), parked.getTrials(), 0, 0);
+            expired++;
+        }
+        return expired;
+    }
+
+    // Cluster mode: from here on, players this node does not own are turned away or handed off.
+    void joinCluster(ClusterNode cluster) {
+        this.cluster = cluster;
+    }
+
+    // Hands one player to the node that owns the room it asked for. The player is marked as moving
+    // first, so calls made while the owner takes it are sent there and cannot change the state handed
+    // over; the remote call itself runs without having the player. If the owner cannot be reached,
+    // the mark is cleared and nothing else changes.
+    private void moveToNode(int slot, long sessionToken, NodeAddress owner, int roomId) throws RemoteException {
+        PlayerHandoff handoff = withPlayer(slot, () -> {
+            checkAttached(slot, sessionToken);
+            movedSessions.put(sessionToken, owner);
+            players.setMoving(slot, true);
+            return new PlayerHandoff(players.clientId(slot), sessionToken, players.score(slot), players.trials(slot),
+                    roomId);
+        });
+        try {
+            cluster.handOff(owner, Collections.singletonList(handoff));
+        } catch (RemoteException e) {
+            withPlayer(slot, () -> {
+                if (players.attached(slot, sessionToken) == PlayerStore.MOVING) {
+                    players.setMoving(slot, false);
+                }
+                return movedSessions.remove(sessionToken, owner);
+            });
+            throw e;
+        }
+        withPlayer(slot, () -> detach(slot, sessionToken, owner));
+    }
+
+    // Cluster mode: hands every player this node no longer owns to its owner, after a membership change.
+    // Lobby and offline players are placed by client id, seated players by room id. Returns false if an
+    // owner could not be reached; its players are parked here again for the next attempt.
+    boolean rebalance() {
+        ClusterNode cluster = this.cluster;
+        Map<NodeAddress, List<PlayerHandoff>> moves = new HashMap<>();
+        boolean complete = true;
+
+        for (int slot = 0, limit = players.slotLimit(); slot < limit; slot++) {
+            long sessionToken = players.sessionOf(slot);
+            if (sessionToken == 0) {
+                continue;
+            }
+            int leaving = slot;
+            PlayerHandoff handoff;
+            try {
+                handoff = withPlayer(slot, () -> {
+                    if (players.attached(leaving, sessionToken) != PlayerStore.ATTACHED) {
+                        return null;
+                    }
+                    NodeAddress owner = ownerOf(cluster, players.clientId(leaving), players.roomId(leaving));
+                    return cluster.isSelf(owner) ? null : detach(leaving, sessionToken, owner);
+                });
+            } catch (RemoteException e) {
+                // Its writer is backed up; left for the next attempt.
+                complete = false;
+                continue;
+            }
+            if (handoff != null) {
+                moves.computeIfAbsent(ownerOf(cluster, handoff.getClientId(), handoff.getRoomId()),
+                        node -> new ArrayList<>()).add(handoff);
+            }
+        }
+
+        List<String> leaving = new ArrayList<>();
+        players.forEachOffline((clientId, sessionToken, score, trials, roomId) -> {
+            if (!cluster.isSelf(ownerOf(cluster, clientId, roomId))) {
+                leaving.add(clientId);
+            }
+        });
+        for (String clientId : leaving) {
+            // Whatever the player holds now is what moves, even if it changed since the scan.
+            PlayerHandoff player = players.removeOffline(clientId);
+            if (player == null) {
+                continue;
+            }
+            NodeAddress owner = ownerOf(cluster, clientId, player.getRoomId());
+            journal.remove(clientId);
+            if (player.getSessionToken() != 0) {
+                movedSessions.put(player.getSessionToken(), owner);
+            }
+            moves.computeIfAbsent(owner, node -> new ArrayList<>()).add(player);
+        }
+
+        for (Map.Entry<NodeAddress, List<PlayerHandoff>> move : moves.entrySet()) {
+            try {
+                cluster.handOff(move.getKey(), move.getValue());
+                for (PlayerHandoff player : move.getValue()) {
+                    eventLog.log(GameEventLog.EventType.PLAYER_HANDED_OFF, player.getClientId(), player.getRoomId(), 0,
+                            player.getScore(), player.getTrials(), 0, 0);
+                }
+            } catch (RemoteException e) {
+                adopt(move.getValue());
+                complete = false;
+            }
+        }
+        return complete;
+    }
+
+    private static NodeAddress ownerOf(ClusterNode cluster, String clientId, int roomId) {
+        return roomId == RoomTable.LOBBY_ID ? cluster.ownerOfPlayer(clientId) : cluster.ownerOfRoom(roomId);
+    }
+
+    // Cluster mode: parks players handed over by another node, to be resumed under their own tokens.
+    // The handed-over state is the latest, so an older session of the same player here is dropped.
+    void adopt(List<PlayerHandoff> players) {
+        for (PlayerHandoff player : players) {
+            while (!park(player)) {
+                try {
+                    endSession(player.getClientId());
+                } catch (RemoteException e) {
+                    // Timed out, but still queued on its writer, which ends the old session when it gets to it.
+                    Thread.yield();
+                }
+            }
+            eventLog.log(GameEventLog.EventType.PLAYER_ADOPTED, player.getClientId(), player.getRoomId(), 0,
+                    player.getScore(), player.getTrials(), 0, 0);
+        }
+    }
+
+    // Keeps a player that is not online here, to be resumed under its token and seated in its room;
+    // returns false if the player is online here.
+    private boolean park(PlayerHandoff player) {
+        String clientId = player.getClientId();
+        if (!players.park(clientId, player.getSessionToken(), player.getScore(), player.getTrials(), player.getRoomId())) {
+            return false;
+        }
+        journal.record(clientId, player.getScore(), player.getTrials());
+        replication.player(clientId, player.getSessionToken(), player.getScore(), player.getTrials(), player.getRoomId());
+        if (player.getSessionToken() != 0) {
+            movedSessions.remove(player.getSessionToken());
+        }
+        return true;
+    }
+
+    // Called with the player to itself. Takes an online player off this node, leaving a forwarding
+    // entry for its token; returns null if the session ended meanwhile.
+    private PlayerHandoff detach(int slot, long sessionToken, NodeAddress owner) {
+        if (players.attached(slot, sessionToken) == PlayerStore.DETACHED) {
+            return null;
+        }
+        movedSessions.put(sessionToken, owner);
+        String clientId = players.clientId(slot);
+        PlayerHandoff handoff = new PlayerHandoff(clientId, sessionToken, players.score(slot), players.trials(slot),
+                players.roomId(slot));
+        ClientCallbackInterface callback = players.callback(slot);
+        leaveRoom(slot);
+        metrics.trialsRemoved(handoff.getTrials());
+        notificationDispatcher.unregister(slot, callback);
+        players.remove(slot);
+        journal.remove(clientId);
+        replication.playerRemoved(clientId);
+        return handoff;
+    }
+
+    // Called with the player to itself after every change to its score or trials.
+    private void persist(int slot, int score, int trials) {
+        players.update(slot, score, trials);
+        journal.record(players.clientId(slot), score, trials);
+        leaderboard.update(slot, score);
+        replicate(slot);
+    }
+
+    // Runs the action with the player to itself: under its lock, or in single-writer mode on the
+    // writer that owns it, which is then the only thread that changes the player.
+    private <T> T withPlayer(int slot, PlayerAction<T> action) throws RemoteException {
+        CommandEngine engine = this.engine;
+        if (engine == null) {
+            synchronized (lockOf(slot)) {
+                return action.apply();
+            }
+        }
+        PlayerTask<T> task = new PlayerTask<>(action);
+        task.slot = slot;
+        @SuppressWarnings("unchecked")
+        T result = (T) submit(engine, task);
+        return result;
+    }
+
+    private Object lockOf(int slot) {
+        return playerLocks[slot & (PLAYER_LOCKS - 1)];
+    }
+
+    // The writer that owns a player in single-writer mode: its room's partition, or while in the lobby,
+    // which every player passes through, one picked by its id so the lobby is spread over all writers.
+    private int partitionOf(String clientId, int roomId) {
+        if (roomId != RoomTable.LOBBY_ID) {
+            return rooms.partitionOf(roomId).index;
+        }
+        int hash = clientId.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), rooms.partitionCount());
+    }
+
+    private void replicate(int slot) {
+        replication.player(players.clientId(slot), players.sessionOf(slot), players.score(slot), players.trials(slot),
+                players.roomId(slot));
+    }
+
+    // Legacy calls name the player by its callback's client id.
+    private long sessionOf(ClientCallbackInterface client) throws RemoteException {
+        long sessionToken = players.sessionOf(client.getClientId());
+
+        if (sessionToken == 0) {
             throw new RemoteException("Client not registered");
         }
+        return sessionToken;
+    }
 
-        int cost = numberOfTrials * 10;
+    // The slot of the session's player, renewing its lease.
+    private int lookup(long sessionToken) throws RemoteException {
+        int slot = players.slotOfSession(sessionToken);
 
-        if (clientInfo.score < cost) {
-            throw new RemoteException("Not enough points to buy trials");
+        if (slot == PlayerStore.NO_SLOT) {
+            NodeAddress movedTo = movedSessions.get(sessionToken);
+            if (movedTo != null) {
+                throw new WrongNodeException("Session moved to node " + movedTo, movedTo);
+            }
+            throw new RemoteException("Unknown or expired session");
         }
 
-        clientInfo.score -= cost;
-        clientInfo.trials += numberOfTrials;
+        players.renew(slot, renewGranularityNanos);
+        return slot;
+    }
 
-        System.out.println("Client " + clientId + " bought " + numberOfTrials +
-                " trials. New score: " + clientInfo.score +
-                ", Trials: " + clientInfo.trials);
+    @Override
+    public int createRoom(long sessionToken, String name) throws RemoteException {
+        int slot = lookup(sessionToken);
+        String roomName = name == null || name.trim().isEmpty() ? "Room" : name.trim();
+        ClusterNode cluster = this.cluster;
+        GameRoom room = cluster == null ? rooms.create(roomName)
+                : rooms.create(roomName, roomId -> cluster.isSelf(cluster.ownerOfRoom(roomId)));
+        replication.room(room, room.currentRound());
 
-        return clientInfo.score;
+        if (!moveTo(slot, sessionToken, room)) {
+            // Nobody asked for the room but this player, so it goes unless someone joined it by id meanwhile.
+            if (room.closeIfEmpty()) {
+                rooms.remove(room);
+                replication.roomClosed(room.getRoomId());
+            }
+            checkAttached(slot, sessionToken);
+            throw new RemoteException("Room could not be joined");
+        }
+
+        eventLog.log(GameEventLog.EventType.ROOM_CREATED, players.clientIdOf(slot), room.getRoomId(), 0,
+                room.getRoomId(), 0, 0, 0);
+        return room.getRoomId();
+    }
+
+    @Override
+    public void joinRoom(long sessionToken, int roomId) throws RemoteException {
+        int slot = lookup(sessionToken);
+        ClusterNode cluster = this.cluster;
+        if (cluster != null) {
+            NodeAddress owner = cluster.ownerOfRoom(roomId);
+            if (!cluster.isSelf(owner)) {
+                moveToNode(slot, sessionToken, owner, roomId);
+                throw new WrongNodeException("Room " + roomId + " is on node " + owner, owner);
+            }
+        }
+        GameRoom room = rooms.get(roomId);
+
+        if (room == null || !moveTo(slot, sessionToken, room)) {
+            checkAttached(slot, sessionToken);
+            throw new RemoteException("Room " + roomId + " does not exist");
+        }
+    }
+
+    @Override
+    public int getRoomId(long sessionToken) throws RemoteException {
+        int slot = lookup(sessionToken);
+        return stateOf(slot, sessionToken).getRoomId();
+    }
+
+    // Called by anything that uses the player's room, score or trials after lookup.
+    private void checkAttached(int slot, long sessionToken) throws RemoteException {
+        if (players.attached(slot, sessionToken) == PlayerStore.ATTACHED) {
+            return;
+        }
+        NodeAddress movedTo = movedSessions.get(sessionToken);
+        if (movedTo != null) {
+            throw new WrongNodeException("Session moved to node " + movedTo, movedTo);
+        }
+        throw new RemoteException("Unknown or expired session");
+    }
+
+    // In single-writer mode a room in another partition also hands the player to that partition's writer.
+    private boolean moveTo(int slot, long sessionToken, GameRoom room) throws RemoteException {
+        return withPlayer(slot, () -> {
+            if (players.attached(slot, sessionToken) != PlayerStore.ATTACHED) {
+                return false;
+            }
+            if (players.room(slot) == room) {
+                return true;
+            }
+            if (!room.join(slot)) {
+                return false;
+            }
+            leaveRoom(slot);
+            players.seat(slot, room, partitionOf(players.clientId(slot), room.getRoomId()));
+            replicate(slot);
+            return true;
+        });
+    }
+
+    // Gives up the player's seat; the caller seats it elsewhere or takes it offline.
+    private void leaveRoom(int slot) {
+        GameRoom room = players.room(slot);
+        if (room != null && room.leave(slot, room.getRoomId() != RoomTable.LOBBY_ID)) {
+            rooms.remove(room);
+            replication.roomClosed(room.getRoomId());
+        }
+    }
+
+    @Override
+    public int buyTrials(ClientCallbackInterface client, int numberOfTrials) throws RemoteException {
+        return buyTrials(sessionOf(client), numberOfTrials).getScore();
+    }
+
+    @Override
+    public PlayerState buyTrials(long sessionToken, int numberOfTrials) throws RemoteException {
+        int slot = lookup(sessionToken);
+        CommandEngine engine = this.engine;
+        if (engine == null) {
+            synchronized (lockOf(slot)) {
+                return buyTrials(slot, sessionToken, numberOfTrials);
+            }
+        }
+        return (PlayerState) submit(engine, PlayerCommand.Kind.BUY_TRIALS, slot, sessionToken, numberOfTrials, null);
+    }
+
+    // This and the other guess and purchase bodies are called with the player to itself.
+    private PlayerState buyTrials(int slot, long sessionToken, int numberOfTrials) throws RemoteException {
+        int cost = numberOfTrials * 10;
+
+        checkAttached(slot, sessionToken);
+        int score = players.score(slot);
+        if (score < cost) {
+            throw new RemoteException("Not enough points to buy trials");
+        }
+
+        metrics.trialsAdded(numberOfTrials);
+        persist(slot, score - cost, players.trials(slot) + numberOfTrials);
+        PlayerState state = players.state(slot);
+        eventLog.log(GameEventLog.EventType.TRIALS_BOUGHT, players.clientId(slot), state.getRoomId(), 0,
+                numberOfTrials, state.getScore(), state.getTrials(), 0);
+        return state;
     }
 
     @Override
     public GuessResult makeGuess(ClientCallbackInterface client, int guess) throws RemoteException {
-        String clientId = client.getClientId();
-        ClientInfo clientInfo = clients.get(clientId);
+        return makeGuess(sessionOf(client), guess);
+    }
 
-        if (clientInfo == null) {
-            throw new RemoteException("Client not registered");
+    @Override
+    public GuessResult makeGuess(long sessionToken, int guess) throws RemoteException {
+        int slot = lookup(sessionToken);
+        CommandEngine engine = this.engine;
+        if (engine == null) {
+            synchronized (lockOf(slot)) {
+                return makeGuess(slot, sessionToken, guess);
+            }
         }
+        return (GuessResult) submit(engine, PlayerCommand.Kind.GUESS, slot, sessionToken, guess, null);
+    }
+
+    private GuessResult makeGuess(int slot, long sessionToken, int guess) throws RemoteException {
+        checkAttached(slot, sessionToken);
+        String clientId = players.clientId(slot);
+        GameRoom room = players.room(slot);
+        int score = players.score(slot);
+        int trials = players.trials(slot);
 
-        if (clientInfo.trials <= 0) {
-            return new GuessResult(GuessResult.Status.ERROR, 0, clientInfo.score, 0,
-                    "No trials left. Please buy more trials.");
+        if (trials <= 0) {
+            return new GuessResult(GuessResult.Status.ERROR, GuessResult.MessageCode.NO_TRIALS,
+                    0, score, 0, room.getRoomId(), players.version(slot));
         }
 
         
-        clientInfo.trials--;
+        trials--;
+        metrics.trialsRemoved(1);
 
-        System.out.println("Client " + clientId + " guessed: " + guess +
-                ". Actual number: " + randomNumber);
+        while (true) {
+            GameRoom.Round round = room.currentRound();
 
-        
-        if (guess == randomNumber) {
-            
-            int refund = clientInfo.trials * 10;
-            clientInfo.score += refund;
-            clientInfo.trials = 0;
+            if (guess == round.secret) {
+                // Only the guess that moves the round forward wins; a loser of the race is judged against the new secret.
+                GameRoom.Round next = room.rollOver(round);
+                if (next == null) {
+                    continue;
+                }
+                replication.room(room, next);
 
-            
-            generateNewRandomNumber();
+                
+                int refund = trials * 10;
+                score += refund;
+                metrics.trialsRemoved(trials);
+                metrics.roundCompleted();
+                eventLog.log(GameEventLog.EventType.ROUND_WON, clientId, room.getRoomId(), round.number,
+                        refund, score, 0, 0);
+                spectators.roundWon(clientId, room.getRoomId(), round.number, guess, score);
+                spectators.roundStarted(room.getRoomId(), next.number);
+                persist(slot, score, 0);
 
-            
-            String winMessage = "Client " + clientId + " won! A new number has been generated.";
-            notifyAllClients(winMessage);
+                
+                String winMessage = "Client " + clientId + " won! A new number has been generated.";
+                notifyRoom(room, winMessage);
+
+                return new GuessResult(GuessResult.Status.CORRECT, GuessResult.MessageCode.WON,
+                        refund, score, 0, room.getRoomId(), players.version(slot));
+            }
 
-            return new GuessResult(GuessResult.Status.CORRECT, refund, clientInfo.score, 0,
-                    "Bravoooooo hahaha! You've won! Points refunded: " + refund);
+            GuessResult result = scoreGuess(slot, room, guess, round.secret, score, trials);
+            eventLog.log(GameEventLog.EventType.GUESS, clientId, room.getRoomId(), round.number,
+                    guess, result.getStatus().ordinal(), result.getScoreChange(), result.getCurrentScore());
+            spectators.guess(clientId, room.getRoomId(), round.number, guess, result);
+            return result;
         }
+    }
 
-        
-        int difference = Math.abs(guess - randomNumber);
-        int scoreChange = 0;
-        String message;
-        GuessResult.Status status;
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<GuessResult> makeGuesses(long sessionToken, int[] guesses) throws RemoteException {
+        int slot = lookup(sessionToken);
+        CommandEngine engine = this.engine;
+        if (engine == null) {
+            synchronized (lockOf(slot)) {
+                return makeGuesses(slot, sessionToken, guesses);
+            }
+        }
+        return (List<GuessResult>) submit(engine, PlayerCommand.Kind.GUESSES, slot, sessionToken, 0, guesses);
+    }
 
-        if (guess < randomNumber) {
-            status = GuessResult.Status.TOO_SMALL;
-            message = "Too small! ";
-        } else {
-            status = GuessResult.Status.TOO_BIG;
-            message = "Too big! ";
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<GuessResult> buyTrialsAndGuess(long sessionToken, int numberOfTrials, int[] guesses) throws RemoteException {
+        int slot = lookup(sessionToken);
+        CommandEngine engine = this.engine;
+        if (engine == null) {
+            synchronized (lockOf(slot)) {
+                return buyTrialsAndGuess(slot, sessionToken, numberOfTrials, guesses);
+            }
+        }
+        return (List<GuessResult>) submit(engine, PlayerCommand.Kind.BUY_TRIALS_AND_GUESS, slot, sessionToken,
+                numberOfTrials, guesses);
+    }
+
+    private List<GuessResult> buyTrialsAndGuess(int slot, long sessionToken, int numberOfTrials, int[] guesses)
+            throws RemoteException {
+        buyTrials(slot, sessionToken, numberOfTrials);
+        return makeGuesses(slot, sessionToken, guesses);
+    }
+
+    // The body of a call that needs the player to itself; see withPlayer.
+    private interface PlayerAction<T> {
+        T apply() throws RemoteException;
+    }
+
+    // Single-writer mode: work on one player, handed to the writer that owns it. A writer that no
+    // longer owns the player, because it moved to a room in another partition meanwhile, sends the
+    // caller on to the new owner. Run on the caller after the engine has closed, it takes the lock.
+    private abstract class OwnedCommand extends CommandEngine.Command {
+        int slot;
+
+        abstract Object apply() throws RemoteException;
+
+        @Override
+        final Object run(int writer) throws RemoteException {
+            if (writer == CommandEngine.NO_WRITER) {
+                synchronized (lockOf(slot)) {
+                    return apply();
+                }
+            }
+            return players.partition(slot) == writer ? apply() : MOVED;
+        }
+    }
+
+    private final class PlayerTask<T> extends OwnedCommand {
+        private final PlayerAction<T> action;
+
+        PlayerTask(PlayerAction<T> action) {
+            this.action = action;
+        }
+
+        @Override
+        Object apply() throws RemoteException {
+            return action.apply();
+        }
+    }
+
+    // A guess or purchase. Each calling thread reuses its own command, since it waits for the writer
+    // before issuing another.
+    private final class PlayerCommand extends OwnedCommand {
+        enum Kind {
+            BUY_TRIALS, GUESS, GUESSES, BUY_TRIALS_AND_GUESS
+        }
+
+        Kind kind;
+        long sessionToken;
+        int value;
+        int[] guesses;
+
+        @Override
+        Object apply() throws RemoteException {
+            switch (kind) {
+                case BUY_TRIALS:
+                    return buyTrials(slot, sessionToken, value);
+                case GUESS:
+                    return makeGuess(slot, sessionToken, value);
+                case GUESSES:
+                    return makeGuesses(slot, sessionToken, guesses);
+                default:
+                    return buyTrialsAndGuess(slot, sessionToken, value, guesses);
+            }
+        }
+    }
+
+    private Object submit(CommandEngine engine, PlayerCommand.Kind kind, int slot, long sessionToken, int value,
+                          int[] guesses) throws RemoteException {
+        PlayerCommand command = commands.get();
+        command.kind = kind;
+        command.slot = slot;
+        command.sessionToken = sessionToken;
+        command.value = value;
+        command.guesses = guesses;
+        try {
+            return submit(engine, command);
+        } finally {
+            if (command.isDone()) {
+                command.guesses = null;
+            } else {
+                // Timed out and still owned by the writer.
+                commands.remove();
+            }
         }
+    }
+
+    // A player moves between partitions only on its owner, so a command routed by a stale partition
+    // comes back MOVED at most once per move and is sent again.
+    private Object submit(CommandEngine engine, OwnedCommand command) throws RemoteException {
+        while (true) {
+            Object result = engine.execute(players.partition(command.slot), command);
+            if (result != MOVED) {
+                return result;
+            }
+        }
+    }
+
+    private List<GuessResult> makeGuesses(int slot, long sessionToken, int[] guesses) throws RemoteException {
+        if (guesses == null) {
+            throw new RemoteException("Guesses are required");
+        }
+
+        List<GuessResult> results = new ArrayList<>(guesses.length);
+
+        for (int guess : guesses) {
+            GuessResult result = makeGuess(slot, sessionToken, guess);
+            results.add(result);
+
+            if (result.getStatus() == GuessResult.Status.CORRECT || result.getStatus() == GuessResult.Status.ERROR) {
+                break;
+            }
+        }
+
+        return results;
+    }
+
+    // score and trials are the player's after the guess was paid for.
+    private GuessResult scoreGuess(int slot, GameRoom room, int guess, int randomNumber, int score, int trials) {
+        int difference = Math.abs(guess - randomNumber);
+        int scoreChange;
+        GuessResult.MessageCode messageCode;
+        GuessResult.Status status = guess < randomNumber ? GuessResult.Status.TOO_SMALL : GuessResult.Status.TOO_BIG;
 
         
         if (difference <= 5) {
             scoreChange = 20;
-            message += "Very close!";
+            messageCode = GuessResult.MessageCode.VERY_CLOSE;
         } else if (difference <= 20) {
             scoreChange = 10;
-            message += "Getting closer!";
+            messageCode = GuessResult.MessageCode.GETTING_CLOSER;
         } else {
             scoreChange = -10;
-            message += "Far off!";
+            messageCode = GuessResult.MessageCode.FAR_OFF;
         }
 
         
-        clientInfo.score += scoreChange;
+        persist(slot, score + scoreChange, trials);
 
-        return new GuessResult(status, scoreChange, clientInfo.score, clientInfo.trials, message);
+        return new GuessResult(status, messageCode, scoreChange, score + scoreChange, trials, room.getRoomId(),
+                players.version(slot));
     }
 
     @Override
     public int getScore(ClientCallbackInterface client) throws RemoteException {
-        String clientId = client.getClientId();
-        ClientInfo clientInfo = clients.get(clientId);
+        return getScore(sessionOf(client));
+    }
 
-        if (clientInfo == null) {
-            throw new RemoteException("Client not registered");
+    @Override
+    public int getScore(long sessionToken) throws RemoteException {
+        return scoreOf(lookup(sessionToken), sessionToken);
+    }
+
+    @Override
+    public PlayerState getState(long sessionToken, long sinceVersion) throws RemoteException {
+        PlayerState state = stateOf(lookup(sessionToken), sessionToken);
+        return state.getVersion() == sinceVersion ? PlayerState.notModified(sinceVersion) : state;
+    }
+
+    // The player's latest state, read without having it to itself.
+    private PlayerState stateOf(int slot, long sessionToken) throws RemoteException {
+        PlayerState state;
+        while ((state = players.state(slot, sessionToken)) == null) {
+            checkAttached(slot, sessionToken);
         }
+        return state;
+    }
 
-        return clientInfo.score;
+    private int scoreOf(int slot, long sessionToken) throws RemoteException {
+        return stateOf(slot, sessionToken).getScore();
     }
 
-    private void notifyAllClients(String message) {
-        for (Map.Entry<String, ClientInfo> entry : clients.entrySet()) {
-            try {
-                entry.getValue().clientCallback.notifyNumberReset(message);
-            } catch (RemoteException e) {
-                System.err.println("Failed to notify client " + entry.getKey() + ": " + e.getMessage());
-            }
+    @Override
+    public List<LeaderboardEntry> getLeaderboard(int k) throws RemoteException {
+        if (k <= 0) {
+            throw new RemoteException("Leaderboard size must be positive");
+        }
+        return leaderboard.top(Math.min(k, MAX_LEADERBOARD_SIZE));
+    }
+
+    @Override
+    public int getRank(long sessionToken) throws RemoteException {
+        return leaderboard.rankOf(scoreOf(lookup(sessionToken), sessionToken));
+    }
+
+    public GameMetrics getMetrics() {
+        return metrics;
+    }
+
+    private void notifyRoom(GameRoom room, String message) {
+        for (int member : room.members()) {
+            notificationDispatcher.send(member, message);
         }
     }
 
     public static void main(String[] args) {
         try {
             
-            GameServer server = new GameServer();
+            System.setProperty("sun.rmi.transport.tcp.responseTimeout",
+                    String.valueOf(NotificationDispatcher.DEFAULT_TIMEOUT_MILLIS * 2));
+
+            
+            GameEventLog eventLog = GameEventLog.fromSystemProperties();
+            PlayerJournal journal = PlayerJournal.fromSystemProperties();
+            // The journal closes first, so a failure in its last commit still reaches the log.
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                journal.close();
+                eventLog.close();
+            }));
+            // Capturing a trace needs seeded secrets, so the replay meets the same numbers.
+            String traceFile = System.getProperty("game.trace.file");
+            boolean seeded = traceFile != null || System.getProperty("game.random.seed") != null;
+            long seed = Long.getLong("game.random.seed", new SecureRandom().nextLong());
+            GameServer server = new GameServer(eventLog, journal,
+                    seeded ? SecretSource.seeded(seed) : SecretSource.unpredictable());
+            long leaseMillis = Long.getLong("game.lease.seconds", DEFAULT_LEASE_MILLIS / 1000) * 1000;
+            server.startLeaseSweeper(leaseMillis);
+            // -Dgame.engine=single-writer hands guesses and purchases to one writer thread per room partition.
+            if ("single-writer".equals(System.getProperty("game.engine"))) {
+                server.startCommandEngine(Integer.getInteger("game.engine.ringCapacity", CommandEngine.DEFAULT_RING_CAPACITY),
+                        Long.getLong("game.engine.timeoutMillis", CommandEngine.DEFAULT_TIMEOUT_MILLIS));
+                System.out.println("Single-writer engine on " + server.rooms.partitionCount() + " partitions");
+            }
 
             
-            GameInterface stub = (GameInterface) UnicastRemoteObject.exportObject(server, 0);
+            long recoveryStart = System.nanoTime();
+            long recoveredRecords = server.recover();
+            System.out.println("Recovered " + recoveredRecords + " player records in " +
+                    (System.nanoTime() - recoveryStart) / 1_000_000 + " ms");
 
             
-            Registry registry = LocateRegistry.createRegistry(1099);
-            registry.rebind("GuessingGame", stub);
+            GameInterface game = server;
+            if (traceFile != null) {
+                TraceRecorder recorder = TraceRecorder.open(server, Paths.get(traceFile), seed, leaseMillis, eventLog);
+                Runtime.getRuntime().addShutdownHook(new Thread(recorder::close));
+                game = recorder.proxy();
+                // The seed determines every secret, so it is kept in the trace header and never printed.
+                System.out.println("Capturing calls to " + traceFile);
+            }
+            AdmissionControl admission = AdmissionControl.fromSystemProperties(game);
+            GameInterface instrumented = InstrumentedGame.wrap(admission.proxy(), server.getMetrics());
+            GameInterface stub = (GameInterface) UnicastRemoteObject.exportObject(instrumented, 0);
+
+            
+            ManagementFactory.getPlatformMBeanServer().registerMBean(server.getMetrics(),
+                    new ObjectName(GameMetrics.OBJECT_NAME));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(admission,
+                    new ObjectName(AdmissionControl.OBJECT_NAME));
+            ReplicationLog replication = ReplicationLog.fromSystemProperties();
+            server.replicateTo(replication);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(replication,
+                    new ObjectName(ReplicationLog.OBJECT_NAME));
+            SpectatorFeed spectators = SpectatorFeed.fromSystemProperties();
+            server.broadcastTo(spectators);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(spectators,
+                    new ObjectName(SpectatorFeed.OBJECT_NAME));
+
+            int rmiPort = Integer.getInteger("game.rmi.port", 1099);
+            int binaryPort = Integer.getInteger("game.binary.port", 1100);
+
+            // Hot standby: -Dgame.standby.of=host:port of the primary's registry. Nothing is bound until
+            // the primary fails; on the same machine the standby then takes over the primary's ports, so
+            // give it the same game.rmi.port and game.binary.port but its own game.data.dir.
+            String primaryAddress = System.getProperty("game.standby.of");
+            if (primaryAddress != null) {
+                HotStandby standby = new HotStandby(server, primaryAddress,
+                        Long.getLong("game.standby.failoverMillis", HotStandby.DEFAULT_FAILOVER_MILLIS), eventLog,
+                        () -> publish(stub, instrumented, replication, spectators, rmiPort, binaryPort));
+                standby.start();
+                System.out.println("Standing by for the primary at " + primaryAddress);
+                return;
+            }
+            Registry registry = publish(stub, instrumented, replication, spectators, rmiPort, binaryPort);
+
+            // Cluster mode: -Dgame.cluster.directory=host:port, with a distinct game.rmi.port,
+            // game.binary.port and game.data.dir for each node on the same machine.
+            String directoryAddress = System.getProperty("game.cluster.directory");
+            if (directoryAddress != null) {
+                String host = System.getProperty("game.cluster.host", "localhost");
+                NodeAddress self = new NodeAddress(System.getProperty("game.cluster.nodeId", "node-" + rmiPort),
+                        host, rmiPort);
+                ClusterNode cluster = new ClusterNode(server, ClusterNode.locateDirectory(directoryAddress), self, eventLog);
+                registry.rebind(ClusterNode.PEER_BINDING, UnicastRemoteObject.exportObject(cluster, 0));
+                cluster.start(Long.getLong("game.cluster.heartbeatMillis", ClusterNode.DEFAULT_HEARTBEAT_MILLIS));
+                Runtime.getRuntime().addShutdownHook(new Thread(cluster::leave));
+                System.out.println("Joined cluster at " + directoryAddress + " as " + self);
+            }
 
             System.out.println("Game server is running...");
         } catch (Exception e) {
@@ -183,4 +1094,31 @@ public class GameServer implements GameInterface {
             e.printStackTrace();
         }
     }
+
+    // Makes the game reachable over RMI, to a standby's pulls and spectators, and over the binary protocol.
+    private static Registry publish(GameInterface stub, GameInterface instrumented, ReplicationLog replication,
+                                    SpectatorFeed spectators, int rmiPort, int binaryPort) throws Exception {
+        Registry registry = LocateRegistry.createRegistry(rmiPort);
+        registry.rebind("GuessingGame", stub);
+        if (replication.isEnabled()) {
+            registry.rebind(ReplicationLog.BINDING, UnicastRemoteObject.exportObject(replication, 0));
+        }
+        if (spectators.isEnabled()) {
+            registry.rebind(SpectatorFeed.BINDING, UnicastRemoteObject.exportObject(spectators, 0));
+        }
+
+        if (binaryPort > 0) {
+            try {
+                int loops = Runtime.getRuntime().availableProcessors();
+                BinaryProtocolServer binaryServer = new BinaryProtocolServer(instrumented, binaryPort, loops,
+                        Integer.getInteger("game.binary.workers", loops * BinaryProtocolServer.WORKERS_PER_LOOP));
+                binaryServer.start();
+                Runtime.getRuntime().addShutdownHook(new Thread(binaryServer::close));
+                System.out.println("Binary protocol listening on port " + binaryServer.getPort());
+            } catch (IOException e) {
+                System.err.println("Binary protocol not started: " + e);
+            }
+        }
+        return registry;
+    }
 }
\ No newline at end of file
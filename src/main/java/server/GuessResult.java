@@ -1,32 +1,63 @@
 package server;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 
-public class GuessResult implements Serializable {
-    private static final long serialVersionUID = 1L;
+// Sent as one byte for status and message code followed by varints; the text shown to the player
+// is rendered from the code on the receiving side instead of being built and shipped by the server.
+// stateVersion is the player's state version once the guess was applied, for getState.
+// A REJECTED result means admission control turned the guess away unjudged; it carries no player
+// state, so callers should keep the score and trials they already have.
+public class GuessResult implements Externalizable {
+    private static final long serialVersionUID = 3L;
 
     public enum Status {
-        TOO_SMALL, TOO_BIG, CORRECT, ERROR
+        TOO_SMALL, TOO_BIG, CORRECT, ERROR, REJECTED
     }
 
+    public enum MessageCode {
+        VERY_CLOSE, GETTING_CLOSER, FAR_OFF, WON, NO_TRIALS, RATE_LIMITED, OVERLOADED
+    }
+
+    private static final Status[] STATUSES = Status.values();
+    private static final MessageCode[] MESSAGE_CODES = MessageCode.values();
+
     private Status status;
+    private MessageCode messageCode;
     private int scoreChange;
     private int currentScore;
     private int remainingTrials;
-    private String message;
+    private int roomId;
+    private long stateVersion;
+
+    public GuessResult() {
+    }
 
-    public GuessResult(Status status, int scoreChange, int currentScore, int remainingTrials, String message) {
+    public GuessResult(Status status, MessageCode messageCode, int scoreChange, int currentScore, int remainingTrials, int roomId) {
+        this(status, messageCode, scoreChange, currentScore, remainingTrials, roomId, 0);
+    }
+
+    public GuessResult(Status status, MessageCode messageCode, int scoreChange, int currentScore, int remainingTrials,
+                       int roomId, long stateVersion) {
         this.status = status;
+        this.messageCode = messageCode;
         this.scoreChange = scoreChange;
         this.currentScore = currentScore;
         this.remainingTrials = remainingTrials;
-        this.message = message;
+        this.roomId = roomId;
+        this.stateVersion = stateVersion;
     }
 
     public Status getStatus() {
         return status;
     }
 
+    public MessageCode getMessageCode() {
+        return messageCode;
+    }
+
     public int getScoreChange() {
         return scoreChange;
     }
@@ -39,7 +70,66 @@ public class GuessResult implements Serializable {
         return remainingTrials;
     }
 
+    public int getRoomId() {
+        return roomId;
+    }
+
+    public long getStateVersion() {
+        return stateVersion;
+    }
+
     public String getMessage() {
-        return message;
+        switch (messageCode) {
+            case WON:
+                return "Bravoooooo hahaha! You've won! Points refunded: " + scoreChange;
+            case NO_TRIALS:
+                return "No trials left. Please buy more trials.";
+            case RATE_LIMITED:
+                return "Too many guesses. Please slow down.";
+            case OVERLOADED:
+                return "The server is busy. Please try again.";
+            default:
+                break;
+        }
+
+        String direction = status == Status.TOO_SMALL ? "Too small! " : "Too big! ";
+        switch (messageCode) {
+            case VERY_CLOSE:
+                return direction + "Very close!";
+            case GETTING_CLOSER:
+                return direction + "Getting closer!";
+            default:
+                return direction + "Far off!";
+        }
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeByte(status.ordinal() | messageCode.ordinal() << 3);
+        WireFormat.writeSignedVarInt(out, scoreChange);
+        WireFormat.writeSignedVarInt(out, currentScore);
+        WireFormat.writeVarInt(out, remainingTrials);
+        WireFormat.writeVarInt(out, roomId);
+        WireFormat.writeVarLong(out, stateVersion);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        int header = in.readUnsignedByte();
+        int code = header >>> 3;
+        if (code >= MESSAGE_CODES.length) {
+            throw new IOException("Unknown message code " + code);
+        }
+        int statusIndex = header & 0x7;
+        if (statusIndex >= STATUSES.length) {
+            throw new IOException("Unknown status " + statusIndex);
+        }
+        status = STATUSES[statusIndex];
+        messageCode = MESSAGE_CODES[code];
+        scoreChange = WireFormat.readSignedVarInt(in);
+        currentScore = WireFormat.readSignedVarInt(in);
+        remainingTrials = WireFormat.readVarInt(in);
+        roomId = WireFormat.readVarInt(in);
+        stateVersion = WireFormat.readVarLong(in);
     }
-}
\ No newline at end of file
+}
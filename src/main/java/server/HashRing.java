@@ -0,0 +1,73 @@
+package server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+// Consistent hashing over the cluster's nodes. Each node sits at VIRTUAL_NODES points on a 64-bit
+// ring and owns the keys hashing up to each point, so adding or removing a node only moves the keys
+// on its own arcs (about 1/n of them) and spreads them over the others. Players in the lobby are
+// placed by client id and rooms by room id; both are looked up with a binary search.
+public final class HashRing {
+    static final int VIRTUAL_NODES = 128;
+
+    private final long[] points;
+    private final NodeAddress[] owners;
+
+    public HashRing(Collection<NodeAddress> nodes) {
+        NodeAddress[] sorted = nodes.toArray(new NodeAddress[0]);
+        Arrays.sort(sorted, (a, b) -> a.getNodeId().compareTo(b.getNodeId()));
+        long[][] entries = new long[sorted.length * VIRTUAL_NODES][];
+        for (int n = 0; n < sorted.length; n++) {
+            long base = hash(sorted[n].getNodeId());
+            for (int v = 0; v < VIRTUAL_NODES; v++) {
+                entries[n * VIRTUAL_NODES + v] = new long[]{mix(base + v * 0x9E3779B97F4A7C15L), n};
+            }
+        }
+        Arrays.sort(entries, (a, b) -> Long.compare(a[0], b[0]));
+        points = new long[entries.length];
+        owners = new NodeAddress[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            points[i] = entries[i][0];
+            owners[i] = sorted[(int) entries[i][1]];
+        }
+    }
+
+    public boolean isEmpty() {
+        return points.length == 0;
+    }
+
+    public NodeAddress ownerOfPlayer(String clientId) {
+        return ownerOf(hash(clientId));
+    }
+
+    public NodeAddress ownerOfRoom(int roomId) {
+        return ownerOf(mix(roomId));
+    }
+
+    private NodeAddress ownerOf(long hash) {
+        if (points.length == 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(points, hash);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    // FNV-1a over the UTF-8 bytes, finished with a mix so nearby ids land far apart.
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+        value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+}
@@ -0,0 +1,120 @@
+package server;
+
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// A GameServer kept warm by pulling the primary's replication stream, with nothing bound until the
+// primary is gone. Every replicated player is parked under its session token and room, so after the
+// takeover a client resumes with the same token exactly as it would after a lease expiry. The primary
+// answers a pull at least every poll interval, so silence for the failover timeout means it is dead
+// or hung; a watchdog then runs the takeover, which binds the game in its place.
+final class HotStandby {
+    static final long DEFAULT_FAILOVER_MILLIS = 500;
+    private static final long RETRY_MILLIS = 20;
+
+    interface TakeOver {
+        void run() throws Exception;
+    }
+
+    private final GameServer server;
+    private final String primaryHost;
+    private final int primaryPort;
+    private final long failoverNanos;
+    private final long pollMillis;
+    private final TakeOver takeOver;
+    private final GameEventLog eventLog;
+    private final ScheduledExecutorService watchdog;
+    private ReplicationSource primary;
+    private long streamId;
+    private long appliedSequence;
+    private volatile long lastContactNanos;
+    private boolean promoted;
+
+    HotStandby(GameServer server, String primaryAddress, long failoverMillis, GameEventLog eventLog, TakeOver takeOver) {
+        int colon = primaryAddress.lastIndexOf(':');
+        this.primaryHost = colon < 0 ? primaryAddress : primaryAddress.substring(0, colon);
+        this.primaryPort = colon < 0 ? 1099 : Integer.parseInt(primaryAddress.substring(colon + 1));
+        this.server = server;
+        this.failoverNanos = TimeUnit.MILLISECONDS.toNanos(failoverMillis);
+        this.pollMillis = Math.max(10, failoverMillis / 5);
+        this.takeOver = takeOver;
+        this.eventLog = eventLog;
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "standby-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    void start() {
+        Thread puller = new Thread(this::pullLoop, "standby-replication");
+        puller.setDaemon(true);
+        puller.start();
+        watchdog.scheduleWithFixedDelay(this::checkPrimary, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void pullLoop() {
+        while (!isPromoted()) {
+            try {
+                if (primary == null) {
+                    primary = (ReplicationSource) LocateRegistry.getRegistry(primaryHost, primaryPort).lookup(ReplicationLog.BINDING);
+                }
+                ReplicationBatch batch = primary.pull(streamId, appliedSequence, pollMillis);
+                lastContactNanos = System.nanoTime();
+                apply(batch);
+            } catch (RemoteException | NotBoundException e) {
+                primary = null;
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(RETRY_MILLIS));
+            }
+        }
+    }
+
+    private synchronized void apply(ReplicationBatch batch) {
+        if (promoted || (batch.getSequence() == appliedSequence && !batch.isSnapshot())) {
+            return;
+        }
+        server.applyReplica(batch);
+        if (batch.isSnapshot()) {
+            eventLog.log(GameEventLog.EventType.STANDBY_SNAPSHOT_LOADED, null, RoomTable.LOBBY_ID, 0, batch.size(), 0, 0, 0,
+                    "sequence " + batch.getSequence());
+        }
+        streamId = batch.getStreamId();
+        appliedSequence = batch.getSequence();
+    }
+
+    // Before the first contact there is nothing to take over with, so the standby keeps waiting.
+    private void checkPrimary() {
+        long silentNanos = System.nanoTime() - lastContactNanos;
+        synchronized (this) {
+            if (promoted || streamId == 0 || silentNanos < failoverNanos) {
+                return;
+            }
+            promoted = true;
+        }
+        eventLog.log(GameEventLog.EventType.PRIMARY_SILENT, null, RoomTable.LOBBY_ID, 0,
+                (int) TimeUnit.NANOSECONDS.toMillis(silentNanos), 0, 0, 0, "taking over at sequence " + appliedSequence);
+        while (true) {
+            try {
+                takeOver.run();
+                break;
+            } catch (Exception e) {
+                // Most likely the primary's registry port is not free yet.
+                eventLog.log(GameEventLog.EventType.TAKEOVER_FAILED, null, RoomTable.LOBBY_ID, 0, 0, 0, 0, 0, e);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(RETRY_MILLIS * 5));
+            }
+        }
+        // Measured from the last contact with the primary.
+        eventLog.log(GameEventLog.EventType.TOOK_OVER, null, RoomTable.LOBBY_ID, 0,
+                (int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastContactNanos), 0, 0, 0);
+        watchdog.shutdown();
+    }
+
+    private synchronized boolean isPromoted() {
+        return promoted;
+    }
+}
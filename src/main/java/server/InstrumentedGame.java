@@ -0,0 +1,59 @@
+package server;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+// Wraps a GameInterface so every remote method records its calls, errors and latency. The proxy
+// implements the same remote interface, so it can be exported in place of the server itself.
+final class InstrumentedGame implements InvocationHandler {
+    private final GameInterface target;
+    private final Map<Method, GameMetrics.CallMetrics> metricsByMethod = new HashMap<>();
+
+    private InstrumentedGame(GameInterface target, GameMetrics metrics) {
+        this.target = target;
+        for (Method method : GameInterface.class.getMethods()) {
+            metricsByMethod.put(method, metrics.method(signature(method)));
+        }
+    }
+
+    static GameInterface wrap(GameInterface target, GameMetrics metrics) {
+        return (GameInterface) Proxy.newProxyInstance(GameInterface.class.getClassLoader(),
+                new Class<?>[]{GameInterface.class}, new InstrumentedGame(target, metrics));
+    }
+
+    static String signature(Method method) {
+        StringBuilder signature = new StringBuilder(method.getName()).append('(');
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) {
+                signature.append(',');
+            }
+            signature.append(parameterTypes[i].getSimpleName());
+        }
+        return signature.append(')').toString();
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        GameMetrics.CallMetrics callMetrics = metricsByMethod.get(method);
+        if (callMetrics == null) {
+            return method.invoke(target, args);
+        }
+
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Object result = method.invoke(target, args);
+            failed = false;
+            return result;
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        } finally {
+            callMetrics.record(System.nanoTime() - start, failed);
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package server;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
+
+// Score index maintained on every score change, keyed by PlayerStore slot. Players are bucketed by
+// score, and a Fenwick tree over the bucket sizes answers both queries in O(log range): a rank is
+// the number of players in higher buckets, and the top k walks down the non-empty buckets, skipping
+// empty ones with one tree descent each, so a read costs O(k log range) no matter how many players
+// there are. Scores outside [MIN_SCORE, MAX_SCORE] share the edge buckets, whose members are
+// compared by their exact scores.
+//
+// A bucket's members are a list threaded through per-slot arrays, so a player on the board costs a
+// few ints and no objects. Buckets share a fixed set of locks; a slot's entry is changed only by
+// whoever has its player to itself, or under its PlayerStore segment's lock while it is offline.
+// Client ids are looked up by slot only for the entries a read returns, after it has let go of the
+// buckets; a slot that was removed meanwhile has a new generation, and the read is done again.
+//
+// Every tree update passes through the few top nodes, so the tree is not updated on the request
+// path. An update is two bucket list changes and two bucket changes appended to the buffer of the
+// calling thread's stripe; the buffers are applied under treeLock, by a read before it answers or
+// by a writer whose stripe has filled up. Writers in different rooms then share no counter, and a
+// read sees every update that finished before it started.
+final class Leaderboard {
+    static final int MIN_SCORE = -(1 << 16);
+    static final int MAX_SCORE = (1 << 20) - 1;
+    private static final int BUCKETS = MAX_SCORE - MIN_SCORE + 1;
+    private static final int TOP_BIT = Integer.highestOneBit(BUCKETS);
+    private static final int STRIPE_CAPACITY = 1024;
+    private static final int BUCKET_LOCKS = 1024;
+    private static final int PAGE_SHIFT = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    // A slot's bucket while it is not on the board, and the end of a bucket's list.
+    private static final int NONE = -1;
+    private static final int READ_ATTEMPTS = 3;
+
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    // Bucket changes not yet in the tree, each encoded as bucket << 1 | 1 for a join and bucket << 1 for a leave.
+    private static final class Stripe {
+        int[] changes = new int[STRIPE_CAPACITY];
+        int size;
+        // Guarded by treeLock: the array the next apply swaps in.
+        int[] spare = new int[STRIPE_CAPACITY];
+    }
+
+    // PAGE_SIZE slots' entries. Bucket, score and links are guarded by the lock of the bucket the
+    // slot is in; generation counts the slot's removals.
+    private static final class Page {
+        final int[] buckets = new int[PAGE_SIZE];
+        final int[] scores = new int[PAGE_SIZE];
+        final int[] next = new int[PAGE_SIZE];
+        final int[] previous = new int[PAGE_SIZE];
+        final int[] generations = new int[PAGE_SIZE];
+
+        Page() {
+            Arrays.fill(buckets, NONE);
+        }
+    }
+
+    // A member found by a read, named once the read has let go of the buckets.
+    private static final class Member {
+        final int slot;
+        final int score;
+        final int generation;
+
+        Member(int slot, int score, int generation) {
+            this.slot = slot;
+            this.score = score;
+            this.generation = generation;
+        }
+    }
+
+    private final IntFunction<String> clientIds;
+    private volatile Page[] pages = new Page[0];
+    // The first slot of each bucket's list.
+    private final int[] heads = new int[BUCKETS];
+    private final Object[] bucketLocks = new Object[BUCKET_LOCKS];
+    private final AtomicInteger size = new AtomicInteger();
+    private final Stripe[] stripes;
+    private final ReentrantLock treeLock = new ReentrantLock();
+    // Guarded by treeLock.
+    private final int[] counts = new int[BUCKETS + 1];
+
+    // clientIds names a slot, or gives null once the slot is free.
+    Leaderboard(IntFunction<String> clientIds) {
+        this(clientIds, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    Leaderboard(IntFunction<String> clientIds, int stripeCount) {
+        this.clientIds = clientIds;
+        this.stripes = new Stripe[Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+        for (int i = 0; i < bucketLocks.length; i++) {
+            bucketLocks[i] = new Object();
+        }
+        Arrays.fill(heads, NONE);
+    }
+
+    void update(int slot, int score) {
+        Page page = page(slot);
+        int i = slot & PAGE_MASK;
+        int previous = page.buckets[i];
+        int bucket = bucketOf(score);
+        if (previous == bucket) {
+            if (isEdge(bucket)) {
+                synchronized (lockOf(bucket)) {
+                    page.scores[i] = score;
+                }
+            }
+            return;
+        }
+        if (previous != NONE) {
+            synchronized (lockOf(previous)) {
+                unlink(page, i, previous);
+            }
+            add(previous, -1);
+        } else {
+            size.incrementAndGet();
+        }
+        synchronized (lockOf(bucket)) {
+            page.scores[i] = score;
+            page.buckets[i] = bucket;
+            page.previous[i] = NONE;
+            page.next[i] = heads[bucket];
+            if (heads[bucket] != NONE) {
+                pageOf(heads[bucket]).previous[heads[bucket] & PAGE_MASK] = slot;
+            }
+            heads[bucket] = slot;
+        }
+        add(bucket, 1);
+    }
+
+    // Called before the slot is freed, so a read never names the slot's next player with this one's score.
+    void remove(int slot) {
+        Page page = pageOf(slot);
+        if (page == null) {
+            return;
+        }
+        int i = slot & PAGE_MASK;
+        int previous = page.buckets[i];
+        if (previous == NONE) {
+            return;
+        }
+        synchronized (lockOf(previous)) {
+            unlink(page, i, previous);
+            INTS.setRelease(page.generations, i, page.generations[i] + 1);
+        }
+        add(previous, -1);
+        size.decrementAndGet();
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    List<LeaderboardEntry> top(int k) {
+        for (int attempt = 1; ; attempt++) {
+            List<Member> members;
+            treeLock.lock();
+            try {
+                applyAll();
+                members = topApplied(k);
+            } finally {
+                treeLock.unlock();
+            }
+            List<LeaderboardEntry> entries = new ArrayList<>(members.size());
+            boolean stale = false;
+            for (Member member : members) {
+                String clientId = clientIds.apply(member.slot);
+                // Read after the id, which is stored after a removal moved the generation on.
+                if (clientId == null || (int) INTS.getAcquire(pageOf(member.slot).generations,
+                        member.slot & PAGE_MASK) != member.generation) {
+                    stale = true;
+                    continue;
+                }
+                boolean tied = !entries.isEmpty() && entries.get(entries.size() - 1).getScore() == member.score;
+                int rank = tied ? entries.get(entries.size() - 1).getRank() : entries.size() + 1;
+                entries.add(new LeaderboardEntry(rank, clientId, member.score));
+            }
+            if (!stale || attempt == READ_ATTEMPTS) {
+                return entries;
+            }
+        }
+    }
+
+    private List<Member> topApplied(int k) {
+        List<Member> entries = new ArrayList<>(Math.min(k, 64));
+        int ahead = prefix(BUCKETS - 1);
+        while (ahead > 0 && entries.size() < k) {
+            int bucket = firstBucketReaching(ahead);
+            if (bucket >= BUCKETS) {
+                break;
+            }
+            List<Member> members = membersOf(bucket, k - entries.size());
+            for (int i = 0; i < members.size() && entries.size() < k; i++) {
+                entries.add(members.get(i));
+            }
+            ahead = bucket == 0 ? 0 : prefix(bucket - 1);
+        }
+        return entries;
+    }
+
+    // 1 + the number of players with a strictly higher score.
+    int rankOf(int score) {
+        treeLock.lock();
+        try {
+            applyAll();
+            return rankApplied(score);
+        } finally {
+            treeLock.unlock();
+        }
+    }
+
+    private int rankApplied(int score) {
+        int bucket = bucketOf(score);
+        int ahead = prefix(BUCKETS - 1) - prefix(bucket);
+        if (isEdge(bucket)) {
+            synchronized (lockOf(bucket)) {
+                for (int slot = heads[bucket]; slot != NONE; slot = pageOf(slot).next[slot & PAGE_MASK]) {
+                    if (pageOf(slot).scores[slot & PAGE_MASK] > score) {
+                        ahead++;
+                    }
+                }
+            }
+        }
+        return ahead + 1;
+    }
+
+    // Up to limit members of one bucket. An edge bucket is read whole so its members can be ordered
+    // by exact score.
+    private List<Member> membersOf(int bucket, int limit) {
+        List<Member> members = new ArrayList<>();
+        boolean edge = isEdge(bucket);
+        synchronized (lockOf(bucket)) {
+            for (int slot = heads[bucket]; slot != NONE && (edge || members.size() < limit); ) {
+                Page page = pageOf(slot);
+                int i = slot & PAGE_MASK;
+                members.add(new Member(slot, page.scores[i], page.generations[i]));
+                slot = page.next[i];
+            }
+        }
+        if (edge) {
+            members.sort(Comparator.comparingInt((Member member) -> member.score).reversed());
+        }
+        return members;
+    }
+
+    // Called under the lock of bucket, the slot's bucket.
+    private void unlink(Page page, int i, int bucket) {
+        int previous = page.previous[i];
+        int next = page.next[i];
+        if (previous == NONE) {
+            heads[bucket] = next;
+        } else {
+            pageOf(previous).next[previous & PAGE_MASK] = next;
+        }
+        if (next != NONE) {
+            pageOf(next).previous[next & PAGE_MASK] = previous;
+        }
+        page.buckets[i] = NONE;
+    }
+
+    private Object lockOf(int bucket) {
+        return bucketLocks[bucket & (BUCKET_LOCKS - 1)];
+    }
+
+    // null for a slot that was never on the board.
+    private Page pageOf(int slot) {
+        Page[] pages = this.pages;
+        int page = slot >>> PAGE_SHIFT;
+        return page < pages.length ? pages[page] : null;
+    }
+
+    private Page page(int slot) {
+        Page page = pageOf(slot);
+        return page != null ? page : addPage(slot >>> PAGE_SHIFT);
+    }
+
+    private synchronized Page addPage(int page) {
+        Page[] pages = this.pages;
+        if (page < pages.length && pages[page] != null) {
+            return pages[page];
+        }
+        Page[] grown = Arrays.copyOf(pages, Math.max(page + 1, pages.length));
+        grown[page] = new Page();
+        this.pages = grown;
+        return grown[page];
+    }
+
+    private static boolean isEdge(int bucket) {
+        return bucket == 0 || bucket == BUCKETS - 1;
+    }
+
+    private static int bucketOf(int score) {
+        return Math.min(Math.max(score, MIN_SCORE), MAX_SCORE) - MIN_SCORE;
+    }
+
+    // Threads are spread over the stripes by id, so a stripe's monitor is rarely contended. A full
+    // stripe is applied by its writer unless a read holds the tree, which applies it anyway.
+    private void add(int bucket, int delta) {
+        Stripe stripe = stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)];
+        boolean full;
+        synchronized (stripe) {
+            if (stripe.size == stripe.changes.length) {
+                stripe.changes = Arrays.copyOf(stripe.changes, stripe.size * 2);
+            }
+            stripe.changes[stripe.size++] = bucket << 1 | (delta > 0 ? 1 : 0);
+            full = stripe.size >= STRIPE_CAPACITY;
+        }
+        if (full && treeLock.tryLock()) {
+            try {
+                apply(stripe);
+            } finally {
+                treeLock.unlock();
+            }
+        }
+    }
+
+    // Called under treeLock.
+    private void applyAll() {
+        for (Stripe stripe : stripes) {
+            apply(stripe);
+        }
+    }
+
+    // Called under treeLock. The stripe's buffer is swapped out first, so its writers wait only for the swap.
+    private void apply(Stripe stripe) {
+        int[] taken;
+        int size;
+        synchronized (stripe) {
+            if (stripe.size == 0) {
+                return;
+            }
+            taken = stripe.changes;
+            size = stripe.size;
+            stripe.changes = stripe.spare;
+            stripe.size = 0;
+        }
+        for (int j = 0; j < size; j++) {
+            int delta = (taken[j] & 1) == 0 ? -1 : 1;
+            for (int i = (taken[j] >>> 1) + 1; i <= BUCKETS; i += i & -i) {
+                counts[i] += delta;
+            }
+        }
+        stripe.spare = taken.length > STRIPE_CAPACITY ? new int[STRIPE_CAPACITY] : taken;
+    }
+
+    // Players in buckets 0..bucket inclusive.
+    private int prefix(int bucket) {
+        int sum = 0;
+        for (int i = bucket + 1; i > 0; i -= i & -i) {
+            sum += counts[i];
+        }
+        return sum;
+    }
+
+    // The lowest bucket whose prefix count is at least target, by descending the tree.
+    private int firstBucketReaching(int target) {
+        int position = 0;
+        int remaining = target;
+        for (int step = TOP_BIT; step > 0; step >>= 1) {
+            int next = position + step;
+            if (next <= BUCKETS) {
+                int count = counts[next];
+                if (count < remaining) {
+                    position = next;
+                    remaining -= count;
+                }
+            }
+        }
+        return position;
+    }
+}
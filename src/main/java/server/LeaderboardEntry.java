@@ -0,0 +1,30 @@
+package server;
+
+import java.io.Serializable;
+
+public class LeaderboardEntry implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int rank;
+    private final String clientId;
+    private final int score;
+
+    public LeaderboardEntry(int rank, String clientId, int score) {
+        this.rank = rank;
+        this.clientId = clientId;
+        this.score = score;
+    }
+
+    // Players with equal scores share a rank, and the next rank skips accordingly (1, 2, 2, 4).
+    public int getRank() {
+        return rank;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public int getScore() {
+        return score;
+    }
+}
@@ -0,0 +1,46 @@
+package server;
+
+import java.io.Serializable;
+
+// Where a cluster node can be reached: its RMI registry, which binds the game and the node's peer
+// endpoint. Nodes are identified by nodeId alone, so a restarted node on a new port is the same node.
+public class NodeAddress implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String nodeId;
+    private final String host;
+    private final int port;
+
+    public NodeAddress(String nodeId, String host, int port) {
+        this.nodeId = nodeId;
+        this.host = host;
+        this.port = port;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof NodeAddress && nodeId.equals(((NodeAddress) other).nodeId);
+    }
+
+    @Override
+    public int hashCode() {
+        return nodeId.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return nodeId + "@" + host + ":" + port;
+    }
+}
@@ -0,0 +1,239 @@
+package server;
+
+import client.ClientCallbackInterface;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Delivers callbacks to clients off the caller's thread. Every client gets its own mailbox with
+// at most one call in flight; a newer message supersedes an undelivered one, and a client whose
+// calls keep failing or timing out stops receiving notifications. Mailboxes sit in a side array
+// indexed by the player's PlayerStore slot.
+class NotificationDispatcher {
+    static final long DEFAULT_TIMEOUT_MILLIS = 2000;
+    static final int DEFAULT_MAX_FAILURES = 3;
+
+    private static final int PAGE_SHIFT = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final VarHandle MAILBOXES = MethodHandles.arrayElementVarHandle(Mailbox[].class);
+
+    // Pages are added, never replaced, so a mailbox is always in the page it was put in.
+    private volatile Mailbox[][] pages = new Mailbox[0][];
+    private final AtomicInteger size = new AtomicInteger();
+    private final ExecutorService deliveryPool;
+    private final long timeoutMillis;
+    private final int maxFailures;
+    private final GameMetrics.CallMetrics callbackMetrics;
+    private final GameEventLog eventLog;
+
+    NotificationDispatcher(GameMetrics.CallMetrics callbackMetrics, GameEventLog eventLog) {
+        this(Math.max(4, Runtime.getRuntime().availableProcessors() * 2),
+                DEFAULT_TIMEOUT_MILLIS, DEFAULT_MAX_FAILURES, callbackMetrics, eventLog);
+    }
+
+    NotificationDispatcher(int threads, long timeoutMillis, int maxFailures,
+                           GameMetrics.CallMetrics callbackMetrics, GameEventLog eventLog) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.deliveryPool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "notification-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timeoutMillis = timeoutMillis;
+        this.maxFailures = maxFailures;
+        this.callbackMetrics = callbackMetrics;
+        this.eventLog = eventLog;
+    }
+
+    void register(int slot, String clientId, ClientCallbackInterface callback) {
+        Mailbox previous = (Mailbox) MAILBOXES.getAndSet(page(slot), slot & (PAGE_SIZE - 1),
+                new Mailbox(slot, clientId, callback));
+        if (previous != null) {
+            previous.close();
+        } else {
+            size.incrementAndGet();
+        }
+    }
+
+    // Only removes the mailbox if it still delivers to callback, so a newer registration survives.
+    void unregister(int slot, ClientCallbackInterface callback) {
+        Mailbox[] page = pageOf(slot);
+        if (page == null) {
+            return;
+        }
+        Mailbox mailbox = (Mailbox) MAILBOXES.getAcquire(page, slot & (PAGE_SIZE - 1));
+        if (mailbox != null && mailbox.callback == callback && remove(page, mailbox)) {
+            mailbox.close();
+        }
+    }
+
+    void broadcast(String message) {
+        for (Mailbox[] page : pages) {
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                Mailbox mailbox = (Mailbox) MAILBOXES.getAcquire(page, i);
+                if (mailbox != null) {
+                    mailbox.offer(message);
+                }
+            }
+        }
+    }
+
+    void send(int slot, String message) {
+        Mailbox[] page = pageOf(slot);
+        Mailbox mailbox = page == null ? null : (Mailbox) MAILBOXES.getAcquire(page, slot & (PAGE_SIZE - 1));
+        if (mailbox != null) {
+            mailbox.offer(message);
+        }
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    void shutdown() {
+        deliveryPool.shutdownNow();
+    }
+
+    private void evict(Mailbox mailbox) {
+        Mailbox[] page = pageOf(mailbox.slot);
+        if (remove(page, mailbox)) {
+            eventLog.log(GameEventLog.EventType.NOTIFY_EVICTED, mailbox.clientId, 0, 0, maxFailures, 0, 0, 0);
+        }
+    }
+
+    private boolean remove(Mailbox[] page, Mailbox mailbox) {
+        if (MAILBOXES.compareAndSet(page, mailbox.slot & (PAGE_SIZE - 1), mailbox, null)) {
+            size.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private Mailbox[] pageOf(int slot) {
+        Mailbox[][] pages = this.pages;
+        int page = slot >>> PAGE_SHIFT;
+        return page < pages.length ? pages[page] : null;
+    }
+
+    private Mailbox[] page(int slot) {
+        Mailbox[] page = pageOf(slot);
+        return page != null ? page : addPage(slot >>> PAGE_SHIFT);
+    }
+
+    private synchronized Mailbox[] addPage(int page) {
+        Mailbox[][] pages = this.pages;
+        if (page < pages.length) {
+            return pages[page];
+        }
+        Mailbox[][] grown = Arrays.copyOf(pages, page + 1);
+        for (int i = pages.length; i < grown.length; i++) {
+            grown[i] = new Mailbox[PAGE_SIZE];
+        }
+        this.pages = grown;
+        return grown[page];
+    }
+
+    private final class Mailbox {
+        final int slot;
+        final String clientId;
+        final ClientCallbackInterface callback;
+        // Only the newest message is still meaningful; older ones describe rounds already gone.
+        private String pending;
+        private boolean inFlight;
+        private boolean closed;
+        private int consecutiveFailures;
+
+        Mailbox(int slot, String clientId, ClientCallbackInterface callback) {
+            this.slot = slot;
+            this.clientId = clientId;
+            this.callback = callback;
+        }
+
+        void offer(String message) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                pending = message;
+                if (inFlight) {
+                    return;
+                }
+                inFlight = true;
+            }
+            deliverNext();
+        }
+
+        synchronized void close() {
+            closed = true;
+            pending = null;
+        }
+
+        private void deliverNext() {
+            String message;
+            synchronized (this) {
+                if (closed || pending == null) {
+                    inFlight = false;
+                    return;
+                }
+                message = pending;
+                pending = null;
+            }
+
+            CompletableFuture<Void> call;
+            try {
+                call = CompletableFuture.runAsync(() -> {
+                    long start = System.nanoTime();
+                    boolean failed = true;
+                    try {
+                        callback.notifyNumberReset(message);
+                        failed = false;
+                    } catch (RemoteException e) {
+                        throw new CompletionException(e);
+                    } finally {
+                        callbackMetrics.record(System.nanoTime() - start, failed);
+                    }
+                }, deliveryPool);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    inFlight = false;
+                }
+                return;
+            }
+
+            call.copy()
+                    .orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                    .whenComplete((ignored, error) -> recordOutcome(error));
+            // The next delivery waits for the call itself, so a hung client never has two calls pending.
+            call.whenComplete((ignored, error) -> deliverNext());
+        }
+
+        private void recordOutcome(Throwable error) {
+            boolean evict;
+            synchronized (this) {
+                if (error == null) {
+                    consecutiveFailures = 0;
+                    return;
+                }
+                consecutiveFailures++;
+                evict = consecutiveFailures >= maxFailures && !closed;
+                if (evict) {
+                    closed = true;
+                    pending = null;
+                }
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            eventLog.log(GameEventLog.EventType.NOTIFY_FAILED, clientId, 0, 0, 0, 0, 0, 0, cause);
+            if (evict) {
+                evict(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package server;
+
+import java.io.Serializable;
+
+// A player's state as it moves between cluster nodes: the receiving node parks it under the same
+// session token, and seats the player in roomId when it resumes.
+public class PlayerHandoff implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String clientId;
+    private final long sessionToken;
+    private final int score;
+    private final int trials;
+    private final int roomId;
+
+    public PlayerHandoff(String clientId, long sessionToken, int score, int trials, int roomId) {
+        this.clientId = clientId;
+        this.sessionToken = sessionToken;
+        this.score = score;
+        this.trials = trials;
+        this.roomId = roomId;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    // 0 for a player who was offline when handed off; it gets a new token when it registers.
+    public long getSessionToken() {
+        return sessionToken;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getTrials() {
+        return trials;
+    }
+
+    public int getRoomId() {
+        return roomId;
+    }
+}
@@ -0,0 +1,390 @@
+package server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+// Durable player balances. Every mutation enqueues the player's new absolute score and trials; a
+// writer thread group-commits whatever has queued up with one write and one fsync per batch, so
+// request threads never wait for the disk. The journal is rotated periodically and a compact
+// snapshot of all players is written in the background; recovery loads the newest snapshot and
+// replays the journals written since it. Records are absolute values, so replaying one that the
+// snapshot already reflects is harmless, and a torn record at the tail is detected by its CRC. A player
+// that leaves this node is written as a record with REMOVED trials, so recovery does not bring it back.
+public class PlayerJournal implements AutoCloseable {
+    private static final int SNAPSHOT_MAGIC = 0x47534E50;
+    private static final int REMOVED = -1;
+    private static final String JOURNAL_PREFIX = "journal-";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+
+    public interface PlayerStateConsumer {
+        void accept(String clientId, int score, int trials);
+    }
+
+    public interface PlayerRemovalConsumer {
+        void removed(String clientId);
+    }
+
+    public interface SnapshotSource {
+        void forEachPlayer(PlayerStateConsumer consumer);
+    }
+
+    private static final class Entry {
+        final String clientId;
+        final int score;
+        final int trials;
+
+        Entry(String clientId, int score, int trials) {
+            this.clientId = clientId;
+            this.score = score;
+            this.trials = trials;
+        }
+    }
+
+    private final Path directory;
+    private final long commitIntervalNanos;
+    private final long snapshotIntervalNanos;
+    private final Queue<Entry> pending = new ConcurrentLinkedQueue<>();
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+    private ExecutorService snapshotExecutor;
+    private Future<?> snapshotInProgress;
+    private SnapshotSource snapshotSource;
+    private GameEventLog eventLog;
+    private FileChannel channel;
+    private long generation;
+    private Thread writer;
+    private volatile boolean running;
+    private volatile long lastCommitNanos;
+
+    private PlayerJournal(Path directory, long commitIntervalMillis, long snapshotIntervalMillis) {
+        this.directory = directory;
+        this.commitIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, commitIntervalMillis));
+        this.snapshotIntervalNanos = TimeUnit.MILLISECONDS.toNanos(snapshotIntervalMillis);
+    }
+
+    public static PlayerJournal disabled() {
+        return new PlayerJournal(null, 1, 0);
+    }
+
+    public static PlayerJournal open(Path directory, long commitIntervalMillis, long snapshotIntervalMillis) throws IOException {
+        Files.createDirectories(directory);
+        return new PlayerJournal(directory, commitIntervalMillis, snapshotIntervalMillis);
+    }
+
+    public static PlayerJournal fromSystemProperties() throws IOException {
+        String directory = System.getProperty("game.data.dir", "game-data");
+        if (directory.isEmpty()) {
+            return disabled();
+        }
+        return open(Path.of(directory),
+                Long.getLong("game.journal.commitMillis", 5),
+                TimeUnit.SECONDS.toMillis(Long.getLong("game.snapshot.intervalSeconds", 60)));
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    // Replays the newest snapshot and every later journal into the consumers; returns the number of records applied.
+    public long recover(PlayerStateConsumer consumer, PlayerRemovalConsumer removals) throws IOException {
+        if (!isEnabled()) {
+            return 0;
+        }
+        long snapshotGeneration = -1;
+        for (long candidate : generations(SNAPSHOT_PREFIX, ".snap")) {
+            snapshotGeneration = candidate;
+        }
+
+        long applied = 0;
+        if (snapshotGeneration >= 0) {
+            applied += loadSnapshot(snapshotPath(snapshotGeneration), consumer);
+        }
+        for (long journalGeneration : generations(JOURNAL_PREFIX, ".log")) {
+            if (journalGeneration >= snapshotGeneration) {
+                applied += replayJournal(journalPath(journalGeneration), consumer, removals);
+            }
+            generation = Math.max(generation, journalGeneration + 1);
+        }
+        generation = Math.max(generation, snapshotGeneration + 1);
+        return applied;
+    }
+
+    // Write and snapshot failures are reported to eventLog; the journal keeps trying.
+    public synchronized void start(SnapshotSource source, GameEventLog eventLog) throws IOException {
+        if (!isEnabled() || running) {
+            return;
+        }
+        this.snapshotSource = source;
+        this.eventLog = eventLog;
+        this.channel = openJournal(generation);
+        this.snapshotExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "player-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.running = true;
+        this.lastCommitNanos = System.nanoTime();
+        this.writer = new Thread(this::writeLoop, "player-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public void record(String clientId, int score, int trials) {
+        if (running) {
+            pending.add(new Entry(clientId, score, trials));
+        }
+    }
+
+    // The player now lives on another node; a later record brings it back if it returns.
+    public void remove(String clientId) {
+        if (running) {
+            pending.add(new Entry(clientId, 0, REMOVED));
+        }
+    }
+
+    // Age of the oldest mutation that may not be on disk yet; bounded by the commit interval under normal load.
+    public long getCommitLagMillis() {
+        return pending.isEmpty() ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastCommitNanos);
+    }
+
+    private void writeLoop() {
+        long lastSnapshotNanos = System.nanoTime();
+        while (running || !pending.isEmpty()) {
+            LockSupport.parkNanos(commitIntervalNanos);
+            try {
+                commitPending();
+                if (snapshotIntervalNanos > 0 && System.nanoTime() - lastSnapshotNanos >= snapshotIntervalNanos
+                        && (snapshotInProgress == null || snapshotInProgress.isDone())) {
+                    rotateAndSnapshot();
+                    lastSnapshotNanos = System.nanoTime();
+                }
+            } catch (IOException e) {
+                eventLog.log(GameEventLog.EventType.JOURNAL_FAILED, null, RoomTable.LOBBY_ID, 0, 0, 0, 0, 0, e);
+            }
+        }
+    }
+
+    private void commitPending() throws IOException {
+        if (pending.isEmpty()) {
+            lastCommitNanos = System.nanoTime();
+            return;
+        }
+        // Several mutations of one player inside a batch collapse into its latest state.
+        Map<String, Entry> batch = new LinkedHashMap<>();
+        Entry entry;
+        while ((entry = pending.poll()) != null) {
+            batch.put(entry.clientId, entry);
+        }
+
+        buffer.clear();
+        for (Entry latest : batch.values()) {
+            encode(latest);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        lastCommitNanos = System.nanoTime();
+    }
+
+    private void encode(Entry entry) {
+        byte[] id = entry.clientId.getBytes(StandardCharsets.UTF_8);
+        int recordSize = 2 + id.length + 8 + 8;
+        if (buffer.remaining() < recordSize) {
+            ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, buffer.position() + recordSize));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+        int start = buffer.position();
+        buffer.putShort((short) id.length).put(id).putInt(entry.score).putInt(entry.trials);
+        ByteBuffer record = buffer.duplicate();
+        record.flip().position(start);
+        crc.reset();
+        crc.update(record);
+        buffer.putLong(crc.getValue());
+    }
+
+    private void rotateAndSnapshot() throws IOException {
+        channel.close();
+        long snapshotGeneration = ++generation;
+        channel = openJournal(snapshotGeneration);
+        snapshotInProgress = snapshotExecutor.submit(() -> {
+            try {
+                writeSnapshot(snapshotGeneration);
+            } catch (IOException e) {
+                eventLog.log(GameEventLog.EventType.SNAPSHOT_FAILED, null, RoomTable.LOBBY_ID, 0, 0, 0, 0, 0, e);
+            }
+        });
+    }
+
+    // Every mutation made after the rotation is in the new journal, so the snapshot may be taken
+    // while players keep playing; the older journals and snapshots become redundant once it is durable.
+    private void writeSnapshot(long snapshotGeneration) throws IOException {
+        Path temporary = directory.resolve(SNAPSHOT_PREFIX + snapshotGeneration + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            long[] count = new long[1];
+            IOException[] failure = new IOException[1];
+            snapshotSource.forEachPlayer((clientId, score, trials) -> {
+                if (failure[0] != null) {
+                    return;
+                }
+                try {
+                    out.writeBoolean(true);
+                    out.writeUTF(clientId);
+                    out.writeInt(score);
+                    out.writeInt(trials);
+                    count[0]++;
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            out.writeBoolean(false);
+            out.writeLong(count[0]);
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temporary, snapshotPath(snapshotGeneration), StandardCopyOption.ATOMIC_MOVE);
+
+        for (long old : generations(JOURNAL_PREFIX, ".log")) {
+            if (old < snapshotGeneration) {
+                Files.deleteIfExists(journalPath(old));
+            }
+        }
+        for (long old : generations(SNAPSHOT_PREFIX, ".snap")) {
+            if (old < snapshotGeneration) {
+                Files.deleteIfExists(snapshotPath(old));
+            }
+        }
+    }
+
+    private long loadSnapshot(Path path, PlayerStateConsumer consumer) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a player snapshot: " + path);
+            }
+            long count = 0;
+            while (in.readBoolean()) {
+                consumer.accept(in.readUTF(), in.readInt(), in.readInt());
+                count++;
+            }
+            if (in.readLong() != count) {
+                throw new IOException("Player snapshot is incomplete: " + path);
+            }
+            return count;
+        }
+    }
+
+    private long replayJournal(Path path, PlayerStateConsumer consumer, PlayerRemovalConsumer removals) throws IOException {
+        long count = 0;
+        CRC32 check = new CRC32();
+        try (InputStream file = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file, 1 << 16))) {
+            while (true) {
+                int length = in.readUnsignedShort();
+                byte[] record = new byte[2 + length + 8];
+                record[0] = (byte) (length >>> 8);
+                record[1] = (byte) length;
+                in.readFully(record, 2, length + 8);
+                long expected = in.readLong();
+                check.reset();
+                check.update(record, 0, record.length);
+                if (check.getValue() != expected) {
+                    break;
+                }
+                ByteBuffer values = ByteBuffer.wrap(record, 2 + length, 8);
+                String clientId = new String(record, 2, length, StandardCharsets.UTF_8);
+                int score = values.getInt();
+                int trials = values.getInt();
+                if (trials == REMOVED) {
+                    removals.removed(clientId);
+                } else {
+                    consumer.accept(clientId, score, trials);
+                }
+                count++;
+            }
+        } catch (EOFException tornTail) {
+            // The last batch was cut short by a crash; everything before it has been applied.
+        }
+        return count;
+    }
+
+    private FileChannel openJournal(long journalGeneration) throws IOException {
+        return FileChannel.open(journalPath(journalGeneration),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private Path journalPath(long journalGeneration) {
+        return directory.resolve(String.format("%s%016d.log", JOURNAL_PREFIX, journalGeneration));
+    }
+
+    private Path snapshotPath(long snapshotGeneration) {
+        return directory.resolve(String.format("%s%016d.snap", SNAPSHOT_PREFIX, snapshotGeneration));
+    }
+
+    private List<Long> generations(String prefix, String suffix) throws IOException {
+        List<Long> found = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    found.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        Collections.sort(found);
+        return found;
+    }
+
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            writer.join(5000);
+            snapshotExecutor.shutdown();
+            snapshotExecutor.awaitTermination(30, TimeUnit.SECONDS);
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            eventLog.log(GameEventLog.EventType.JOURNAL_FAILED, null, RoomTable.LOBBY_ID, 0, 0, 0, 0, 0, e);
+        }
+    }
+}
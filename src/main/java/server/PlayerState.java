@@ -0,0 +1,78 @@
+package server;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+// A player's score, trials and room as of one state version. When the caller already holds the
+// current version, getState answers with a not-modified reply that carries only the version.
+public class PlayerState implements Externalizable {
+    private static final long serialVersionUID = 1L;
+
+    private boolean modified;
+    private long version;
+    private int score;
+    private int trials;
+    private int roomId;
+
+    public PlayerState() {
+    }
+
+    public PlayerState(long version, int score, int trials, int roomId) {
+        this.modified = true;
+        this.version = version;
+        this.score = score;
+        this.trials = trials;
+        this.roomId = roomId;
+    }
+
+    public static PlayerState notModified(long version) {
+        PlayerState state = new PlayerState();
+        state.version = version;
+        return state;
+    }
+
+    // False for a not-modified reply, whose score, trials and room are not filled in.
+    public boolean isModified() {
+        return modified;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getTrials() {
+        return trials;
+    }
+
+    public int getRoomId() {
+        return roomId;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeBoolean(modified);
+        WireFormat.writeVarLong(out, version);
+        if (modified) {
+            WireFormat.writeSignedVarInt(out, score);
+            WireFormat.writeVarInt(out, trials);
+            WireFormat.writeVarInt(out, roomId);
+        }
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        modified = in.readBoolean();
+        version = WireFormat.readVarLong(in);
+        if (modified) {
+            score = WireFormat.readSignedVarInt(in);
+            trials = WireFormat.readVarInt(in);
+            roomId = WireFormat.readVarInt(in);
+        }
+    }
+}
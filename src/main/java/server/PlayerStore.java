@@ -0,0 +1,861 @@
+package server;
+
+import client.ClientCallbackInterface;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongSupplier;
+
+// Every player on this node, online or not: registered here, recovered from the journal, parked by
+// the lease sweeper, handed over by another node or replicated to a standby. Each player gets a
+// dense int slot for as long as it is here, and its state lives in primitive arrays indexed by that
+// slot, with the callback and room of an online player in side arrays beside them. The client id is
+// kept as UTF-8 bytes in one shared array, found through an open-addressing index of slots, and an
+// online player's session token through a second index. A million players are a handful of arrays
+// rather than millions of objects, map entries and boxes, so they cost a few dozen bytes each and
+// give the collector almost nothing to trace.
+// Players are spread over segments by hash, as rooms are over RoomTable's partitions. The indexes,
+// slot allocation, offline players and a player going online or offline are guarded by the segment's
+// lock. An online player's state is changed only by whoever has the player to itself (see
+// GameServer.withPlayer), without that lock, so it sits in fixed-size pages that never move when the
+// segment grows; anyone else reads it through the slot's sequence number, as StampedLock's
+// optimistic reads do, and so never blocks the player's writer.
+final class PlayerStore {
+    static final int NO_SLOT = -1;
+    static final int NOT_HELD = -1;
+    // What attached says of a slot and session token.
+    static final int ATTACHED = 0;
+    static final int MOVING = 1;
+    static final int DETACHED = 2;
+    static final int NEW_PLAYER_SCORE = 100;
+
+    private static final int PAGE_SHIFT = 9;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int ONLINE = 1;
+    private static final int MOVING_FLAG = 2;
+
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle CALLBACKS = MethodHandles.arrayElementVarHandle(ClientCallbackInterface[].class);
+
+    // Called under a segment's lock, so it must not change the store.
+    interface Visitor {
+        void accept(String clientId, long sessionToken, int score, int trials, int roomId);
+    }
+
+    private final Leaderboard leaderboard;
+    private final Segment[] segments;
+    private final TokenSegment[] tokenSegments;
+    private final int segmentShift;
+    private final int segmentMask;
+
+    // Offline players' scores are kept on leaderboard from here, under the segment's lock, so a slot is
+    // never reused while the leaderboard still has it.
+    PlayerStore(Leaderboard leaderboard) {
+        this(leaderboard, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    PlayerStore(Leaderboard leaderboard, int segmentCount) {
+        int count = Integer.highestOneBit(Math.max(1, segmentCount - 1)) << 1;
+        this.leaderboard = leaderboard;
+        this.segments = new Segment[count];
+        this.tokenSegments = new TokenSegment[count];
+        this.segmentShift = Integer.numberOfTrailingZeros(count);
+        this.segmentMask = count - 1;
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment();
+            tokenSegments[i] = new TokenSegment();
+        }
+    }
+
+    boolean contains(String clientId) {
+        return slotOf(clientId) != NO_SLOT;
+    }
+
+    int slotOf(String clientId) {
+        int hash = hash(clientId);
+        Segment segment = segmentOf(hash);
+        byte[] key = clientId.getBytes(StandardCharsets.UTF_8);
+        synchronized (segment) {
+            int local = segment.find(key, hash);
+            return local < 0 ? NO_SLOT : slot(local, hash);
+        }
+    }
+
+    // null once the slot is free.
+    String clientIdOf(int slot) {
+        Segment segment = segments[slot & segmentMask];
+        int local = slot >>> segmentShift;
+        synchronized (segment) {
+            if (local >= segment.slotCount || segment.keyLengths[local] < 0) {
+                return null;
+            }
+            String clientId = segment.page(local).clientIds[local & PAGE_MASK];
+            return clientId != null ? clientId
+                    : new String(segment.keys, segment.keyOffsets[local], segment.keyLengths[local], StandardCharsets.UTF_8);
+        }
+    }
+
+    // The session token of the player if it is online, 0 if not.
+    long sessionOf(String clientId) {
+        int hash = hash(clientId);
+        Segment segment = segmentOf(hash);
+        byte[] key = clientId.getBytes(StandardCharsets.UTF_8);
+        synchronized (segment) {
+            int local = segment.find(key, hash);
+            if (local < 0) {
+                return 0;
+            }
+            Page page = segment.page(local);
+            int i = local & PAGE_MASK;
+            return (page.flags[i] & ONLINE) != 0 ? page.sessions[i] : 0;
+        }
+    }
+
+    // The slot of the online player holding sessionToken; the lookup every call starts with, so it
+    // takes no lock unless the token's segment is being written.
+    int slotOfSession(long sessionToken) {
+        TokenSegment segment = tokenSegments[tokenHash(sessionToken) & segmentMask];
+        long stamp = segment.lock.tryOptimisticRead();
+        int slot = segment.table.find(sessionToken);
+        if (!segment.lock.validate(stamp)) {
+            stamp = segment.lock.readLock();
+            try {
+                slot = segment.table.find(sessionToken);
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return slot;
+    }
+
+    // Keeps a player that is not online, to be resumed under sessionToken and seated in roomId: 0 for
+    // a player with no session to resume, the lobby for one with no seat. Returns false, changing
+    // nothing, if the player is online here.
+    boolean park(String clientId, long sessionToken, int score, int trials, int roomId) {
+        int hash = hash(clientId);
+        Segment segment = segmentOf(hash);
+        byte[] key = clientId.getBytes(StandardCharsets.UTF_8);
+        synchronized (segment) {
+            int local = segment.find(key, hash);
+            if (local < 0) {
+                local = segment.insert(key, hash);
+            }
+            Page page = segment.page(local);
+            int i = local & PAGE_MASK;
+            if ((page.flags[i] & ONLINE) != 0) {
+                return false;
+            }
+            beginWrite(page, i);
+            page.sessions[i] = sessionToken;
+            page.scores[i] = score;
+            page.trials[i] = trials;
+            page.roomIds[i] = roomId;
+            endWrite(page, i);
+            leaderboard.update(slot(local, hash), score);
+            return true;
+        }
+    }
+
+    // Removes a player that is not online; null if it is online here or not here at all.
+    PlayerHandoff removeOffline(String clientId) {
+        int hash = hash(clientId);
+        Segment segment = segmentOf(hash);
+        byte[] key = clientId.getBytes(StandardCharsets.UTF_8);
+        synchronized (segment) {
+            int local = segment.find(key, hash);
+            if (local < 0) {
+                return null;
+            }
+            Page page = segment.page(local);
+            int i = local & PAGE_MASK;
+            if ((page.flags[i] & ONLINE) != 0) {
+                return null;
+            }
+            PlayerHandoff player = new PlayerHandoff(clientId, page.sessions[i], page.scores[i], page.trials[i],
+                    page.roomIds[i]);
+            leaderboard.remove(slot(local, hash));
+            segment.delete(local, hash);
+            return player;
+        }
+    }
+
+    // Hands a parked session back once: if the player is held under sessionToken, the token and room
+    // are cleared and the room returned, leaving score and trials for the registration that follows.
+    int claim(String clientId, long sessionToken) {
+        int hash = hash(clientId);
+        Segment segment = segmentOf(hash);
+        byte[] key = clientId.getBytes(StandardCharsets.UTF_8);
+        synchronized (segment) {
+            int local = segment.find(key, hash);
+            if (local < 0 || sessionToken == 0) {
+                return NOT_HELD;
+            }
+            Page page = segment.page(local);
+            int i = local & PAGE_MASK;
+            if ((page.flags[i] & ONLINE) != 0 || page.sessions[i] != sessionToken) {
+                return NOT_HELD;
+            }
+            int roomId = page.roomIds[i];
+            beginWrite(page, i);
+            page.sessions[i] = 0;
+            page.roomIds[i] = RoomTable.LOBBY_ID;
+            endWrite(page, i);
+            return roomId;
+        }
+    }
+
+    // Takes the player online in the lobby under a session token nobody online holds, requestedToken
+    // if it is free, and returns the token. A player new here starts with NEW_PLAYER_SCORE; one held
+    // offline keeps its score and trials. Returns 0, changing nothing, if the player is online already.
+    long goOnline(String clientId, long requestedToken, LongSupplier tokens, int partition, long version,
+                  ClientCallbackInterface callback) {
+        int hash = hash(clientId);
+        Segment segment = segmentOf(hash);
+        byte[] key = clientId.getBytes(StandardCharsets.UTF_8);
+        synchronized (segment) {
+            int local = segment.find(key, hash);
+            boolean added = local < 0;
+            if (added) {
+                local = segment.insert(key, hash);
+            }
+            Page page = segment.page(local);
+            int i = local & PAGE_MASK;
+            if ((page.flags[i] & ONLINE) != 0) {
+                return 0;
+            }
+            int slot = slot(local, hash);
+            long sessionToken = requestedToken;
+            while (sessionToken == 0 || !addSession(sessionToken, slot)) {
+                sessionToken = tokens.getAsLong();
+            }
+            beginWrite(page, i);
+            if (added) {
+                page.scores[i] = NEW_PLAYER_SCORE;
+                page.trials[i] = 0;
+            }
+            page.sessions[i] = sessionToken;
+            page.roomIds[i] = RoomTable.LOBBY_ID;
+            page.versions[i] = version;
+            page.clientIds[i] = clientId;
+            page.rooms[i] = null;
+            page.flags[i] = ONLINE;
+            LONGS.setOpaque(page.lastSeen, i, System.nanoTime());
+            CALLBACKS.setRelease(page.callbacks, i, callback);
+            INTS.setRelease(page.partitions, i, partition);
+            endWrite(page, i);
+            segment.online++;
+            return sessionToken;
+        }
+    }
+
+    // Called with the player to itself. Keeps the player here offline, parked in the lobby under its
+    // session token if keepToken, and frees the token for the next session if not.
+    void goOffline(int slot, boolean keepToken) {
+        Segment segment = segments[slot & segmentMask];
+        int local = slot >>> segmentShift;
+        synchronized (segment) {
+            Page page = segment.page(local);
+            int i = local & PAGE_MASK;
+            long sessionToken = page.sessions[i];
+            removeSession(sessionToken);
+            beginWrite(page, i);
+            page.flags[i] = 0;
+            if (!keepToken) {
+                page.sessions[i] = 0;
+            }
+            page.roomIds[i] = RoomTable.LOBBY_ID;
+            page.clientIds[i] = null;
+            page.rooms[i] = null;
+            CALLBACKS.setRelease(page.callbacks, i, null);
+            endWrite(page, i);
+            segment.online--;
+        }
+    }
+
+    // Called with the online player to itself. Takes the player off this node altogether.
+    void remove(int slot) {
+        Segment segment = segments[slot & segmentMask];
+        int local = slot >>> segmentShift;
+        synchronized (segment) {
+            Page page = segment.page(local);
+            int i = local & PAGE_MASK;
+            removeSession(page.sessions[i]);
+            beginWrite(page, i);
+            page.flags[i] = 0;
+            page.sessions[i] = 0;
+            page.clientIds[i] = null;
+            page.rooms[i] = null;
+            CALLBACKS.setRelease(page.callbacks, i, null);
+            endWrite(page, i);
+            segment.online--;
+            leaderboard.remove(slot);
+            segment.delete(local, segment.hashes[local]);
+        }
+    }
+
+    // Whether slot still holds the online session sessionToken, and whether it is being handed off.
+    int attached(int slot, long sessionToken) {
+        Page page = pageOf(slot);
+        if (page == null) {
+            return DETACHED;
+        }
+        int i = (slot >>> segmentShift) & PAGE_MASK;
+        while (true) {
+            int seq = beginRead(page, i);
+            long session = page.sessions[i];
+            int flags = page.flags[i];
+            if (endRead(page, i, seq)) {
+                if (session != sessionToken || (flags & ONLINE) == 0) {
+                    return DETACHED;
+                }
+                return (flags & MOVING_FLAG) != 0 ? MOVING : ATTACHED;
+            }
+        }
+    }
+
+    // The state of the player holding sessionToken, read without having it to itself; null unless attached.
+    PlayerState state(int slot, long sessionToken) {
+        Page page = pageOf(slot);
+        if (page == null) {
+            return null;
+        }
+        int i = (slot >>> segmentShift) & PAGE_MASK;
+        while (true) {
+            int seq = beginRead(page, i);
+            long session = page.sessions[i];
+            int flags = page.flags[i];
+            long version = page.versions[i];
+            int score = page.scores[i];
+            int trials = page.trials[i];
+            int roomId = page.roomIds[i];
+            if (endRead(page, i, seq)) {
+                return session == sessionToken && flags == ONLINE ? new PlayerState(version, score, trials, roomId) : null;
+            }
+        }
+    }
+
+    // The session token of the player in slot if it is online, 0 if not.
+    long sessionOf(int slot) {
+        Page page = pageOf(slot);
+        if (page == null) {
+            return 0;
+        }
+        int i = (slot >>> segmentShift) & PAGE_MASK;
+        while (true) {
+            int seq = beginRead(page, i);
+            long session = page.sessions[i];
+            int flags = page.flags[i];
+            if (endRead(page, i, seq)) {
+                return (flags & ONLINE) != 0 ? session : 0;
+            }
+        }
+    }
+
+    // Slots are below this; a slot that was never used reads as offline.
+    int slotLimit() {
+        int pages = 0;
+        for (Segment segment : segments) {
+            pages = Math.max(pages, segment.pages.length);
+        }
+        return (pages << PAGE_SHIFT) << segmentShift;
+    }
+
+    void renew(int slot, long granularityNanos) {
+        Page page = pageOf(slot);
+        int i = (slot >>> segmentShift) & PAGE_MASK;
+        long now = System.nanoTime();
+        if (now - (long) LONGS.getOpaque(page.lastSeen, i) > granularityNanos) {
+            LONGS.setOpaque(page.lastSeen, i, now);
+        }
+    }
+
+    long lastSeen(int slot) {
+        return (long) LONGS.getOpaque(pageOf(slot).lastSeen, (slot >>> segmentShift) & PAGE_MASK);
+    }
+
+    // Single-writer mode: the writer that owns the player, see GameServer.partitionOf.
+    int partition(int slot) {
+        return (int) INTS.getAcquire(pageOf(slot).partitions, (slot >>> segmentShift) & PAGE_MASK);
+    }
+
+    ClientCallbackInterface callback(int slot) {
+        return (ClientCallbackInterface) CALLBACKS.getAcquire(pageOf(slot).callbacks, (slot >>> segmentShift) & PAGE_MASK);
+    }
+
+    // A resumed session calls back to the client that resumed it.
+    void setCallback(int slot, ClientCallbackInterface callback) {
+        CALLBACKS.setRelease(pageOf(slot).callbacks, (slot >>> segmentShift) & PAGE_MASK, callback);
+    }
+
+    // The rest are called with the online player to itself.
+
+    String clientId(int slot) {
+        return pageOf(slot).clientIds[(slot >>> segmentShift) & PAGE_MASK];
+    }
+
+    int score(int slot) {
+        return pageOf(slot).scores[(slot >>> segmentShift) & PAGE_MASK];
+    }
+
+    int trials(int slot) {
+        return pageOf(slot).trials[(slot >>> segmentShift) & PAGE_MASK];
+    }
+
+    long version(int slot) {
+        return pageOf(slot).versions[(slot >>> segmentShift) & PAGE_MASK];
+    }
+
+    GameRoom room(int slot) {
+        return pageOf(slot).rooms[(slot >>> segmentShift) & PAGE_MASK];
+    }
+
+    int roomId(int slot) {
+        return pageOf(slot).roomIds[(slot >>> segmentShift) & PAGE_MASK];
+    }
+
+    PlayerState state(int slot) {
+        Page page = pageOf(slot);
+        int i = (slot >>> segmentShift) & PAGE_MASK;
+        return new PlayerState(page.versions[i], page.scores[i], page.trials[i], page.roomIds[i]);
+    }
+
+    // Sets score and trials as the next version of the player's state.
+    void update(int slot, int score, int trials) {
+        Page page = pageOf(slot);
+        int i = (slot >>> segmentShift) & PAGE_MASK;
+        beginWrite(page, i);
+        page.scores[i] = score;
+        page.trials[i] = trials;
+        page.versions[i]++;
+        endWrite(page, i);
+    }
+
+    // Seats the player in room as the next version of its state, owned from then on by partition.
+    void seat(int slot, GameRoom room, int partition) {
+        Page page = pageOf(slot);
+        int i = (slot >>> segmentShift) & PAGE_MASK;
+        beginWrite(page, i);
+        page.rooms[i] = room;
+        page.roomIds[i] = room.getRoomId();
+        page.versions[i]++;
+        endWrite(page, i);
+        INTS.setRelease(page.partitions, i, partition);
+    }
+
+    void setMoving(int slot, boolean moving) {
+        Page page = pageOf(slot);
+        int i = (slot >>> segmentShift) & PAGE_MASK;
+        beginWrite(page, i);
+        page.flags[i] = moving ? ONLINE | MOVING_FLAG : ONLINE;
+        endWrite(page, i);
+    }
+
+    // Visits one segment at a time; players added or removed meanwhile may or may not be seen.
+    void forEach(Visitor visitor) {
+        visit(visitor, true);
+    }
+
+    void forEachOffline(Visitor visitor) {
+        visit(visitor, false);
+    }
+
+    private void visit(Visitor visitor, boolean online) {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                for (int local = 0; local < segment.slotCount; local++) {
+                    if (segment.keyLengths[local] < 0) {
+                        continue;
+                    }
+                    Page page = segment.page(local);
+                    int i = local & PAGE_MASK;
+                    long session;
+                    int flags;
+                    int score;
+                    int trials;
+                    int roomId;
+                    int seq;
+                    do {
+                        seq = beginRead(page, i);
+                        session = page.sessions[i];
+                        flags = page.flags[i];
+                        score = page.scores[i];
+                        trials = page.trials[i];
+                        roomId = page.roomIds[i];
+                    } while (!endRead(page, i, seq));
+                    if (online || (flags & ONLINE) == 0) {
+                        visitor.accept(new String(segment.keys, segment.keyOffsets[local], segment.keyLengths[local],
+                                StandardCharsets.UTF_8), session, score, trials, roomId);
+                    }
+                }
+            }
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    int onlineCount() {
+        int online = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                online += segment.online;
+            }
+        }
+        return online;
+    }
+
+    // A slot is the segment's own slot number above the segment index, so the slots of all segments
+    // are dense together.
+    private int slot(int local, int hash) {
+        return local << segmentShift | (hash >>> 24) & segmentMask;
+    }
+
+    private Segment segmentOf(int hash) {
+        return segments[(hash >>> 24) & segmentMask];
+    }
+
+    private Page pageOf(int slot) {
+        Page[] pages = segments[slot & segmentMask].pages;
+        int page = slot >>> segmentShift >>> PAGE_SHIFT;
+        return page < pages.length ? pages[page] : null;
+    }
+
+    // Called under the player's segment lock, which orders it after the token's segment.
+    private boolean addSession(long sessionToken, int slot) {
+        TokenSegment segment = tokenSegments[tokenHash(sessionToken) & segmentMask];
+        long stamp = segment.lock.writeLock();
+        try {
+            return segment.add(sessionToken, slot);
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    private void removeSession(long sessionToken) {
+        TokenSegment segment = tokenSegments[tokenHash(sessionToken) & segmentMask];
+        long stamp = segment.lock.writeLock();
+        try {
+            segment.remove(sessionToken);
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    // A slot has one writer at a time, so the sequence number needs no atomic update: odd while the
+    // slot is being written, and a read that saw it change is retried.
+    private static void beginWrite(Page page, int i) {
+        INTS.setOpaque(page.seqs, i, page.seqs[i] + 1);
+        VarHandle.releaseFence();
+    }
+
+    private static void endWrite(Page page, int i) {
+        INTS.setRelease(page.seqs, i, page.seqs[i] + 1);
+    }
+
+    private static int beginRead(Page page, int i) {
+        int seq;
+        while (((seq = (int) INTS.getAcquire(page.seqs, i)) & 1) != 0) {
+            Thread.onSpinWait();
+        }
+        return seq;
+    }
+
+    private static boolean endRead(Page page, int i, int seq) {
+        VarHandle.acquireFence();
+        return (int) INTS.getOpaque(page.seqs, i) == seq;
+    }
+
+    // String caches its hash, so this costs a multiply; the high bits pick the segment, the low bits the index bucket.
+    private static int hash(String clientId) {
+        int h = clientId.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int tokenHash(long sessionToken) {
+        long h = sessionToken * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    // PAGE_SIZE slots' worth of the per-slot state.
+    private static final class Page {
+        final int[] seqs = new int[PAGE_SIZE];
+        final int[] flags = new int[PAGE_SIZE];
+        final long[] sessions = new long[PAGE_SIZE];
+        final int[] scores = new int[PAGE_SIZE];
+        final int[] trials = new int[PAGE_SIZE];
+        // The room an online player sits in, or the one a parked player is seated in when it resumes.
+        final int[] roomIds = new int[PAGE_SIZE];
+        final long[] versions = new long[PAGE_SIZE];
+        final int[] partitions = new int[PAGE_SIZE];
+        final long[] lastSeen = new long[PAGE_SIZE];
+        // Online players only. The id is the String the player registered with, which every change
+        // is journaled and logged under.
+        final String[] clientIds = new String[PAGE_SIZE];
+        final GameRoom[] rooms = new GameRoom[PAGE_SIZE];
+        final ClientCallbackInterface[] callbacks = new ClientCallbackInterface[PAGE_SIZE];
+    }
+
+    private static final class Segment {
+        // slot + 1 per bucket, 0 for an empty bucket; linear probing, at most half full.
+        int[] index = new int[16];
+        // Per slot. A free slot has key length -1 and is on the free list.
+        int[] hashes = new int[8];
+        int[] keyOffsets = new int[8];
+        int[] keyLengths = new int[8];
+        // Replaced, never changed, when the segment grows, so it can be read without the lock.
+        volatile Page[] pages = new Page[0];
+        int slotCount;
+        int size;
+        int online;
+        int[] freeSlots = new int[8];
+        int freeCount;
+        byte[] keys = new byte[128];
+        int keysUsed;
+        int keysFreed;
+
+        Page page(int local) {
+            return pages[local >>> PAGE_SHIFT];
+        }
+
+        int find(byte[] key, int hash) {
+            int mask = index.length - 1;
+            for (int bucket = hash & mask; ; bucket = (bucket + 1) & mask) {
+                int slot = index[bucket] - 1;
+                if (slot < 0) {
+                    return -1;
+                }
+                if (hashes[slot] == hash && keyEquals(slot, key)) {
+                    return slot;
+                }
+            }
+        }
+
+        private boolean keyEquals(int slot, byte[] key) {
+            int offset = keyOffsets[slot];
+            return keyLengths[slot] == key.length && Arrays.equals(keys, offset, offset + key.length, key, 0, key.length);
+        }
+
+        int insert(byte[] key, int hash) {
+            if ((size + 1) * 2 > index.length) {
+                growIndex();
+            }
+            int slot;
+            if (freeCount > 0) {
+                slot = freeSlots[--freeCount];
+            } else {
+                if (slotCount == hashes.length) {
+                    growSlots();
+                }
+                if (slotCount == pages.length << PAGE_SHIFT) {
+                    Page[] grown = Arrays.copyOf(pages, pages.length + 1);
+                    grown[pages.length] = new Page();
+                    pages = grown;
+                }
+                slot = slotCount++;
+            }
+            hashes[slot] = hash;
+            keyOffsets[slot] = storeKey(key);
+            keyLengths[slot] = key.length;
+            size++;
+            Page page = page(slot);
+            int i = slot & PAGE_MASK;
+            beginWrite(page, i);
+            page.flags[i] = 0;
+            page.sessions[i] = 0;
+            page.scores[i] = 0;
+            page.trials[i] = 0;
+            page.roomIds[i] = RoomTable.LOBBY_ID;
+            endWrite(page, i);
+
+            int mask = index.length - 1;
+            int bucket = hash & mask;
+            while (index[bucket] != 0) {
+                bucket = (bucket + 1) & mask;
+            }
+            index[bucket] = slot + 1;
+            return slot;
+        }
+
+        // Backward-shift deletion: later entries of the probe run move up into the gap, so lookups
+        // never need tombstones.
+        void delete(int slot, int hash) {
+            int mask = index.length - 1;
+            int gap = hash & mask;
+            while (index[gap] != slot + 1) {
+                gap = (gap + 1) & mask;
+            }
+            for (int bucket = (gap + 1) & mask; index[bucket] != 0; bucket = (bucket + 1) & mask) {
+                int home = hashes[index[bucket] - 1] & mask;
+                // Moves up only if its home bucket is not between the gap and where it sits now.
+                if (((bucket - home) & mask) >= ((bucket - gap) & mask)) {
+                    index[gap] = index[bucket];
+                    gap = bucket;
+                }
+            }
+            index[gap] = 0;
+
+            keysFreed += keyLengths[slot];
+            keyLengths[slot] = -1;
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            }
+            freeSlots[freeCount++] = slot;
+            size--;
+        }
+
+        private int storeKey(byte[] key) {
+            if (keysUsed + key.length > keys.length) {
+                // Compacted rather than grown when at least half of it belongs to removed players.
+                if (keysFreed * 2 >= keysUsed) {
+                    compactKeys();
+                }
+                if (keysUsed + key.length > keys.length) {
+                    keys = Arrays.copyOf(keys, Math.max(keys.length * 2, keysUsed + key.length));
+                }
+            }
+            int offset = keysUsed;
+            System.arraycopy(key, 0, keys, offset, key.length);
+            keysUsed += key.length;
+            return offset;
+        }
+
+        private void compactKeys() {
+            byte[] compacted = new byte[keys.length];
+            int used = 0;
+            for (int slot = 0; slot < slotCount; slot++) {
+                int length = keyLengths[slot];
+                if (length >= 0) {
+                    System.arraycopy(keys, keyOffsets[slot], compacted, used, length);
+                    keyOffsets[slot] = used;
+                    used += length;
+                }
+            }
+            keys = compacted;
+            keysUsed = used;
+            keysFreed = 0;
+        }
+
+        private void growSlots() {
+            int capacity = hashes.length * 2;
+            hashes = Arrays.copyOf(hashes, capacity);
+            keyOffsets = Arrays.copyOf(keyOffsets, capacity);
+            keyLengths = Arrays.copyOf(keyLengths, capacity);
+        }
+
+        private void growIndex() {
+            int[] grown = new int[index.length * 2];
+            int mask = grown.length - 1;
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (keyLengths[slot] >= 0) {
+                    int bucket = hashes[slot] & mask;
+                    while (grown[bucket] != 0) {
+                        bucket = (bucket + 1) & mask;
+                    }
+                    grown[bucket] = slot + 1;
+                }
+            }
+            index = grown;
+        }
+    }
+
+    // Online session tokens to slots, written under the write lock and read optimistically.
+    private static final class TokenSegment {
+        final StampedLock lock = new StampedLock();
+        volatile TokenTable table = new TokenTable(16);
+        int size;
+
+        boolean add(long sessionToken, int slot) {
+            if (table.find(sessionToken) != NO_SLOT) {
+                return false;
+            }
+            if ((size + 1) * 2 > table.tokens.length) {
+                TokenTable grown = new TokenTable(table.tokens.length * 2);
+                for (int bucket = 0; bucket < table.tokens.length; bucket++) {
+                    if (table.slots[bucket] != 0) {
+                        grown.insert(table.tokens[bucket], table.slots[bucket] - 1);
+                    }
+                }
+                table = grown;
+            }
+            table.insert(sessionToken, slot);
+            size++;
+            return true;
+        }
+
+        void remove(long sessionToken) {
+            if (table.delete(sessionToken)) {
+                size--;
+            }
+        }
+    }
+
+    // Token and slot + 1 per bucket, 0 for an empty bucket; linear probing with backward-shift deletion.
+    private static final class TokenTable {
+        final long[] tokens;
+        final int[] slots;
+
+        TokenTable(int capacity) {
+            this.tokens = new long[capacity];
+            this.slots = new int[capacity];
+        }
+
+        // Read optimistically as well, so it never probes more buckets than there are.
+        int find(long sessionToken) {
+            int mask = tokens.length - 1;
+            int bucket = tokenHash(sessionToken) >>> 8 & mask;
+            for (int probes = 0; probes < tokens.length; probes++, bucket = (bucket + 1) & mask) {
+                int slot = slots[bucket] - 1;
+                if (slot < 0) {
+                    return NO_SLOT;
+                }
+                if (tokens[bucket] == sessionToken) {
+                    return slot;
+                }
+            }
+            return NO_SLOT;
+        }
+
+        void insert(long sessionToken, int slot) {
+            int mask = tokens.length - 1;
+            int bucket = tokenHash(sessionToken) >>> 8 & mask;
+            while (slots[bucket] != 0) {
+                bucket = (bucket + 1) & mask;
+            }
+            tokens[bucket] = sessionToken;
+            slots[bucket] = slot + 1;
+        }
+
+        boolean delete(long sessionToken) {
+            int mask = tokens.length - 1;
+            int gap = tokenHash(sessionToken) >>> 8 & mask;
+            while (slots[gap] != 0 && tokens[gap] != sessionToken) {
+                gap = (gap + 1) & mask;
+            }
+            if (slots[gap] == 0) {
+                return false;
+            }
+            for (int bucket = (gap + 1) & mask; slots[bucket] != 0; bucket = (bucket + 1) & mask) {
+                int home = tokenHash(tokens[bucket]) >>> 8 & mask;
+                if (((bucket - home) & mask) >= ((bucket - gap) & mask)) {
+                    tokens[gap] = tokens[bucket];
+                    slots[gap] = slots[bucket];
+                    gap = bucket;
+                }
+            }
+            slots[gap] = 0;
+            return true;
+        }
+    }
+}
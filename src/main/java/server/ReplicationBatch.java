@@ -0,0 +1,171 @@
+package server;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// One step of the stream a primary sends its standby: the latest state of every player and room
+// that changed since the previous step, keyed so that several changes to one player collapse into
+// the last. Values are absolute, so a standby that applies a change twice ends up in the same state.
+// A snapshot carries every player and room, and anything the standby holds that is not in it is gone.
+public class ReplicationBatch implements Externalizable {
+    private static final long serialVersionUID = 1L;
+
+    // The current round of one room, or its removal.
+    static final class Room {
+        final int roomId;
+        final String name;
+        final long round;
+        final int secret;
+        final boolean closed;
+
+        Room(int roomId, String name, long round, int secret, boolean closed) {
+            this.roomId = roomId;
+            this.name = name;
+            this.round = round;
+            this.secret = secret;
+            this.closed = closed;
+        }
+    }
+
+    private long streamId;
+    private long sequence;
+    private boolean snapshot;
+    private long versionEpoch;
+    // A null value removes the player.
+    private final Map<String, PlayerHandoff> players = new LinkedHashMap<>();
+    private final Map<Integer, Room> rooms = new LinkedHashMap<>();
+    // Primary side only: when the oldest change in this batch was made, for the lag it reports.
+    transient long oldestChangeNanos;
+
+    public ReplicationBatch() {
+    }
+
+    ReplicationBatch(long streamId, long sequence, boolean snapshot) {
+        this.streamId = streamId;
+        this.sequence = sequence;
+        this.snapshot = snapshot;
+    }
+
+    // Identifies the primary run that numbered this batch; sequences from another run mean nothing.
+    public long getStreamId() {
+        return streamId;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    // The primary's session epoch counter, so sessions started after a takeover get fresh versions.
+    long getVersionEpoch() {
+        return versionEpoch;
+    }
+
+    void setVersionEpoch(long versionEpoch) {
+        this.versionEpoch = versionEpoch;
+    }
+
+    boolean isEmpty() {
+        return players.isEmpty() && rooms.isEmpty();
+    }
+
+    int size() {
+        return players.size() + rooms.size();
+    }
+
+    void player(PlayerHandoff player) {
+        players.put(player.getClientId(), player);
+    }
+
+    void playerRemoved(String clientId) {
+        players.put(clientId, null);
+    }
+
+    void room(Room room) {
+        rooms.put(room.roomId, room);
+    }
+
+    Map<String, PlayerHandoff> players() {
+        return players;
+    }
+
+    Collection<Room> rooms() {
+        return rooms.values();
+    }
+
+    // Folds a later batch into this one.
+    void merge(ReplicationBatch later) {
+        players.putAll(later.players);
+        rooms.putAll(later.rooms);
+        sequence = later.sequence;
+        versionEpoch = Math.max(versionEpoch, later.versionEpoch);
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeLong(streamId);
+        WireFormat.writeVarLong(out, sequence);
+        out.writeBoolean(snapshot);
+        WireFormat.writeVarLong(out, versionEpoch);
+        WireFormat.writeVarInt(out, players.size());
+        for (Map.Entry<String, PlayerHandoff> entry : players.entrySet()) {
+            PlayerHandoff player = entry.getValue();
+            out.writeUTF(entry.getKey());
+            out.writeBoolean(player != null);
+            if (player != null) {
+                out.writeLong(player.getSessionToken());
+                WireFormat.writeSignedVarInt(out, player.getScore());
+                WireFormat.writeVarInt(out, player.getTrials());
+                WireFormat.writeVarInt(out, player.getRoomId());
+            }
+        }
+        WireFormat.writeVarInt(out, rooms.size());
+        for (Room room : rooms.values()) {
+            WireFormat.writeVarInt(out, room.roomId);
+            out.writeBoolean(room.closed);
+            if (!room.closed) {
+                out.writeUTF(room.name);
+                WireFormat.writeVarLong(out, room.round);
+                WireFormat.writeVarInt(out, room.secret);
+            }
+        }
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        streamId = in.readLong();
+        sequence = WireFormat.readVarLong(in);
+        snapshot = in.readBoolean();
+        versionEpoch = WireFormat.readVarLong(in);
+        int playerCount = WireFormat.readVarInt(in);
+        for (int i = 0; i < playerCount; i++) {
+            String clientId = in.readUTF();
+            if (in.readBoolean()) {
+                long sessionToken = in.readLong();
+                int score = WireFormat.readSignedVarInt(in);
+                int trials = WireFormat.readVarInt(in);
+                int roomId = WireFormat.readVarInt(in);
+                players.put(clientId, new PlayerHandoff(clientId, sessionToken, score, trials, roomId));
+            } else {
+                players.put(clientId, null);
+            }
+        }
+        int roomCount = WireFormat.readVarInt(in);
+        for (int i = 0; i < roomCount; i++) {
+            int roomId = WireFormat.readVarInt(in);
+            if (in.readBoolean()) {
+                rooms.put(roomId, new Room(roomId, null, 0, 0, true));
+            } else {
+                rooms.put(roomId, new Room(roomId, in.readUTF(), WireFormat.readVarLong(in), WireFormat.readVarInt(in), false));
+            }
+        }
+    }
+}
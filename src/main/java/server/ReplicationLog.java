@@ -0,0 +1,247 @@
+package server;
+
+import java.rmi.RemoteException;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// Primary side of hot-standby replication. Request threads enqueue the new absolute state of each
+// player and room they change, under the lock that changed it; every batch interval the queue is
+// sealed into one numbered batch, collapsing repeated changes to a player, and kept until the
+// standby's next pull acknowledges it. Nothing is queued before a standby first pulls or after it
+// stops pulling, so without one each change costs a volatile read.
+public class ReplicationLog implements ReplicationSource, ReplicationMXBean {
+    public static final String BINDING = "GuessingGameReplication";
+    public static final String OBJECT_NAME = "server:type=Replication";
+    static final long DEFAULT_BATCH_MILLIS = 5;
+    private static final long STANDBY_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+    // A standby further behind than this many batches is sent a snapshot instead.
+    private static final int MAX_UNACKNOWLEDGED_BATCHES = 4096;
+
+    public interface StateSource {
+        void snapshot(ReplicationBatch batch);
+    }
+
+    private static final class Change {
+        // null for a room change; a null player removes the client.
+        final String clientId;
+        final PlayerHandoff player;
+        final ReplicationBatch.Room room;
+        final long nanos = System.nanoTime();
+
+        Change(String clientId, PlayerHandoff player, ReplicationBatch.Room room) {
+            this.clientId = clientId;
+            this.player = player;
+            this.room = room;
+        }
+    }
+
+    private final long streamId = new SecureRandom().nextLong() | 1;
+    private final long batchNanos;
+    private final Queue<Change> pending = new ConcurrentLinkedQueue<>();
+    private final ArrayDeque<ReplicationBatch> unacknowledged = new ArrayDeque<>();
+    private final LatencyHistogram acknowledgementLag = new LatencyHistogram();
+    private StateSource source;
+    private LongSupplier versionEpochs;
+    private GameEventLog eventLog;
+    private ScheduledExecutorService batcher;
+    private volatile boolean attached;
+    private long sequence;
+    private long acknowledged;
+    private long lastPullNanos;
+    private long snapshotsSent;
+
+    private ReplicationLog(long batchMillis) {
+        this.batchNanos = TimeUnit.MILLISECONDS.toNanos(batchMillis);
+    }
+
+    public static ReplicationLog disabled() {
+        return new ReplicationLog(0);
+    }
+
+    public static ReplicationLog open(long batchMillis) {
+        return new ReplicationLog(Math.max(1, batchMillis));
+    }
+
+    public static ReplicationLog fromSystemProperties() {
+        long batchMillis = Long.getLong("game.replication.batchMillis", DEFAULT_BATCH_MILLIS);
+        return batchMillis <= 0 ? disabled() : open(batchMillis);
+    }
+
+    public boolean isEnabled() {
+        return batchNanos > 0;
+    }
+
+    public synchronized void start(StateSource source, LongSupplier versionEpochs, GameEventLog eventLog) {
+        if (!isEnabled() || this.source != null) {
+            return;
+        }
+        this.source = source;
+        this.versionEpochs = versionEpochs;
+        this.eventLog = eventLog;
+        this.batcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "replication-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        batcher.scheduleWithFixedDelay(this::seal, batchNanos, batchNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void player(String clientId, long sessionToken, int score, int trials, int roomId) {
+        if (attached) {
+            pending.add(new Change(clientId, new PlayerHandoff(clientId, sessionToken, score, trials, roomId), null));
+        }
+    }
+
+    void playerRemoved(String clientId) {
+        if (attached) {
+            pending.add(new Change(clientId, null, null));
+        }
+    }
+
+    void room(GameRoom room, GameRoom.Round round) {
+        if (attached) {
+            pending.add(new Change(null, null, new ReplicationBatch.Room(room.getRoomId(), room.getName(),
+                    round.number, round.secret, false)));
+        }
+    }
+
+    void roomClosed(int roomId) {
+        if (attached) {
+            pending.add(new Change(null, null, new ReplicationBatch.Room(roomId, null, 0, 0, true)));
+        }
+    }
+
+    private synchronized void seal() {
+        if (!attached) {
+            return;
+        }
+        if (System.nanoTime() - lastPullNanos > STANDBY_TIMEOUT_NANOS) {
+            attached = false;
+            pending.clear();
+            unacknowledged.clear();
+            // Replication stays paused until the standby pulls again.
+            eventLog.log(GameEventLog.EventType.STANDBY_DETACHED, null, RoomTable.LOBBY_ID, 0);
+            return;
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        ReplicationBatch batch = new ReplicationBatch(streamId, sequence + 1, false);
+        batch.oldestChangeNanos = pending.peek().nanos;
+        Change change;
+        while ((change = pending.poll()) != null) {
+            if (change.clientId == null) {
+                batch.room(change.room);
+            } else if (change.player == null) {
+                batch.playerRemoved(change.clientId);
+            } else {
+                batch.player(change.player);
+            }
+        }
+        batch.setVersionEpoch(versionEpochs.getAsLong());
+        sequence++;
+        unacknowledged.addLast(batch);
+        if (unacknowledged.size() > MAX_UNACKNOWLEDGED_BATCHES) {
+            unacknowledged.removeFirst();
+        }
+        notifyAll();
+    }
+
+    @Override
+    public synchronized ReplicationBatch pull(long streamId, long afterSequence, long waitMillis) throws RemoteException {
+        if (source == null) {
+            throw new RemoteException("Replication is not enabled on this server");
+        }
+        long now = System.nanoTime();
+        lastPullNanos = now;
+        long firstKept = unacknowledged.isEmpty() ? sequence + 1 : unacknowledged.peekFirst().getSequence();
+        if (!attached || streamId != this.streamId || afterSequence > sequence || afterSequence + 1 < firstKept) {
+            return snapshot();
+        }
+
+        while (!unacknowledged.isEmpty() && unacknowledged.peekFirst().getSequence() <= afterSequence) {
+            acknowledgementLag.record(now - unacknowledged.removeFirst().oldestChangeNanos);
+        }
+        acknowledged = afterSequence;
+
+        long deadline = now + TimeUnit.MILLISECONDS.toNanos(Math.max(0, waitMillis));
+        long remaining;
+        while (unacknowledged.isEmpty() && attached && (remaining = deadline - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        ReplicationBatch batch = new ReplicationBatch(this.streamId, afterSequence, false);
+        for (ReplicationBatch later : unacknowledged) {
+            batch.merge(later);
+        }
+        return batch;
+    }
+
+    // Changes already queued are covered by the snapshot and dropped; any change made after they were
+    // dropped is queued again, so it reaches the standby after the snapshot and nothing goes backwards.
+    private ReplicationBatch snapshot() {
+        attached = true;
+        pending.clear();
+        unacknowledged.clear();
+        ReplicationBatch batch = new ReplicationBatch(streamId, ++sequence, true);
+        source.snapshot(batch);
+        batch.setVersionEpoch(versionEpochs.getAsLong());
+        snapshotsSent++;
+        return batch;
+    }
+
+    @Override
+    public boolean isStandbyAttached() {
+        return attached;
+    }
+
+    @Override
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public synchronized long getAcknowledgedSequence() {
+        return acknowledged;
+    }
+
+    @Override
+    public synchronized long getLagMillis() {
+        if (!attached) {
+            return 0;
+        }
+        ReplicationBatch oldest = unacknowledged.peekFirst();
+        Change queued = pending.peek();
+        long since = oldest != null ? oldest.oldestChangeNanos : queued != null ? queued.nanos : System.nanoTime();
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - since);
+    }
+
+    @Override
+    public CallSummary getAcknowledgementLag() {
+        LatencyHistogram.Snapshot snapshot = acknowledgementLag.snapshot();
+        return new CallSummary(snapshot.getCount(), 0, snapshot.getMean() / 1000, snapshot.getPercentile(0.50) / 1000,
+                snapshot.getPercentile(0.99) / 1000, snapshot.getPercentile(0.999) / 1000, snapshot.getMax() / 1000);
+    }
+
+    @Override
+    public synchronized long getSnapshotsSent() {
+        return snapshotsSent;
+    }
+
+    @Override
+    public void resetLag() {
+        acknowledgementLag.snapshotAndReset();
+    }
+}
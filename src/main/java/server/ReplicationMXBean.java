@@ -0,0 +1,21 @@
+package server;
+
+// The primary's side of hot-standby replication. Lag runs from a change on the primary to the
+// standby's acknowledgement of the batch holding it, both measured on the primary's clock.
+public interface ReplicationMXBean {
+    boolean isStandbyAttached();
+
+    long getSequence();
+
+    long getAcknowledgedSequence();
+
+    // Age of the oldest change the standby has not acknowledged; what a takeover now would lose.
+    long getLagMillis();
+
+    // calls is the number of batches acknowledged.
+    CallSummary getAcknowledgementLag();
+
+    long getSnapshotsSent();
+
+    void resetLag();
+}
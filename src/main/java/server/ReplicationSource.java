@@ -0,0 +1,13 @@
+package server;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+// The primary's end of hot-standby replication, bound next to the game. The standby pulls, so the
+// primary needs no standby address, and each pull acknowledges everything up to afterSequence.
+public interface ReplicationSource extends Remote {
+    // Returns the changes after afterSequence, waiting up to waitMillis for some; an empty batch at
+    // afterSequence means nothing changed. A standby that is new, was restarted, or fell too far
+    // behind (streamId or afterSequence the primary cannot continue from) gets a snapshot instead.
+    ReplicationBatch pull(long streamId, long afterSequence, long waitMillis) throws RemoteException;
+}
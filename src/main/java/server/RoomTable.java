@@ -0,0 +1,116 @@
+package server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+// Rooms are spread over one partition per core, so rooms in different partitions share no map or lock.
+class RoomTable {
+    static final int LOBBY_ID = 0;
+
+    private final Partition[] partitions;
+    private final AtomicInteger nextRoomId = new AtomicInteger(LOBBY_ID + 1);
+    private final GameRoom lobby;
+    private final GameEventLog eventLog;
+    private final SecretSource secrets;
+
+    static final class Partition {
+        final int index;
+        final Map<Integer, GameRoom> rooms = new ConcurrentHashMap<>();
+
+        Partition(int index) {
+            this.index = index;
+        }
+    }
+
+    RoomTable(GameEventLog eventLog, SecretSource secrets) {
+        this(Runtime.getRuntime().availableProcessors(), eventLog, secrets);
+    }
+
+    RoomTable(int partitionCount, GameEventLog eventLog, SecretSource secrets) {
+        this.eventLog = eventLog;
+        this.secrets = secrets;
+        this.partitions = new Partition[Math.max(1, partitionCount)];
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = new Partition(i);
+        }
+        this.lobby = new GameRoom(LOBBY_ID, "Lobby", eventLog, secrets);
+        partitionOf(LOBBY_ID).rooms.put(LOBBY_ID, lobby);
+    }
+
+    GameRoom lobby() {
+        return lobby;
+    }
+
+    GameRoom create(String name) {
+        int roomId = nextRoomId.getAndIncrement();
+        GameRoom room = new GameRoom(roomId, name, eventLog, secrets);
+        partitionOf(roomId).rooms.put(roomId, room);
+        return room;
+    }
+
+    // Cluster mode: rooms get random ids that pass owned, so ids made on different nodes never collide
+    // and a new room is always on the node that made it.
+    GameRoom create(String name, IntPredicate owned) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (true) {
+            int roomId = random.nextInt(LOBBY_ID + 1, Integer.MAX_VALUE);
+            if (owned.test(roomId) && get(roomId) == null) {
+                GameRoom room = new GameRoom(roomId, name, eventLog, secrets);
+                if (partitionOf(roomId).rooms.putIfAbsent(roomId, room) == null) {
+                    return room;
+                }
+            }
+        }
+    }
+
+    // Recreates a room that was moved here from another node; it starts a fresh round.
+    GameRoom getOrCreate(int roomId) {
+        return partitionOf(roomId).rooms.computeIfAbsent(roomId,
+                id -> new GameRoom(id, "Room " + id, eventLog, secrets));
+    }
+
+    // Standby side of replication: makes the room exist here in the primary's current round.
+    GameRoom restore(int roomId, String name, GameRoom.Round round) {
+        GameRoom room = roomId == LOBBY_ID ? lobby : partitionOf(roomId).rooms.computeIfAbsent(roomId,
+                id -> new GameRoom(id, name, eventLog, secrets));
+        room.restoreRound(round);
+        nextRoomId.accumulateAndGet(roomId + 1, Math::max);
+        return room;
+    }
+
+    GameRoom get(int roomId) {
+        return partitionOf(roomId).rooms.get(roomId);
+    }
+
+    void remove(GameRoom room) {
+        if (room.getRoomId() != LOBBY_ID) {
+            partitionOf(room.getRoomId()).rooms.remove(room.getRoomId(), room);
+        }
+    }
+
+    void forEach(Consumer<GameRoom> action) {
+        for (Partition partition : partitions) {
+            partition.rooms.values().forEach(action);
+        }
+    }
+
+    Partition partitionOf(int roomId) {
+        return partitions[Math.floorMod(roomId, partitions.length)];
+    }
+
+    int partitionCount() {
+        return partitions.length;
+    }
+
+    int size() {
+        int size = 0;
+        for (Partition partition : partitions) {
+            size += partition.rooms.size();
+        }
+        return size;
+    }
+}
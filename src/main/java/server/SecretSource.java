@@ -0,0 +1,19 @@
+package server;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Where each round's secret comes from. A seeded source derives the secret from the seed, room id
+// and round number alone, so a replayed trace meets the same numbers however the captured calls
+// happened to interleave.
+public interface SecretSource {
+    int secretFor(int roomId, long round);
+
+    static SecretSource unpredictable() {
+        return (roomId, round) -> ThreadLocalRandom.current().nextInt(100) + 1;
+    }
+
+    static SecretSource seeded(long seed) {
+        return (roomId, round) -> new Random(seed ^ roomId * 0x9E3779B97F4A7C15L ^ round * 0xC2B2AE3D27D4EB4FL).nextInt(100) + 1;
+    }
+}
@@ -0,0 +1,13 @@
+package server;
+
+import java.rmi.RemoteException;
+
+// Thrown by admission control when a call is turned away before reaching the game. Nothing was
+// applied, so the call can be retried once the caller backs off.
+public class ServerBusyException extends RemoteException {
+    private static final long serialVersionUID = 1L;
+
+    public ServerBusyException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,55 @@
+package server;
+
+import client.ClientCallbackInterface;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+
+public interface SessionGameInterface extends Remote {
+    // Registers the client under the id it supplies and returns a server-issued session token.
+    // The token-based methods below resolve the player from a server-side table, so no call
+    // is made back to the client's exported object on the request path.
+    SessionHandle registerClient(ClientCallbackInterface client, String clientId) throws RemoteException;
+
+    // Gives a parked session back to its player under the same token, with the score and trials it
+    // had when its lease ran out; also re-attaches the callback of a session that is still live.
+    SessionHandle resumeSession(ClientCallbackInterface client, String clientId, long sessionToken) throws RemoteException;
+
+    // Renews the session's lease, as every other call does; returns the lease length in milliseconds, or 0 if sessions never expire.
+    long heartbeat(long sessionToken) throws RemoteException;
+
+    // Creates a room with its own secret and round counter and moves the caller into it; returns the new room id.
+    int createRoom(long sessionToken, String name) throws RemoteException;
+
+    
+    void joinRoom(long sessionToken, int roomId) throws RemoteException;
+
+    
+    int getRoomId(long sessionToken) throws RemoteException;
+
+    // Spends 10 points per trial; returns the new score and trials with the state version they carry.
+    PlayerState buyTrials(long sessionToken, int numberOfTrials) throws RemoteException;
+
+    
+    GuessResult makeGuess(long sessionToken, int guess) throws RemoteException;
+
+    // Applies the guesses in order with the same scoring as makeGuess, stopping after the first CORRECT or ERROR result.
+    List<GuessResult> makeGuesses(long sessionToken, int[] guesses) throws RemoteException;
+
+    
+    List<GuessResult> buyTrialsAndGuess(long sessionToken, int numberOfTrials, int[] guesses) throws RemoteException;
+
+    
+    int getScore(long sessionToken) throws RemoteException;
+
+    // The player's score, trials and room, or a not-modified reply if sinceVersion is still the current
+    // state version (as returned by a previous getState or guess); pass 0 to always get the full state.
+    PlayerState getState(long sessionToken, long sinceVersion) throws RemoteException;
+
+    // The k highest scores, best first, including recovered players who have not reconnected; k is capped at 1000.
+    List<LeaderboardEntry> getLeaderboard(int k) throws RemoteException;
+
+    // The caller's position by score, starting at 1; players with equal scores share a rank.
+    int getRank(long sessionToken) throws RemoteException;
+}
@@ -0,0 +1,29 @@
+package server;
+
+import java.io.Serializable;
+
+public class SessionHandle implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long token;
+    private final String clientId;
+    private final int score;
+
+    public SessionHandle(long token, String clientId, int score) {
+        this.token = token;
+        this.clientId = clientId;
+        this.score = score;
+    }
+
+    public long getToken() {
+        return token;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public int getScore() {
+        return score;
+    }
+}
@@ -0,0 +1,180 @@
+package server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// One or more windows of spectator events. Each window is encoded once when it closes and every
+// spectator is sent the same bytes, so a window costs the same to build whether ten viewers or ten
+// thousand receive it; a spectator that polls less often gets the windows since its last poll
+// joined in one reply, without re-encoding them. A summary is sent to a spectator that has just
+// arrived or fell too far behind: it holds no guesses, only the current round of every room, and
+// skipped says how many windows it replaces.
+public class SpectatorBatch implements Externalizable {
+    private static final long serialVersionUID = 1L;
+    private static final SpectatorEvent.Kind[] KINDS = SpectatorEvent.Kind.values();
+    private static final GuessResult.Status[] STATUSES = GuessResult.Status.values();
+    private static final GuessResult.MessageCode[] MESSAGE_CODES = GuessResult.MessageCode.values();
+
+    private long sequence;
+    private long windowEndMillis;
+    private boolean summary;
+    private int omittedGuesses;
+    private List<SpectatorEvent> events;
+    private long skipped;
+    private byte[][] windows;
+
+    public SpectatorBatch() {
+    }
+
+    SpectatorBatch(long sequence, long windowEndMillis, boolean summary, List<SpectatorEvent> events, int omittedGuesses) {
+        this.sequence = sequence;
+        this.windowEndMillis = windowEndMillis;
+        this.summary = summary;
+        this.events = Collections.unmodifiableList(events);
+        this.omittedGuesses = omittedGuesses;
+        this.windows = new byte[][] {encode()};
+    }
+
+    // Consecutive windows as one batch, at the last one's sequence.
+    static SpectatorBatch join(List<SpectatorBatch> batches) {
+        if (batches.size() == 1) {
+            return batches.get(0);
+        }
+        SpectatorBatch last = batches.get(batches.size() - 1);
+        SpectatorBatch joined = last.skipping(0);
+        List<SpectatorEvent> events = new ArrayList<>();
+        List<byte[]> windows = new ArrayList<>();
+        joined.omittedGuesses = 0;
+        for (SpectatorBatch batch : batches) {
+            events.addAll(batch.events);
+            windows.addAll(Arrays.asList(batch.windows));
+            joined.omittedGuesses += batch.omittedGuesses;
+        }
+        joined.events = Collections.unmodifiableList(events);
+        joined.windows = windows.toArray(new byte[0][]);
+        return joined;
+    }
+
+    // The same batch for a spectator that skipped this many windows to get it.
+    SpectatorBatch skipping(long skipped) {
+        SpectatorBatch copy = new SpectatorBatch();
+        copy.sequence = sequence;
+        copy.windowEndMillis = windowEndMillis;
+        copy.summary = summary;
+        copy.events = events;
+        copy.omittedGuesses = omittedGuesses;
+        copy.windows = windows;
+        copy.skipped = skipped;
+        return copy;
+    }
+
+    // The cursor to pass to the next watch call.
+    public long getSequence() {
+        return sequence;
+    }
+
+    // Server clock, when the window closed or the summary was taken.
+    public long getWindowEndMillis() {
+        return windowEndMillis;
+    }
+
+    public boolean isSummary() {
+        return summary;
+    }
+
+    public List<SpectatorEvent> getEvents() {
+        return events;
+    }
+
+    // Guesses made in the windows beyond the per-window cap, counted but not listed.
+    public int getOmittedGuesses() {
+        return omittedGuesses;
+    }
+
+    public long getSkipped() {
+        return skipped;
+    }
+
+    private byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + events.size() * 24);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            WireFormat.writeVarLong(out, sequence);
+            WireFormat.writeVarLong(out, windowEndMillis);
+            out.writeBoolean(summary);
+            WireFormat.writeVarInt(out, omittedGuesses);
+            WireFormat.writeVarInt(out, events.size());
+            for (SpectatorEvent event : events) {
+                int status = event.getStatus() == null ? 0 : event.getStatus().ordinal() + 1;
+                int hint = event.getHint() == null ? 0 : event.getHint().ordinal() + 1;
+                out.writeByte(event.getKind().ordinal() | status << 2);
+                out.writeByte(hint);
+                if (event.getKind() != SpectatorEvent.Kind.ROUND_STARTED) {
+                    out.writeUTF(event.getClientId());
+                }
+                WireFormat.writeVarInt(out, event.getRoomId());
+                WireFormat.writeVarLong(out, event.getRound());
+                WireFormat.writeSignedVarInt(out, event.getValue());
+                WireFormat.writeSignedVarInt(out, event.getScore());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        WireFormat.writeVarLong(out, skipped);
+        WireFormat.writeVarInt(out, windows.length);
+        for (byte[] window : windows) {
+            WireFormat.writeVarInt(out, window.length);
+            out.write(window);
+        }
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        skipped = WireFormat.readVarLong(in);
+        windows = new byte[WireFormat.readVarInt(in)][];
+        List<SpectatorEvent> decoded = new ArrayList<>();
+        omittedGuesses = 0;
+        for (int i = 0; i < windows.length; i++) {
+            windows[i] = new byte[WireFormat.readVarInt(in)];
+            in.readFully(windows[i]);
+            decode(new DataInputStream(new ByteArrayInputStream(windows[i])), decoded);
+        }
+        events = Collections.unmodifiableList(decoded);
+    }
+
+    private void decode(DataInputStream data, List<SpectatorEvent> decoded) throws IOException {
+        sequence = WireFormat.readVarLong(data);
+        windowEndMillis = WireFormat.readVarLong(data);
+        summary = data.readBoolean();
+        omittedGuesses += WireFormat.readVarInt(data);
+        int count = WireFormat.readVarInt(data);
+        for (int i = 0; i < count; i++) {
+            int header = data.readUnsignedByte();
+            int hint = data.readUnsignedByte();
+            int kind = header & 0x3;
+            int status = header >>> 2;
+            if (kind >= KINDS.length || status > STATUSES.length || hint > MESSAGE_CODES.length) {
+                throw new IOException("Malformed spectator event");
+            }
+            String clientId = KINDS[kind] == SpectatorEvent.Kind.ROUND_STARTED ? null : data.readUTF();
+            decoded.add(new SpectatorEvent(KINDS[kind], clientId, WireFormat.readVarInt(data), WireFormat.readVarLong(data),
+                    WireFormat.readSignedVarInt(data), WireFormat.readSignedVarInt(data),
+                    status == 0 ? null : STATUSES[status - 1], hint == 0 ? null : MESSAGE_CODES[hint - 1]));
+        }
+    }
+}
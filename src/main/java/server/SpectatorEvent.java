@@ -0,0 +1,66 @@
+package server;
+
+// One thing that happened in a room, as spectators see it. Guesses carry the guess and the hint its
+// player got; a win carries the winning number and the winner's new score.
+public class SpectatorEvent {
+    public enum Kind {
+        GUESS, ROUND_WON, ROUND_STARTED
+    }
+
+    private final Kind kind;
+    private final String clientId;
+    private final int roomId;
+    private final long round;
+    private final int value;
+    private final int score;
+    private final GuessResult.Status status;
+    private final GuessResult.MessageCode hint;
+
+    SpectatorEvent(Kind kind, String clientId, int roomId, long round, int value, int score,
+                   GuessResult.Status status, GuessResult.MessageCode hint) {
+        this.kind = kind;
+        this.clientId = clientId;
+        this.roomId = roomId;
+        this.round = round;
+        this.value = value;
+        this.score = score;
+        this.status = status;
+        this.hint = hint;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    // null for ROUND_STARTED.
+    public String getClientId() {
+        return clientId;
+    }
+
+    public int getRoomId() {
+        return roomId;
+    }
+
+    public long getRound() {
+        return round;
+    }
+
+    // The guess, or the winning number; 0 for ROUND_STARTED.
+    public int getValue() {
+        return value;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    // TOO_SMALL or TOO_BIG for a guess; null otherwise.
+    public GuessResult.Status getStatus() {
+        return status;
+    }
+
+    // VERY_CLOSE, GETTING_CLOSER or FAR_OFF for a guess; null otherwise.
+    public GuessResult.MessageCode getHint() {
+        return hint;
+    }
+}
@@ -0,0 +1,220 @@
+package server;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Server side of the spectator stream. Request threads queue guesses, wins and new rounds as they
+// happen; every window the queue is sealed into one numbered, pre-encoded batch, and each poll is
+// answered with the windows sealed since the spectator's cursor, as they are. A window lists at most
+// maxEvents guesses and only counts the rest, and a spectator more than RETAINED_WINDOWS behind is
+// sent a summary and moved to the newest window, so neither a busy room nor a slow viewer makes a
+// window cost more. Spectators set their own pace: one polling every second costs a tenth of one
+// following every 100 ms window. Nothing is queued while no one watches, so without spectators
+// each event costs a volatile read.
+public class SpectatorFeed implements SpectatorSource, SpectatorMXBean {
+    public static final String BINDING = "GuessingGameSpectators";
+    public static final String OBJECT_NAME = "server:type=Spectators";
+    static final long DEFAULT_WINDOW_MILLIS = 50;
+    static final int DEFAULT_MAX_EVENTS = 1000;
+    private static final int RETAINED_WINDOWS = 64;
+    private static final long IDLE_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    public interface StateSource {
+        // Adds a ROUND_STARTED event for the current round of every room.
+        void summarize(List<SpectatorEvent> rounds);
+    }
+
+    private final long windowNanos;
+    private final int maxEvents;
+    private final Queue<SpectatorEvent> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger windowGuesses = new AtomicInteger();
+    private final AtomicInteger omitted = new AtomicInteger();
+    private final SpectatorBatch[] retained = new SpectatorBatch[RETAINED_WINDOWS];
+    private StateSource source;
+    private ScheduledExecutorService sealer;
+    private volatile boolean watched;
+    // Starts at 1, so that a cursor of 0 always means a new spectator.
+    private long sequence = 1;
+    private SpectatorBatch summary;
+    private long summaryNanos;
+    private long lastPollNanos;
+    private long polls;
+    private long summariesSent;
+    private long omittedGuesses;
+
+    private SpectatorFeed(long windowMillis, int maxEvents) {
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.maxEvents = maxEvents;
+    }
+
+    public static SpectatorFeed disabled() {
+        return new SpectatorFeed(0, 0);
+    }
+
+    public static SpectatorFeed open(long windowMillis, int maxEvents) {
+        return new SpectatorFeed(Math.max(1, windowMillis), Math.max(0, maxEvents));
+    }
+
+    public static SpectatorFeed fromSystemProperties() {
+        long windowMillis = Long.getLong("game.spectators.windowMillis", DEFAULT_WINDOW_MILLIS);
+        return windowMillis <= 0 ? disabled()
+                : open(windowMillis, Integer.getInteger("game.spectators.maxEvents", DEFAULT_MAX_EVENTS));
+    }
+
+    public boolean isEnabled() {
+        return windowNanos > 0;
+    }
+
+    public synchronized void start(StateSource source) {
+        if (!isEnabled() || this.source != null) {
+            return;
+        }
+        this.source = source;
+        this.sealer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "spectator-sealer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sealer.scheduleWithFixedDelay(this::seal, windowNanos, windowNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void guess(String clientId, int roomId, long round, int guess, GuessResult result) {
+        if (!watched) {
+            return;
+        }
+        if (windowGuesses.incrementAndGet() > maxEvents) {
+            omitted.incrementAndGet();
+            return;
+        }
+        pending.add(new SpectatorEvent(SpectatorEvent.Kind.GUESS, clientId, roomId, round, guess,
+                result.getCurrentScore(), result.getStatus(), result.getMessageCode()));
+    }
+
+    void roundWon(String clientId, int roomId, long round, int secret, int score) {
+        if (watched) {
+            pending.add(new SpectatorEvent(SpectatorEvent.Kind.ROUND_WON, clientId, roomId, round, secret, score, null, null));
+        }
+    }
+
+    void roundStarted(int roomId, long round) {
+        if (watched) {
+            pending.add(new SpectatorEvent(SpectatorEvent.Kind.ROUND_STARTED, null, roomId, round, 0, 0, null, null));
+        }
+    }
+
+    private synchronized void seal() {
+        if (!watched) {
+            return;
+        }
+        if (System.nanoTime() - lastPollNanos > IDLE_NANOS) {
+            // Every cursor now predates the gap, so a spectator that comes back starts with a summary.
+            watched = false;
+            pending.clear();
+            Arrays.fill(retained, null);
+            summary = null;
+            sequence++;
+            return;
+        }
+        // The cap is per window only roughly: a guess counted just before the reset lands in the next one.
+        windowGuesses.set(0);
+        int omittedNow = omitted.getAndSet(0);
+        if (pending.isEmpty() && omittedNow == 0) {
+            return;
+        }
+
+        List<SpectatorEvent> events = new ArrayList<>();
+        SpectatorEvent event;
+        while ((event = pending.poll()) != null) {
+            events.add(event);
+        }
+        sequence++;
+        retained[(int) (sequence % RETAINED_WINDOWS)] = new SpectatorBatch(sequence, System.currentTimeMillis(),
+                false, events, omittedNow);
+        omittedGuesses += omittedNow;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized SpectatorBatch watch(long afterSequence, long waitMillis) throws RemoteException {
+        if (source == null) {
+            throw new RemoteException("Spectating is not enabled on this server");
+        }
+        long now = System.nanoTime();
+        polls++;
+        lastPollNanos = now;
+        watched = true;
+        if (afterSequence <= 0 || afterSequence > sequence || sequence - afterSequence >= RETAINED_WINDOWS) {
+            return summary(afterSequence, now);
+        }
+
+        long deadline = now + TimeUnit.MILLISECONDS.toNanos(Math.max(0, waitMillis));
+        long remaining;
+        while (sequence == afterSequence && watched && (remaining = deadline - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (sequence == afterSequence) {
+            return new SpectatorBatch(afterSequence, System.currentTimeMillis(), false, Collections.emptyList(), 0);
+        }
+        List<SpectatorBatch> missed = new ArrayList<>((int) (sequence - afterSequence));
+        for (long next = afterSequence + 1; next <= sequence; next++) {
+            SpectatorBatch batch = retained[(int) (next % RETAINED_WINDOWS)];
+            if (batch == null || batch.getSequence() != next) {
+                return summary(afterSequence, System.nanoTime());
+            }
+            missed.add(batch);
+        }
+        return SpectatorBatch.join(missed);
+    }
+
+    // One summary serves every spectator that needs one within a window.
+    private SpectatorBatch summary(long afterSequence, long now) {
+        if (summary == null || summary.getSequence() != sequence || now - summaryNanos > windowNanos) {
+            List<SpectatorEvent> rounds = new ArrayList<>();
+            source.summarize(rounds);
+            summary = new SpectatorBatch(sequence, System.currentTimeMillis(), true, rounds, 0);
+            summaryNanos = now;
+        }
+        summariesSent++;
+        long skipped = afterSequence > 0 && afterSequence < sequence ? sequence - afterSequence : 0;
+        return skipped == 0 ? summary : summary.skipping(skipped);
+    }
+
+    @Override
+    public boolean isWatched() {
+        return watched;
+    }
+
+    @Override
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public synchronized long getPolls() {
+        return polls;
+    }
+
+    @Override
+    public synchronized long getSummariesSent() {
+        return summariesSent;
+    }
+
+    @Override
+    public synchronized long getOmittedGuesses() {
+        return omittedGuesses;
+    }
+}
@@ -0,0 +1,15 @@
+package server;
+
+// The spectator feed's cost: windows sealed and polls answered, and how often spectators were
+// summarized or guesses left out of a window rather than slowing anything down.
+public interface SpectatorMXBean {
+    boolean isWatched();
+
+    long getSequence();
+
+    long getPolls();
+
+    long getSummariesSent();
+
+    long getOmittedGuesses();
+}
@@ -0,0 +1,13 @@
+package server;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+// Live game activity for dashboards and streams, bound next to the game. Spectators pull, so the
+// server keeps no state per spectator: the cursor is the sequence of the last batch it received.
+public interface SpectatorSource extends Remote {
+    // Returns the window after afterSequence, waiting up to waitMillis for it to close; an empty
+    // batch at afterSequence means nothing happened. Pass 0 to start: a new or lagging spectator gets
+    // a summary of every room and resumes from the newest window.
+    SpectatorBatch watch(long afterSequence, long waitMillis) throws RemoteException;
+}
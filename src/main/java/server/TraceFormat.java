@@ -0,0 +1,325 @@
+package server;
+
+import client.ClientCallbackInterface;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+// Layout of a call trace. The header holds the secret seed, the lease length and the signatures of the traced
+// methods, so a trace stays readable after methods are added. Each record is the call's start
+// offset and duration in microseconds, the method's index in that table, the arguments, and the
+// result or the exception message. Callbacks arrive already replaced by their client id. Common types have
+// compact encodings; any other Serializable value falls back to Java serialization.
+final class TraceFormat {
+    static final int MAGIC = 0x47545243;
+    static final int VERSION = 2;
+
+    static final byte RETURNED = 0;
+    static final byte THREW = 1;
+
+    private TraceFormat() {
+    }
+
+    static final class Record {
+        long startMicros;
+        long durationMicros;
+        Method method;
+        Object[] args;
+        boolean threw;
+        Object result;
+    }
+
+    static List<Method> tracedMethods() {
+        List<Method> methods = new ArrayList<>(Arrays.asList(GameInterface.class.getMethods()));
+        methods.sort(Comparator.comparing(InstrumentedGame::signature));
+        return methods;
+    }
+
+    static void writeHeader(DataOutput out, long seed, long leaseMillis, List<Method> methods) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(seed);
+        WireFormat.writeVarLong(out, leaseMillis);
+        WireFormat.writeVarInt(out, methods.size());
+        for (Method method : methods) {
+            out.writeUTF(InstrumentedGame.signature(method));
+        }
+    }
+
+    // Returns {seed, leaseMillis}; methods receives the header's table, null where this build has no such method.
+    static long[] readHeader(DataInput in, List<Method> methods) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a call trace");
+        }
+        int version = in.readUnsignedShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported trace version " + version);
+        }
+        long seed = in.readLong();
+        long leaseMillis = WireFormat.readVarLong(in);
+        List<Method> known = tracedMethods();
+        int count = WireFormat.readVarInt(in);
+        for (int i = 0; i < count; i++) {
+            String signature = in.readUTF();
+            methods.add(known.stream()
+                    .filter(method -> InstrumentedGame.signature(method).equals(signature))
+                    .findFirst().orElse(null));
+        }
+        return new long[]{seed, leaseMillis};
+    }
+
+    static void writeRecord(DataOutput out, Record record, int methodIndex) throws IOException {
+        WireFormat.writeVarLong(out, record.startMicros);
+        WireFormat.writeVarLong(out, record.durationMicros);
+        WireFormat.writeVarInt(out, methodIndex);
+        Type[] parameterTypes = record.method.getGenericParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            writeValue(out, parameterTypes[i], record.args[i]);
+        }
+        if (record.threw) {
+            out.writeByte(THREW);
+            out.writeUTF(String.valueOf(record.result));
+        } else {
+            out.writeByte(RETURNED);
+            writeValue(out, record.method.getGenericReturnType(), record.result);
+        }
+    }
+
+    static Record readRecord(DataInput in, List<Method> methods) throws IOException {
+        Record record = new Record();
+        record.startMicros = WireFormat.readVarLong(in);
+        record.durationMicros = WireFormat.readVarLong(in);
+        int methodIndex = WireFormat.readVarInt(in);
+        record.method = methodIndex < methods.size() ? methods.get(methodIndex) : null;
+        if (record.method == null) {
+            throw new IOException("Trace uses method #" + methodIndex + ", which this build does not have");
+        }
+        Type[] parameterTypes = record.method.getGenericParameterTypes();
+        record.args = new Object[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            record.args[i] = readValue(in, parameterTypes[i]);
+        }
+        record.threw = in.readByte() == THREW;
+        record.result = record.threw ? in.readUTF() : readValue(in, record.method.getGenericReturnType());
+        return record;
+    }
+
+    private static void writeValue(DataOutput out, Type type, Object value) throws IOException {
+        if (type == void.class) {
+            return;
+        }
+        if (type == int.class) {
+            WireFormat.writeSignedVarInt(out, (Integer) value);
+        } else if (type == long.class) {
+            out.writeLong((Long) value);
+        } else if (type == String.class) {
+            writeString(out, (String) value);
+        } else if (type == int[].class) {
+            int[] values = (int[]) value;
+            WireFormat.writeVarInt(out, values == null ? 0 : values.length + 1);
+            if (values != null) {
+                for (int element : values) {
+                    WireFormat.writeSignedVarInt(out, element);
+                }
+            }
+        } else if (type == ClientCallbackInterface.class) {
+            writeString(out, (String) value);
+        } else if (type == GuessResult.class) {
+            GuessResult result = (GuessResult) value;
+            out.writeByte(result.getStatus().ordinal());
+            out.writeByte(result.getMessageCode().ordinal());
+            WireFormat.writeSignedVarInt(out, result.getScoreChange());
+            WireFormat.writeSignedVarInt(out, result.getCurrentScore());
+            WireFormat.writeSignedVarInt(out, result.getRemainingTrials());
+            WireFormat.writeSignedVarInt(out, result.getRoomId());
+            WireFormat.writeVarLong(out, result.getStateVersion());
+        } else if (type == SessionHandle.class) {
+            SessionHandle session = (SessionHandle) value;
+            out.writeLong(session.getToken());
+            writeString(out, session.getClientId());
+            WireFormat.writeSignedVarInt(out, session.getScore());
+        } else if (type == LeaderboardEntry.class) {
+            LeaderboardEntry entry = (LeaderboardEntry) value;
+            WireFormat.writeVarInt(out, entry.getRank());
+            writeString(out, entry.getClientId());
+            WireFormat.writeSignedVarInt(out, entry.getScore());
+        } else if (isList(type)) {
+            List<?> values = (List<?>) value;
+            WireFormat.writeVarInt(out, values.size());
+            Type elementType = ((ParameterizedType) type).getActualTypeArguments()[0];
+            for (Object element : values) {
+                writeValue(out, elementType, element);
+            }
+        } else {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream objects = new ObjectOutputStream(bytes)) {
+                objects.writeObject(value);
+            }
+            WireFormat.writeVarInt(out, bytes.size());
+            out.write(bytes.toByteArray());
+        }
+    }
+
+    private static Object readValue(DataInput in, Type type) throws IOException {
+        if (type == void.class) {
+            return null;
+        }
+        if (type == int.class) {
+            return WireFormat.readSignedVarInt(in);
+        } else if (type == long.class) {
+            return in.readLong();
+        } else if (type == String.class || type == ClientCallbackInterface.class) {
+            return readString(in);
+        } else if (type == int[].class) {
+            int length = WireFormat.readVarInt(in) - 1;
+            if (length < 0) {
+                return null;
+            }
+            int[] values = new int[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = WireFormat.readSignedVarInt(in);
+            }
+            return values;
+        } else if (type == GuessResult.class) {
+            GuessResult.Status status = GuessResult.Status.values()[in.readUnsignedByte()];
+            GuessResult.MessageCode code = GuessResult.MessageCode.values()[in.readUnsignedByte()];
+            return new GuessResult(status, code, WireFormat.readSignedVarInt(in), WireFormat.readSignedVarInt(in),
+                    WireFormat.readSignedVarInt(in), WireFormat.readSignedVarInt(in), WireFormat.readVarLong(in));
+        } else if (type == SessionHandle.class) {
+            long token = in.readLong();
+            return new SessionHandle(token, readString(in), WireFormat.readSignedVarInt(in));
+        } else if (type == LeaderboardEntry.class) {
+            int rank = WireFormat.readVarInt(in);
+            return new LeaderboardEntry(rank, readString(in), WireFormat.readSignedVarInt(in));
+        } else if (isList(type)) {
+            int size = WireFormat.readVarInt(in);
+            Type elementType = ((ParameterizedType) type).getActualTypeArguments()[0];
+            List<Object> values = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                values.add(readValue(in, elementType));
+            }
+            return values;
+        } else {
+            byte[] bytes = new byte[WireFormat.readVarInt(in)];
+            in.readFully(bytes);
+            try (ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                return objects.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    // Whether a replayed result matches the captured one. Session tokens and state versions are not
+    // compared, since the replay issues its own; a not-modified state matches any state.
+    static boolean sameResult(Object captured, Object replayed) {
+        if (captured instanceof GuessResult && replayed instanceof GuessResult) {
+            GuessResult a = (GuessResult) captured;
+            GuessResult b = (GuessResult) replayed;
+            return a.getStatus() == b.getStatus() && a.getMessageCode() == b.getMessageCode()
+                    && a.getScoreChange() == b.getScoreChange() && a.getCurrentScore() == b.getCurrentScore()
+                    && a.getRemainingTrials() == b.getRemainingTrials() && a.getRoomId() == b.getRoomId();
+        }
+        if (captured instanceof PlayerState && replayed instanceof PlayerState) {
+            PlayerState a = (PlayerState) captured;
+            PlayerState b = (PlayerState) replayed;
+            return !a.isModified() || !b.isModified()
+                    || a.getScore() == b.getScore() && a.getTrials() == b.getTrials() && a.getRoomId() == b.getRoomId();
+        }
+        if (captured instanceof SessionHandle && replayed instanceof SessionHandle) {
+            SessionHandle a = (SessionHandle) captured;
+            SessionHandle b = (SessionHandle) replayed;
+            return a.getClientId().equals(b.getClientId()) && a.getScore() == b.getScore();
+        }
+        if (captured instanceof LeaderboardEntry && replayed instanceof LeaderboardEntry) {
+            LeaderboardEntry a = (LeaderboardEntry) captured;
+            LeaderboardEntry b = (LeaderboardEntry) replayed;
+            return a.getRank() == b.getRank() && a.getClientId().equals(b.getClientId()) && a.getScore() == b.getScore();
+        }
+        if (captured instanceof List && replayed instanceof List) {
+            List<?> a = (List<?>) captured;
+            List<?> b = (List<?>) replayed;
+            if (a.size() != b.size()) {
+                return false;
+            }
+            for (int i = 0; i < a.size(); i++) {
+                if (!sameResult(a.get(i), b.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return Objects.equals(captured, replayed);
+    }
+
+    static String describe(Object value) {
+        if (value instanceof GuessResult) {
+            GuessResult result = (GuessResult) value;
+            return result.getStatus() + "/" + result.getMessageCode() + " change=" + result.getScoreChange()
+                    + " score=" + result.getCurrentScore() + " trials=" + result.getRemainingTrials()
+                    + " room=" + result.getRoomId();
+        }
+        if (value instanceof PlayerState) {
+            PlayerState state = (PlayerState) value;
+            return state.isModified() ? "state score=" + state.getScore() + " trials=" + state.getTrials()
+                    + " room=" + state.getRoomId() : "state not modified";
+        }
+        if (value instanceof SessionHandle) {
+            SessionHandle session = (SessionHandle) value;
+            return "session " + session.getClientId() + " score=" + session.getScore();
+        }
+        if (value instanceof LeaderboardEntry) {
+            LeaderboardEntry entry = (LeaderboardEntry) value;
+            return "#" + entry.getRank() + " " + entry.getClientId() + " " + entry.getScore();
+        }
+        if (value instanceof List) {
+            List<String> elements = new ArrayList<>();
+            for (Object element : (List<?>) value) {
+                elements.add(describe(element));
+            }
+            return elements.toString();
+        }
+        return String.valueOf(value);
+    }
+
+    // The index of the method's session token, or -1. A session call takes its token as its first long
+    // parameter, which is not always parameter 0 (resumeSession); a later long, such as getState's
+    // sinceVersion, is not a token.
+    static int sessionTokenIndex(Method method) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (parameterTypes[i] == long.class) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isList(Type type) {
+        return type instanceof ParameterizedType && ((ParameterizedType) type).getRawType() == List.class;
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,180 @@
+package server;
+
+import client.ClientCallbackInterface;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Capture mode: wraps a GameInterface and appends every call to a TraceFormat file. Calls encode
+// their own record and hand it to a bounded queue; a writer thread drains it into a buffered stream,
+// so a slow disk costs dropped records (counted) rather than slower calls. Records are written in
+// completion order, which keeps each player's calls in the order they observed.
+//
+// A callback is recorded as its client id, taken from the call's own clientId argument or returned
+// session and remembered for the callback-only calls; the client is never asked, since a hung
+// client would then hang the call being traced. A callback-only call from a client whose id was
+// never seen is recorded without one.
+final class TraceRecorder implements InvocationHandler, AutoCloseable {
+    private static final int QUEUE_CAPACITY = 64 * 1024;
+    private static final byte[] END = new byte[0];
+
+    private final GameInterface target;
+    private final Map<Method, Integer> methodIndexes = new HashMap<>();
+    private final long startNanos = System.nanoTime();
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong dropped = new AtomicLong();
+    // RMI stubs compare by remote reference, so each client's stubs share one entry.
+    private final Map<ClientCallbackInterface, String> callbackIds = new ConcurrentHashMap<>();
+    private final OutputStream out;
+    private final Thread writer;
+    private final GameEventLog eventLog;
+
+    private TraceRecorder(GameInterface target, Path file, long seed, long leaseMillis, GameEventLog eventLog)
+            throws IOException {
+        this.target = target;
+        this.eventLog = eventLog;
+        List<Method> methods = TraceFormat.tracedMethods();
+        for (int i = 0; i < methods.size(); i++) {
+            methodIndexes.put(methods.get(i), i);
+        }
+        this.out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16);
+        DataOutputStream header = new DataOutputStream(out);
+        TraceFormat.writeHeader(header, seed, leaseMillis, methods);
+        header.flush();
+        this.writer = new Thread(this::drain, "trace-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // seed and leaseMillis must be the ones the traced server runs with, so a replay can reuse them.
+    // A failure that stops the writer is reported to eventLog.
+    static TraceRecorder open(GameInterface target, Path file, long seed, long leaseMillis, GameEventLog eventLog)
+            throws IOException {
+        return new TraceRecorder(target, file, seed, leaseMillis, eventLog);
+    }
+
+    GameInterface proxy() {
+        return (GameInterface) Proxy.newProxyInstance(GameInterface.class.getClassLoader(),
+                new Class<?>[]{GameInterface.class}, this);
+    }
+
+    long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        Integer methodIndex = methodIndexes.get(method);
+        if (methodIndex == null) {
+            return method.invoke(target, args);
+        }
+
+        TraceFormat.Record record = new TraceFormat.Record();
+        record.method = method;
+        record.args = args == null ? new Object[0] : args;
+        long start = System.nanoTime();
+        try {
+            record.result = method.invoke(target, args);
+            return record.result;
+        } catch (InvocationTargetException e) {
+            record.threw = true;
+            record.result = e.getCause().getMessage();
+            throw e.getCause();
+        } finally {
+            long end = System.nanoTime();
+            record.startMicros = TimeUnit.NANOSECONDS.toMicros(start - startNanos);
+            record.durationMicros = TimeUnit.NANOSECONDS.toMicros(end - start);
+            record.args = withCallbackIds(method, record.args, record.threw ? null : record.result);
+            enqueue(record, methodIndex);
+        }
+    }
+
+    // The arguments as recorded: each callback replaced by its client id. In GameInterface a String
+    // next to a callback is always the client id.
+    private Object[] withCallbackIds(Method method, Object[] args, Object result) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        String clientId = result instanceof SessionHandle ? ((SessionHandle) result).getClientId() : null;
+        for (int i = 0; i < args.length && clientId == null; i++) {
+            if (parameterTypes[i] == String.class) {
+                clientId = (String) args[i];
+            }
+        }
+        Object[] recorded = args.clone();
+        for (int i = 0; i < args.length; i++) {
+            if (parameterTypes[i] == ClientCallbackInterface.class && args[i] != null) {
+                ClientCallbackInterface callback = (ClientCallbackInterface) args[i];
+                if (clientId != null) {
+                    callbackIds.put(callback, clientId);
+                    recorded[i] = clientId;
+                } else {
+                    recorded[i] = callbackIds.get(callback);
+                }
+            }
+        }
+        return recorded;
+    }
+
+    private void enqueue(TraceFormat.Record record, int methodIndex) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try {
+            TraceFormat.writeRecord(new DataOutputStream(bytes), record, methodIndex);
+        } catch (IOException | RuntimeException e) {
+            dropped.incrementAndGet();
+            return;
+        }
+        if (!queue.offer(bytes.toByteArray())) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                byte[] record = queue.take();
+                if (record == END) {
+                    break;
+                }
+                out.write(record);
+                if (queue.isEmpty()) {
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            eventLog.log(GameEventLog.EventType.TRACE_FAILED, null, RoomTable.LOBBY_ID, 0, 0, 0, 0, 0, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (queue.offer(END, 5, TimeUnit.SECONDS)) {
+                writer.join(TimeUnit.SECONDS.toMillis(5));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package server;
+
+import client.ClientCallbackInterface;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Replays a TraceRecorder capture against a fresh in-process GameServer built with the trace's
+// seed, one call at a time in the recorded order. speed=1 keeps the captured pacing, speed=N
+// compresses it N times and speed=max sends calls back to back. Reports captured and replayed
+// latency per method, and the calls whose outcome differs from the capture. Once a player's score
+// diverges every later result of theirs does too, so only each player's first divergence is listed.
+//
+// Calls are recorded in completion order, so two players racing for the same round may be replayed
+// in the other order; divergence then points at that race rather than at a change in behaviour.
+//
+//   java server.TraceReplay trace=game-trace.bin speed=max divergences=20
+public class TraceReplay {
+    private final Path traceFile;
+    private final double speed;
+    private final int maxReportedDivergences;
+    private final Map<Long, Long> tokens = new HashMap<>();
+    private final Map<String, ClientCallbackInterface> callbacks = new HashMap<>();
+    private final Map<String, MethodStats> stats = new TreeMap<>();
+    private final List<String> divergences = new ArrayList<>();
+    private final Set<Object> divergedPlayers = new HashSet<>();
+
+    private static final class MethodStats {
+        final LatencyHistogram captured = new LatencyHistogram();
+        final LatencyHistogram replayed = new LatencyHistogram();
+        long divergent;
+    }
+
+    private static final class ReplayCallback implements ClientCallbackInterface {
+        private final String clientId;
+
+        ReplayCallback(String clientId) {
+            this.clientId = clientId;
+        }
+
+        @Override
+        public void notifyNumberReset(String winnerMessage) {
+        }
+
+        @Override
+        public String getClientId() {
+            return clientId;
+        }
+    }
+
+    TraceReplay(Map<String, String> config) {
+        this.traceFile = Paths.get(config.getOrDefault("trace", "game-trace.bin"));
+        String speedSetting = config.getOrDefault("speed", "1");
+        this.speed = speedSetting.equalsIgnoreCase("max") ? 0 : Double.parseDouble(speedSetting);
+        this.maxReportedDivergences = Integer.parseInt(config.getOrDefault("divergences", "20"));
+    }
+
+    void run(PrintStream out) throws IOException {
+        long replayed = 0;
+        long divergent = 0;
+        long startNanos = System.nanoTime();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(traceFile), 1 << 16))) {
+            List<Method> methods = new ArrayList<>();
+            long[] header = TraceFormat.readHeader(in, methods);
+            long seed = header[0];
+            GameServer server = new GameServer(GameEventLog.disabled(), PlayerJournal.disabled(), SecretSource.seeded(seed));
+            server.startLeaseSweeper(header[1]);
+            out.println("Replaying " + traceFile + " with seed " + seed + " at " + (speed == 0 ? "maximum speed" : speed + "x"));
+
+            while (true) {
+                TraceFormat.Record record;
+                try {
+                    record = TraceFormat.readRecord(in, methods);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (speed > 0) {
+                    long due = startNanos + (long) (TimeUnit.MICROSECONDS.toNanos(record.startMicros) / speed);
+                    for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                if (!replay(server, record, replayed)) {
+                    divergent++;
+                }
+                replayed++;
+            }
+        }
+
+        report(out, replayed, divergent, System.nanoTime() - startNanos);
+    }
+
+    // Returns false if the call diverged from the capture.
+    private boolean replay(GameServer server, TraceFormat.Record record, long index) {
+        Object[] args = new Object[record.args.length];
+        Class<?>[] parameterTypes = record.method.getParameterTypes();
+        int tokenIndex = TraceFormat.sessionTokenIndex(record.method);
+        for (int i = 0; i < args.length; i++) {
+            if (i == tokenIndex) {
+                // Mapped to the token the replay issued for the same session.
+                args[i] = tokens.getOrDefault((Long) record.args[i], (Long) record.args[i]);
+            } else if (parameterTypes[i] == ClientCallbackInterface.class) {
+                args[i] = callbacks.computeIfAbsent((String) record.args[i], ReplayCallback::new);
+            } else {
+                args[i] = record.args[i];
+            }
+        }
+
+        boolean threw = false;
+        Object result;
+        long start = System.nanoTime();
+        try {
+            result = record.method.invoke(server, args);
+        } catch (InvocationTargetException e) {
+            threw = true;
+            result = e.getCause().getMessage();
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        if (!threw && !record.threw && result instanceof SessionHandle) {
+            tokens.put(((SessionHandle) record.result).getToken(), ((SessionHandle) result).getToken());
+        }
+
+        String signature = InstrumentedGame.signature(record.method);
+        MethodStats methodStats = stats.computeIfAbsent(signature, key -> new MethodStats());
+        methodStats.captured.record(TimeUnit.MICROSECONDS.toNanos(record.durationMicros));
+        methodStats.replayed.record(elapsed);
+
+        boolean same = threw == record.threw && (threw || TraceFormat.sameResult(record.result, result));
+        if (!same) {
+            methodStats.divergent++;
+            if (divergedPlayers.add(playerOf(record)) && divergences.size() < maxReportedDivergences) {
+                divergences.add("#" + index + " " + signature + ": captured " + outcome(record.threw, record.result)
+                        + ", replayed " + outcome(threw, result));
+            }
+        }
+        return same;
+    }
+
+    // The session token or client id a call acts for, as captured.
+    private static Object playerOf(TraceFormat.Record record) {
+        return record.args.length > 0 ? record.args[0] : record.method.getName();
+    }
+
+    private static String outcome(boolean threw, Object result) {
+        return threw ? "error \"" + result + "\"" : TraceFormat.describe(result);
+    }
+
+    private void report(PrintStream out, long replayed, long divergent, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        out.printf("%d calls in %.1fs (%.0f calls/s), %d diverged across %d players%n",
+                replayed, seconds, replayed / seconds, divergent, divergedPlayers.size());
+        out.printf("%-36s %9s %9s %20s %20s %20s%n", "method", "calls", "diverged",
+                "p50 cap/replay(us)", "p99 cap/replay(us)", "max cap/replay(us)");
+        for (Map.Entry<String, MethodStats> entry : stats.entrySet()) {
+            LatencyHistogram.Snapshot captured = entry.getValue().captured.snapshot();
+            LatencyHistogram.Snapshot replayedLatency = entry.getValue().replayed.snapshot();
+            out.printf("%-36s %9d %9d %20s %20s %20s%n", entry.getKey(), captured.getCount(), entry.getValue().divergent,
+                    micros(captured.getPercentile(0.5), replayedLatency.getPercentile(0.5)),
+                    micros(captured.getPercentile(0.99), replayedLatency.getPercentile(0.99)),
+                    micros(captured.getMax(), replayedLatency.getMax()));
+        }
+        for (String divergence : divergences) {
+            out.println(divergence);
+        }
+        if (divergedPlayers.size() > divergences.size()) {
+            out.println("... and " + (divergedPlayers.size() - divergences.size()) + " more players");
+        }
+    }
+
+    private static String micros(long capturedNanos, long replayedNanos) {
+        return capturedNanos / 1000 + " / " + replayedNanos / 1000;
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> config = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator > 0) {
+                config.put(arg.substring(0, separator), arg.substring(separator + 1));
+            }
+        }
+
+        try {
+            new TraceReplay(config).run(System.out);
+        } catch (Exception e) {
+            System.err.println("Replay exception: " + e.toString());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
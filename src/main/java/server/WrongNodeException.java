@@ -0,0 +1,21 @@
+package server;
+
+import java.rmi.RemoteException;
+
+// Thrown by a cluster node for a player it does not own: a registration that hashes elsewhere, a
+// joinRoom for a room on another node, or a session that has been handed off. The owner is where
+// the call should go next (resumeSession with the same token), or null if it is not known yet.
+public class WrongNodeException extends RemoteException {
+    private static final long serialVersionUID = 1L;
+
+    private final NodeAddress owner;
+
+    public WrongNodeException(String message, NodeAddress owner) {
+        super(message);
+        this.owner = owner;
+    }
+
+    public NodeAddress getOwner() {
+        return owner;
+    }
+}
@@ -0,0 +1,366 @@
+package server;
+
+import client.ClientCallbackInterface;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Misbehaving clients must not slow down everyone else. A GameServer is bound in a loopback Registry
+// and played over RMI by healthy players and by scripted callbacks that turn slow, hang, disconnect
+// or throw. The faulty players share rooms with the healthy ones, so every win notifies them, and
+// they play through the calls that ask the client for its id, so getClientId misbehaves on a server
+// request thread as well. After an unmeasured warmup with every callback healthy the faults are
+// switched on, and healthy players' makeGuess and buyTrials latency must then stay within budget,
+// with none of their calls failing. The warmup, the measured period and a scale on both budgets
+// can be raised with game.faultTest.* system properties where the machine is shared or slow.
+class CallbackFaultTest {
+    enum Fault {
+        NONE, SLOW, HANG, DISCONNECT, THROW
+    }
+
+    private static final int PLAYERS = 200;
+    private static final double FAULTY_SHARE = 0.25;
+    private static final int PLAYERS_PER_ROOM = 20;
+    private static final int CALLS_PER_SECOND = 400;
+    private static final int DRIVER_THREADS = 8;
+    private static final long SLOW_MEAN_MILLIS = 200;
+    private static final long FAULTY_PAUSE_MILLIS = 200;
+    private static final long WARMUP_MILLIS = Long.getLong("game.faultTest.warmupMillis", 2000);
+    private static final long MEASURE_MILLIS = Long.getLong("game.faultTest.measureMillis", 3000);
+    private static final long BUDGET_SCALE = Long.getLong("game.faultTest.budgetScale", 1);
+    private static final long P99_BUDGET_MICROS = TimeUnit.MILLISECONDS.toMicros(100) * BUDGET_SCALE;
+    private static final long P999_BUDGET_MICROS = TimeUnit.MILLISECONDS.toMicros(300) * BUDGET_SCALE;
+    private static final int TRIAL_PRICE = 10;
+
+    // A client whose callbacks do what its fault says once armed, and answer at once until then.
+    static final class ScriptedCallback implements ClientCallbackInterface {
+        final String clientId;
+        final Fault fault;
+        private final CountDownLatch released;
+        volatile boolean armed;
+
+        ScriptedCallback(String clientId, Fault fault, CountDownLatch released) {
+            this.clientId = clientId;
+            this.fault = fault;
+            this.released = released;
+        }
+
+        @Override
+        public void notifyNumberReset(String winnerMessage) throws RemoteException {
+            misbehave();
+        }
+
+        @Override
+        public String getClientId() throws RemoteException {
+            misbehave();
+            return clientId;
+        }
+
+        private void misbehave() throws RemoteException {
+            if (!armed) {
+                return;
+            }
+            switch (fault) {
+                case SLOW:
+                    double delayMillis = -SLOW_MEAN_MILLIS * Math.log(1 - ThreadLocalRandom.current().nextDouble());
+                    LockSupport.parkNanos((long) (delayMillis * 1_000_000));
+                    break;
+                case HANG:
+                    try {
+                        released.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    break;
+                case THROW:
+                    if (ThreadLocalRandom.current().nextBoolean()) {
+                        throw new RemoteException("Scripted failure in " + clientId);
+                    }
+                    throw new IllegalStateException("Scripted crash in " + clientId);
+                default:
+                    break;
+            }
+        }
+    }
+
+    static final class Player {
+        final ScriptedCallback callback;
+        ClientCallbackInterface stub;
+        long sessionToken;
+        // As of the player's last call; only its own calls change it.
+        int score;
+        int low = 1;
+        int high = 100;
+
+        Player(ScriptedCallback callback) {
+            this.callback = callback;
+        }
+
+        // Binary search within the round, restarting whenever the bounds stop making sense.
+        int nextGuess() {
+            if (low > high) {
+                low = 1;
+                high = 100;
+            }
+            return (low + high) >>> 1;
+        }
+
+        void judged(int guess, GuessResult result) {
+            score = result.getCurrentScore();
+            if (result.getStatus() == GuessResult.Status.TOO_SMALL) {
+                low = guess + 1;
+            } else if (result.getStatus() == GuessResult.Status.TOO_BIG) {
+                high = guess - 1;
+            } else {
+                low = 1;
+                high = 100;
+            }
+        }
+    }
+
+    private final List<Player> healthy = new ArrayList<>();
+    private final List<Player> faulty = new ArrayList<>();
+    private final List<Thread> drivers = new ArrayList<>();
+    private final CountDownLatch released = new CountDownLatch(1);
+    private final AtomicLong faultyFailures = new AtomicLong();
+    private final AtomicLong healthyFailures = new AtomicLong();
+    private volatile RemoteException firstHealthyFailure;
+    private volatile LatencyHistogram guessLatency = new LatencyHistogram();
+    private volatile LatencyHistogram buyLatency = new LatencyHistogram();
+    private volatile boolean running = true;
+    private GameInterface exported;
+    private Registry registry;
+    private GameInterface game;
+
+    // What GameServer.main sets, so a hung callback holds a server thread for a bounded time.
+    @BeforeAll
+    static void boundResponseTimeout() {
+        System.setProperty("sun.rmi.transport.tcp.responseTimeout",
+                String.valueOf(NotificationDispatcher.DEFAULT_TIMEOUT_MILLIS * 2));
+    }
+
+    @BeforeEach
+    void bindServer() throws Exception {
+        GameServer server = new GameServer();
+        exported = InstrumentedGame.wrap(server, server.getMetrics());
+        registry = createRegistry();
+        registry.rebind("GuessingGame", UnicastRemoteObject.exportObject(exported, 0));
+        game = (GameInterface) registry.lookup("GuessingGame");
+    }
+
+    @AfterEach
+    void unbindServer() throws Exception {
+        running = false;
+        released.countDown();
+        for (Thread driver : drivers) {
+            driver.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        for (Player player : healthy) {
+            unexport(player.callback);
+        }
+        for (Player player : faulty) {
+            unexport(player.callback);
+        }
+        UnicastRemoteObject.unexportObject(exported, true);
+        UnicastRemoteObject.unexportObject(registry, true);
+    }
+
+    @Test
+    void slowCallbacksKeepHealthyPlayersWithinBudget() throws Exception {
+        playWith(Fault.SLOW);
+        assertWithinBudgets();
+    }
+
+    @Test
+    void hungCallbacksKeepHealthyPlayersWithinBudget() throws Exception {
+        playWith(Fault.HANG);
+        assertWithinBudgets();
+    }
+
+    @Test
+    void disconnectedClientsKeepHealthyPlayersWithinBudget() throws Exception {
+        playWith(Fault.DISCONNECT);
+        assertWithinBudgets();
+        assertTrue(faultyFailures.get() > 0, "disconnected players' calls should fail");
+    }
+
+    @Test
+    void throwingCallbacksKeepHealthyPlayersWithinBudget() throws Exception {
+        playWith(Fault.THROW);
+        assertWithinBudgets();
+        assertTrue(faultyFailures.get() > 0, "throwing players' calls should fail");
+    }
+
+    @Test
+    void mixedFaultsKeepHealthyPlayersWithinBudget() throws Exception {
+        playWith(Fault.SLOW, Fault.HANG, Fault.DISCONNECT, Fault.THROW);
+        assertWithinBudgets();
+    }
+
+    // Registers the players, warms up with every callback healthy, then arms the faults and
+    // measures healthy players' latency from a fresh start.
+    private void playWith(Fault... faults) throws Exception {
+        createPlayers(faults);
+        startDrivers();
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(WARMUP_MILLIS));
+
+        guessLatency = new LatencyHistogram();
+        buyLatency = new LatencyHistogram();
+        for (Player player : faulty) {
+            player.callback.armed = true;
+            if (player.callback.fault == Fault.DISCONNECT) {
+                UnicastRemoteObject.unexportObject(player.callback, true);
+            }
+        }
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(MEASURE_MILLIS));
+    }
+
+    private void assertWithinBudgets() {
+        LatencyHistogram.Snapshot guesses = guessLatency.snapshot();
+        LatencyHistogram.Snapshot purchases = buyLatency.snapshot();
+        assertAll(() -> assertWithinBudget("makeGuess", guesses),
+                () -> assertWithinBudget("buyTrials", purchases),
+                () -> assertEquals(0, healthyFailures.get(), "healthy players' calls failed, first with " + firstHealthyFailure));
+    }
+
+    private static void assertWithinBudget(String method, LatencyHistogram.Snapshot latency) {
+        long p99 = latency.getPercentile(0.99) / 1000;
+        long p999 = latency.getPercentile(0.999) / 1000;
+        assertTrue(latency.getCount() > 0, method + ": no healthy calls completed");
+        assertTrue(p99 <= P99_BUDGET_MICROS, method + ": p99 " + p99 + " us over the " + P99_BUDGET_MICROS + " us budget");
+        assertTrue(p999 <= P999_BUDGET_MICROS, method + ": p999 " + p999 + " us over the " + P999_BUDGET_MICROS + " us budget");
+    }
+
+    private static Registry createRegistry() throws RemoteException {
+        for (int port = 20_000 + ThreadLocalRandom.current().nextInt(10_000); ; port++) {
+            try {
+                return LocateRegistry.createRegistry(port);
+            } catch (RemoteException e) {
+                // Taken; try the next one.
+            }
+        }
+    }
+
+    // Faulty players are spread evenly, so every room has some, and take the faults in turn.
+    private void createPlayers(Fault... faults) throws RemoteException {
+        int faultyCount = (int) Math.round(PLAYERS * FAULTY_SHARE);
+        int roomId = RoomTable.LOBBY_ID;
+        for (int i = 0; i < PLAYERS; i++) {
+            boolean isFaulty = i % (PLAYERS / faultyCount) == 0 && faulty.size() < faultyCount;
+            Fault fault = isFaulty ? faults[faulty.size() % faults.length] : Fault.NONE;
+            Player player = new Player(new ScriptedCallback("fault-test-" + i, fault, released));
+            player.stub = (ClientCallbackInterface) UnicastRemoteObject.exportObject(player.callback, 0);
+            SessionHandle session = game.registerClient(player.stub, player.callback.clientId);
+            player.sessionToken = session.getToken();
+            player.score = session.getScore();
+            if (i % PLAYERS_PER_ROOM == 0) {
+                roomId = game.createRoom(player.sessionToken, "fault-room-" + i);
+            } else {
+                game.joinRoom(player.sessionToken, roomId);
+            }
+            (isFaulty ? faulty : healthy).add(player);
+        }
+    }
+
+    // Healthy players are driven at a fixed rate by a few threads, with latency measured from each
+    // call's scheduled start; every faulty player has its own thread, since its calls may hang.
+    private void startDrivers() {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) * DRIVER_THREADS / CALLS_PER_SECOND;
+        for (int t = 0; t < DRIVER_THREADS; t++) {
+            List<Player> slice = new ArrayList<>();
+            for (int i = t; i < healthy.size(); i += DRIVER_THREADS) {
+                slice.add(healthy.get(i));
+            }
+            drivers.add(start("healthy-" + t, () -> driveHealthy(slice, intervalNanos)));
+        }
+        for (Player player : faulty) {
+            drivers.add(start("faulty-" + player.callback.clientId, () -> driveFaulty(player)));
+        }
+    }
+
+    private static Thread start(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    // Healthy players only buy what they can pay for, so any failed call is a fault leaking through.
+    private void driveHealthy(List<Player> players, long intervalNanos) {
+        long next = System.nanoTime();
+        int cursor = 0;
+        while (running) {
+            long now = System.nanoTime();
+            if (now < next) {
+                LockSupport.parkNanos(next - now);
+            }
+            long start = next;
+            next += intervalNanos;
+            Player player = players.get(cursor);
+            cursor = (cursor + 1) % players.size();
+            try {
+                if (ThreadLocalRandom.current().nextInt(4) == 0 && player.score >= TRIAL_PRICE) {
+                    player.score = game.buyTrials(player.sessionToken, 1).getScore();
+                    buyLatency.record(System.nanoTime() - start);
+                } else {
+                    int guess = player.nextGuess();
+                    GuessResult result = game.makeGuess(player.sessionToken, guess);
+                    guessLatency.record(System.nanoTime() - start);
+                    if (result.getStatus() != GuessResult.Status.ERROR) {
+                        player.judged(guess, result);
+                    } else if ((player.score = result.getCurrentScore()) >= TRIAL_PRICE) {
+                        int trials = Math.min(5, player.score / TRIAL_PRICE);
+                        player.score = game.buyTrials(player.sessionToken, trials).getScore();
+                    }
+                }
+            } catch (RemoteException e) {
+                if (healthyFailures.getAndIncrement() == 0) {
+                    firstHealthyFailure = e;
+                }
+            }
+        }
+    }
+
+    // Plays through the calls that identify the player by asking its callback, like the original client.
+    private void driveFaulty(Player player) {
+        while (running) {
+            try {
+                int guess = player.nextGuess();
+                GuessResult result = game.makeGuess(player.stub, guess);
+                if (result.getStatus() == GuessResult.Status.ERROR) {
+                    game.buyTrials(player.stub, 5);
+                } else {
+                    player.judged(guess, result);
+                }
+            } catch (RemoteException | RuntimeException e) {
+                faultyFailures.incrementAndGet();
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(FAULTY_PAUSE_MILLIS));
+        }
+    }
+
+    private static void unexport(ScriptedCallback callback) {
+        try {
+            UnicastRemoteObject.unexportObject(callback, true);
+        } catch (NoSuchObjectException ignored) {
+        }
+    }
+}